@@ -24,6 +24,9 @@ import androidx.lifecycle.ProcessLifecycleOwner;
 import com.google.android.gms.cast.tv.CastReceiverContext;
 import com.google.android.gms.cast.tv.SenderDisconnectedEventInfo;
 import com.google.android.gms.cast.tv.SenderInfo;
+import com.google.sample.cast.atvreceiver.player.BufferProfile;
+import com.google.sample.cast.atvreceiver.player.MediaCache;
+import com.google.sample.cast.atvreceiver.player.PlayerHolder;
 
 public class CastDemoApplication extends Application {
 
@@ -31,6 +34,12 @@ public class CastDemoApplication extends Application {
     public void onCreate() {
         super.onCreate();
         CastReceiverContext.initInstance(this);
+        // The cache is sized for the device's storage once it opens, off the main thread.
+        MediaCache.configure(getResources().getBoolean(R.bool.persistent_media_cache));
+        String bufferProfile = getString(R.string.buffer_profile);
+        if (!bufferProfile.isEmpty()) {
+            PlayerHolder.getInstance(this).setBufferProfile(BufferProfile.valueOf(bufferProfile));
+        }
         CastReceiverContext.getInstance().registerEventCallback(new EventCallback());
         ProcessLifecycleOwner.get().getLifecycle().addObserver(new AppLifecycleObserver());
     }
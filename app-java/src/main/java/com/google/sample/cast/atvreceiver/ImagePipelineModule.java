@@ -0,0 +1,114 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.util.Log;
+
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.module.AppGlideModule;
+import com.bumptech.glide.request.RequestOptions;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Configures image loading for low-memory TV devices.
+ *
+ * <p>Images are downsampled to the size they are shown at and decoded as RGB_565 unless they have
+ * alpha. The memory cache and the bitmap pool are sized from the memory class of the device rather
+ * than from the size of its screen, and the memory cache counts its hits and misses.
+ */
+@GlideModule
+public final class ImagePipelineModule extends AppGlideModule {
+    private static final String TAG = "ImagePipelineModule";
+
+    // Shares of the heap for the memory cache and the bitmap pool, halved on low-RAM devices.
+    private static final int MEMORY_CACHE_HEAP_DIVISOR = 8;
+    private static final int BITMAP_POOL_HEAP_DIVISOR = 16;
+
+    private static CountingResourceCache sMemoryCache;
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        long heapBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+        if (activityManager.isLowRamDevice()) {
+            heapBytes /= 2;
+        }
+        sMemoryCache = new CountingResourceCache(heapBytes / MEMORY_CACHE_HEAP_DIVISOR);
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Memory cache of " + sMemoryCache.getMaxSize() + " bytes");
+        }
+        builder.setMemoryCache(sMemoryCache)
+                .setBitmapPool(new LruBitmapPool(heapBytes / BITMAP_POOL_HEAP_DIVISOR))
+                .setDefaultRequestOptions(new RequestOptions()
+                        .format(DecodeFormat.PREFER_RGB_565));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+
+    /** Returns the number of images found in the memory cache. */
+    public static long getMemoryCacheHitCount() {
+        return sMemoryCache == null ? 0 : sMemoryCache.mHits.get();
+    }
+
+    /** Returns the number of images looked up in the memory cache but not found there. */
+    public static long getMemoryCacheMissCount() {
+        return sMemoryCache == null ? 0 : sMemoryCache.mMisses.get();
+    }
+
+    /** Returns the bytes used by the images in the memory cache. */
+    public static long getMemoryCacheBytes() {
+        return sMemoryCache == null ? 0 : sMemoryCache.getCurrentSize();
+    }
+
+    /** Returns a one-line summary of the memory cache, for logging. */
+    public static String getMemoryCacheStats() {
+        return getMemoryCacheHitCount() + " hits, " + getMemoryCacheMissCount() + " misses, "
+                + getMemoryCacheBytes() + " bytes in use";
+    }
+
+    /**
+     * A memory cache that counts its hits and misses. Glide looks an image up here, and takes it
+     * out into its active resources, for every request that no image on screen can serve.
+     */
+    private static final class CountingResourceCache extends LruResourceCache {
+        final AtomicLong mHits = new AtomicLong();
+        final AtomicLong mMisses = new AtomicLong();
+
+        CountingResourceCache(long size) {
+            super(size);
+        }
+
+        @Override
+        public Resource<?> remove(Key key) {
+            Resource<?> resource = super.remove(key);
+            (resource != null ? mHits : mMisses).incrementAndGet();
+            return resource;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Trace;
+import android.util.Log;
+
+import com.google.sample.cast.atvreceiver.DebugLog;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Keeps the last downloaded catalog on disk together with its HTTP validators, so that it can be
+ * shown without waiting on the network and revalidated with a conditional request. A
+ * {@link CatalogSnapshot} of the parsed catalog is kept next to it.
+ */
+public class CatalogCache {
+    private static final String TAG = "CatalogCache";
+
+    private static final String CATALOG_FILE = "catalog.json";
+    private static final String SNAPSHOT_FILE = "catalog.snapshot";
+    private static final String PREFS_NAME = "catalog_cache";
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "last_modified";
+
+    private static final int TIMEOUT_MS = 15000;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File mFile;
+    private final File mSnapshotFile;
+    private final SharedPreferences mPrefs;
+
+    public CatalogCache(Context context) {
+        mFile = new File(context.getCacheDir(), CATALOG_FILE);
+        mSnapshotFile = new File(context.getCacheDir(), SNAPSHOT_FILE);
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /** Returns whether a catalog downloaded from {@code url} is stored. */
+    public boolean has(String url) {
+        return url.equals(mPrefs.getString(KEY_URL, null)) && mFile.isFile();
+    }
+
+    /** Opens the stored catalog. The caller is responsible for closing the reader. */
+    public Reader open() throws IOException {
+        return new InputStreamReader(
+                new BufferedInputStream(new FileInputStream(mFile)), "iso-8859-1");
+    }
+
+    /**
+     * Returns the snapshot of the stored catalog, or {@code null} if none has been written since
+     * the catalog was last downloaded.
+     */
+    public List<Movie> readSnapshot() throws IOException {
+        if (!mSnapshotFile.isFile()) {
+            return null;
+        }
+        Trace.beginSection("CatalogSnapshot.read");
+        try {
+            return CatalogSnapshot.read(mSnapshotFile);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /** Stores the parsed form of the stored catalog. */
+    public void writeSnapshot(List<Movie> movies) throws IOException {
+        CatalogSnapshot.write(mSnapshotFile, movies);
+    }
+
+    /** Deletes the stored catalog, its snapshot and its validators. */
+    public void clear() {
+        mPrefs.edit().clear().apply();
+        mSnapshotFile.delete();
+        mFile.delete();
+    }
+
+    /**
+     * Checks {@code url} for a newer catalog, sending the validators of the stored one. A new
+     * catalog is handed to {@code parser} while it downloads and is stored at the same time, so
+     * parsing does not have to wait for the whole body. If the body cannot be read to its end or
+     * stored, the validators are dropped, so that the next check is unconditional.
+     *
+     * @return the result of {@code parser} for the new catalog, or {@code null} if the server
+     *     answered that the stored catalog is still current.
+     */
+    public <T> T revalidate(String url, Parser<T> parser) throws IOException {
+        boolean cached = has(url);
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            if (cached) {
+                String etag = mPrefs.getString(KEY_ETAG, null);
+                if (etag != null) {
+                    connection.setRequestProperty("If-None-Match", etag);
+                }
+                String lastModified = mPrefs.getString(KEY_LAST_MODIFIED, null);
+                if (lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", lastModified);
+                }
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (cached && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                if (DebugLog.ENABLED) {
+                    Log.d(TAG, "Catalog not modified");
+                }
+                return null;
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response code " + responseCode);
+            }
+
+            T result;
+            try {
+                result = store(connection.getInputStream(), parser);
+            } catch (IOException | RuntimeException e) {
+                // The parser may already have published the new catalog, which is not the one
+                // stored: drop the validators so that the next check downloads it again.
+                mPrefs.edit().clear().apply();
+                throw e;
+            }
+            // The validators are written only once the new body is in place, so a crash in
+            // between can never pair new validators with an old catalog.
+            mPrefs.edit()
+                    .putString(KEY_URL, url)
+                    .putString(KEY_ETAG, connection.getHeaderField("ETag"))
+                    .putString(KEY_LAST_MODIFIED, connection.getHeaderField("Last-Modified"))
+                    .apply();
+            return result;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private <T> T store(InputStream in, Parser<T> parser) throws IOException {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        T result;
+        try {
+            TeeInputStream tee = new TeeInputStream(in, out);
+            result = parser.parse(new InputStreamReader(tee, "iso-8859-1"));
+            // Whatever the parser left unread still belongs in the stored copy.
+            tee.drain();
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            tmp.delete();
+            throw e;
+        } finally {
+            out.close();
+            in.close();
+        }
+        // The snapshot was built from the catalog that is about to be replaced.
+        mSnapshotFile.delete();
+        if (!tmp.renameTo(mFile)) {
+            tmp.delete();
+            throw new IOException("Failed to store the catalog");
+        }
+        return result;
+    }
+
+    /** Reads a catalog as it is being downloaded. */
+    public interface Parser<T> {
+        T parse(Reader in) throws IOException;
+    }
+
+    /** Copies everything read from the source into a second stream. */
+    private static final class TeeInputStream extends FilterInputStream {
+        private final OutputStream mCopy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            mCopy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCopy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCopy.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes are still copied.
+            byte[] buffer = new byte[BUFFER_SIZE];
+            return Math.max(read(buffer, 0, (int) Math.min(n, BUFFER_SIZE)), 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // The source is closed by store(), after the rest of it has been copied.
+        }
+
+        void drain() throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // Copied by read().
+            }
+        }
+    }
+}
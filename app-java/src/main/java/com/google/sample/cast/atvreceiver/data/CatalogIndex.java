@@ -0,0 +1,69 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.data;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookup table from a Cast entity to a catalog position, built once per catalog so that load
+ * requests are resolved without scanning the list. An entity is either the string form of a
+ * {@link Movie#getId() movie id} or the movie's video URL, which is also what senders put in
+ * the content id of a load request.
+ */
+public final class CatalogIndex {
+    private final List<Movie> mMovies;
+    private final Map<String, Integer> mPositions;
+
+    CatalogIndex(List<Movie> movies) {
+        mMovies = movies;
+        mPositions = new HashMap<>(movies.size() * 4);
+        if (movies instanceof CatalogSnapshot.MovieTable) {
+            // Decode only the two keyed fields instead of every movie.
+            CatalogSnapshot.MovieTable table = (CatalogSnapshot.MovieTable) movies;
+            for (int i = 0; i < table.size(); i++) {
+                put(String.valueOf(table.getId(i)), i);
+                put(table.getVideoUrl(i), i);
+            }
+        } else {
+            for (int i = 0; i < movies.size(); i++) {
+                Movie movie = movies.get(i);
+                put(String.valueOf(movie.getId()), i);
+                put(movie.getVideoUrl(), i);
+            }
+        }
+    }
+
+    private void put(String key, int position) {
+        // The first movie wins if two entries share a video URL.
+        if (key != null && !mPositions.containsKey(key)) {
+            mPositions.put(key, position);
+        }
+    }
+
+    /** Returns the catalog position of {@code entity}, or -1 if it is not in the catalog. */
+    public int indexOf(String entity) {
+        Integer position = entity == null ? null : mPositions.get(entity);
+        return position == null ? -1 : position;
+    }
+
+    /** Returns the movie for {@code entity}, or {@code null} if it is not in the catalog. */
+    public Movie find(String entity) {
+        int position = indexOf(entity);
+        return position < 0 ? null : mMovies.get(position);
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.data;
+
+import android.util.LruCache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Versioned binary form of a parsed catalog, read back through a memory mapping so that no JSON
+ * has to be parsed on startup.
+ *
+ * <p>The file is laid out as a header ({@code magic, version, movieCount, stringCount}), one
+ * fixed-width record per movie, a table of {@code stringCount + 1} string offsets and finally the
+ * UTF-8 bytes of all distinct strings. Records refer to strings by their index in the table.
+ */
+final class CatalogSnapshot {
+    private static final int MAGIC = 0x43415453; // "CATS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 * 4;
+
+    private static final int RECORD_ID = 0;
+    private static final int RECORD_TITLE = 4;
+    private static final int RECORD_DESCRIPTION = 8;
+    private static final int RECORD_STUDIO = 12;
+    private static final int RECORD_VIDEO_URL = 16;
+    private static final int RECORD_CARD_IMAGE_URL = 20;
+    private static final int RECORD_BACKGROUND_IMAGE_URL = 24;
+    private static final int RECORD_DURATION = 28;
+    private static final int RECORD_SEEK_THUMBNAILS_URL = 36;
+    private static final int RECORD_SIZE = 40;
+
+    private static final int NO_STRING = -1;
+
+    // Decoded movies kept by a snapshot: enough for the pages that the browse rows hold around
+    // their focused cards.
+    private static final int MAX_DECODED_MOVIES = 512;
+
+    private CatalogSnapshot() {
+    }
+
+    static void write(File file, List<Movie> movies) throws IOException {
+        Map<String, Integer> indices = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        for (Movie movie : movies) {
+            intern(movie.getTitle(), indices, strings);
+            intern(movie.getDescription(), indices, strings);
+            intern(movie.getStudio(), indices, strings);
+            intern(movie.getVideoUrl(), indices, strings);
+            intern(movie.getCardImageUrl(), indices, strings);
+            intern(movie.getBackgroundImageUrl(), indices, strings);
+            intern(movie.getSeekThumbnailsUrl(), indices, strings);
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(movies.size());
+            out.writeInt(strings.size());
+            for (Movie movie : movies) {
+                out.writeInt(movie.getId());
+                out.writeInt(indexOf(movie.getTitle(), indices));
+                out.writeInt(indexOf(movie.getDescription(), indices));
+                out.writeInt(indexOf(movie.getStudio(), indices));
+                out.writeInt(indexOf(movie.getVideoUrl(), indices));
+                out.writeInt(indexOf(movie.getCardImageUrl(), indices));
+                out.writeInt(indexOf(movie.getBackgroundImageUrl(), indices));
+                out.writeLong(movie.getDuration());
+                out.writeInt(indexOf(movie.getSeekThumbnailsUrl(), indices));
+            }
+            int offset = 0;
+            for (byte[] string : strings) {
+                out.writeInt(offset);
+                offset += string.length;
+            }
+            out.writeInt(offset);
+            for (byte[] string : strings) {
+                out.write(string);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Failed to store the catalog snapshot");
+        }
+    }
+
+    /**
+     * Maps {@code file} and returns a read-only list over it, or {@code null} if the file was
+     * written by a different version of the format.
+     */
+    static List<Movie> read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            // The mapping stays valid after the channel is closed.
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE
+                    || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            int movieCount = buffer.getInt(8);
+            int stringCount = buffer.getInt(12);
+            long offsetsStart = HEADER_SIZE + (long) movieCount * RECORD_SIZE;
+            long stringsStart = offsetsStart + (stringCount + 1L) * 4;
+            if (movieCount < 0 || stringCount < 0 || stringsStart > buffer.limit()
+                    || stringsStart + buffer.getInt((int) stringsStart - 4) > buffer.limit()) {
+                throw new IOException("Truncated catalog snapshot");
+            }
+            return new MovieTable(buffer, movieCount, (int) offsetsStart, (int) stringsStart);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void intern(String value, Map<String, Integer> indices, List<byte[]> strings) {
+        if (value != null && !indices.containsKey(value)) {
+            indices.put(value, strings.size());
+            strings.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static int indexOf(String value, Map<String, Integer> indices) {
+        return value == null ? NO_STRING : indices.get(value);
+    }
+
+    /**
+     * Read-only list over a mapped snapshot. Nothing is decoded up front: {@link #get} builds its
+     * {@link Movie} from the mapping the first time it is asked for, so only the items that are
+     * actually shown cost any decoding. The most recently used movies are kept, so asking for
+     * the same item again usually returns the same instance; an evicted one is decoded again as
+     * a new instance, which is only {@link Movie#equals equal} to the one handed out before.
+     */
+    static final class MovieTable extends AbstractList<Movie> implements RandomAccess {
+        private final ByteBuffer mBuffer;
+        private final int mSize;
+        private final int mOffsetsStart;
+        private final int mStringsStart;
+        private final LruCache<Integer, Movie> mMovies = new LruCache<>(MAX_DECODED_MOVIES);
+
+        MovieTable(ByteBuffer buffer, int size, int offsetsStart, int stringsStart) {
+            mBuffer = buffer;
+            mSize = size;
+            mOffsetsStart = offsetsStart;
+            mStringsStart = stringsStart;
+        }
+
+        @Override
+        public Movie get(int index) {
+            if (index < 0 || index >= mSize) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+            }
+            Movie movie = mMovies.get(index);
+            if (movie == null) {
+                movie = decode(index);
+                mMovies.put(index, movie);
+            }
+            return movie;
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        /** Returns the id of the movie at {@code index} without decoding the whole movie. */
+        int getId(int index) {
+            return mBuffer.getInt(HEADER_SIZE + index * RECORD_SIZE + RECORD_ID);
+        }
+
+        /** Returns the video URL of the movie at {@code index} without decoding the whole movie. */
+        String getVideoUrl(int index) {
+            return readString(
+                    mBuffer.duplicate(), HEADER_SIZE + index * RECORD_SIZE + RECORD_VIDEO_URL);
+        }
+
+        private Movie decode(int index) {
+            // A private duplicate keeps concurrent readers from sharing a buffer position.
+            ByteBuffer buffer = mBuffer.duplicate();
+            int record = HEADER_SIZE + index * RECORD_SIZE;
+            Movie movie = new Movie();
+            movie.setId(buffer.getInt(record + RECORD_ID));
+            movie.setTitle(readString(buffer, record + RECORD_TITLE));
+            movie.setDescription(readString(buffer, record + RECORD_DESCRIPTION));
+            movie.setStudio(readString(buffer, record + RECORD_STUDIO));
+            movie.setVideoUrl(readString(buffer, record + RECORD_VIDEO_URL));
+            movie.setCardImageUrl(readString(buffer, record + RECORD_CARD_IMAGE_URL));
+            movie.setBackgroundImageUrl(
+                    readString(buffer, record + RECORD_BACKGROUND_IMAGE_URL));
+            movie.setDuration(buffer.getLong(record + RECORD_DURATION));
+            movie.setSeekThumbnailsUrl(
+                    readString(buffer, record + RECORD_SEEK_THUMBNAILS_URL));
+            return movie;
+        }
+
+        private String readString(ByteBuffer buffer, int field) {
+            int index = buffer.getInt(field);
+            if (index == NO_STRING) {
+                return null;
+            }
+            int start = buffer.getInt(mOffsetsStart + index * 4);
+            int end = buffer.getInt(mOffsetsStart + (index + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            buffer.position(mStringsStart + start);
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
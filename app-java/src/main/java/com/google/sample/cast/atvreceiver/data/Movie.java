@@ -30,6 +30,8 @@ public class Movie implements Serializable {
     private String cardImageUrl;
     private String videoUrl;
     private String studio;
+    private long duration;
+    private String seekThumbnailsUrl;
 
     public Movie() {
     }
@@ -66,6 +68,15 @@ public class Movie implements Serializable {
         this.studio = studio;
     }
 
+    /** Returns the duration in milliseconds. */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
     public String getVideoUrl() {
         return videoUrl;
     }
@@ -90,6 +101,33 @@ public class Movie implements Serializable {
         this.cardImageUrl = cardImageUrl;
     }
 
+    /**
+     * Returns the URL of a WebVTT track of seek preview thumbnails, which are usually tiles of
+     * sprite sheets, or {@code null} if the movie has none.
+     */
+    public String getSeekThumbnailsUrl() {
+        return seekThumbnailsUrl;
+    }
+
+    public void setSeekThumbnailsUrl(String seekThumbnailsUrl) {
+        this.seekThumbnailsUrl = seekThumbnailsUrl;
+    }
+
+    /**
+     * Returns whether {@code o} is a movie with the same id. A catalog snapshot decodes its movies
+     * on demand and may hand out a new instance for the same entry, so movies must not be
+     * compared by identity.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Movie && ((Movie) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
     @Override
     public String toString() {
         return "Movie{" +
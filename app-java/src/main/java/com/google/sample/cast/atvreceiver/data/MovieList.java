@@ -16,19 +16,18 @@
 
 package com.google.sample.cast.atvreceiver.data;
 
-import android.util.Log;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import android.os.Trace;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -54,6 +53,7 @@ public final class MovieList {
     private static final String TAG_DURATION = "duration";
     private static final String TAG_THUMB = "image-480x270"; // "thumb";
     private static final String TAG_IMG_780_1200 = "image-780x1200";
+    private static final String TAG_SEEK_THUMBNAILS = "seek-thumbnails";
     private static final String TAG_TITLE = "title";
     private static final String TARGET_FORMAT = TAG_HLS;
 
@@ -64,31 +64,41 @@ public final class MovieList {
             "Live"
     };
 
-    private static List<Movie> list;
+    /** Receives the movies of each catalog category as soon as that category has been parsed. */
+    public interface OnCategoryParsedListener {
+        void onCategoryParsed(String name, List<Movie> movies);
+    }
+
+    private static volatile List<Movie> list;
+    private static volatile CatalogIndex index;
     private static int count = 0;
 
+    /** Returns the current catalog. The list is read-only, as it is shared by every screen. */
     public static List<Movie> getList() {
         return list;
     }
 
-    protected JSONObject parseUrl(String urlString) {
+    /** Returns the index of the current list, or {@code null} if no catalog has been loaded. */
+    public static CatalogIndex getIndex() {
+        return index;
+    }
+
+    /** Makes {@code movies}, for example a list read back from a snapshot, the current list. */
+    public static void setList(List<Movie> movies) {
+        index = new CatalogIndex(movies);
+        list = movies;
+    }
+
+    public static List<Movie> setupMovies(String url) throws IOException {
+        if (null != list) {
+            return list;
+        }
+
         InputStream is = null;
         try {
-            java.net.URL url = new java.net.URL(urlString);
-            URLConnection urlConnection = url.openConnection();
+            URLConnection urlConnection = new java.net.URL(url).openConnection();
             is = new BufferedInputStream(urlConnection.getInputStream());
-            BufferedReader reader = new BufferedReader(new InputStreamReader(
-                    urlConnection.getInputStream(), "iso-8859-1"), 1024);
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-            String json = sb.toString();
-            return new JSONObject(json);
-        } catch (Exception e) {
-            Log.d(TAG, "Failed to parse the json for media list", e);
-            return null;
+            return updateMovies(new InputStreamReader(is, "iso-8859-1"), null);
         } finally {
             if (null != is) {
                 try {
@@ -100,59 +110,187 @@ public final class MovieList {
         }
     }
 
-    public static List<Movie> setupMovies(String url) throws JSONException {
-        if (null != list) {
-            return list;
+    /**
+     * Parses a catalog and makes it the current list, replacing any previously loaded one.
+     * The reader is closed once the catalog has been read.
+     *
+     * @param listener if not {@code null}, is given the movies of each category as soon as that
+     *     category has been parsed.
+     */
+    public static List<Movie> updateMovies(Reader in, OnCategoryParsedListener listener)
+            throws IOException {
+        // Ids restart so that a refreshed catalog assigns the same ids to the same entries.
+        count = 0;
+        List<Movie> movies = Collections.unmodifiableList(parseCatalog(in, listener));
+        setList(movies);
+        return movies;
+    }
+
+    /**
+     * Parses the catalog with a pull parser, building {@link Movie} objects as the videos are read.
+     * Neither the raw document nor a JSON tree is kept in memory; at most one category's worth of
+     * video entries is buffered, because a category's URL prefixes may follow its videos.
+     */
+    static List<Movie> parseCatalog(Reader in, OnCategoryParsedListener listener)
+            throws IOException {
+        List<Movie> movies = new ArrayList<>();
+        JsonReader reader = new JsonReader(in);
+        Trace.beginSection("MovieList.parseCatalog");
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (TAG_CATEGORIES.equals(reader.nextName())) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readCategory(reader, movies, listener);
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            Trace.endSection();
+            reader.close();
         }
-        list = new ArrayList<>();
+        return movies;
+    }
 
+    private static void readCategory(
+            JsonReader reader, List<Movie> movies, OnCategoryParsedListener listener)
+            throws IOException {
+        String categoryName = null;
         Map<String, String> urlPrefixMap = new HashMap<>();
-        JSONObject jsonObj = new MovieList().parseUrl(url);
-        JSONArray categories = jsonObj.getJSONArray(TAG_CATEGORIES);
-        if (null != categories) {
-            for (int i = 0; i < categories.length(); i++) {
-                JSONObject category = categories.getJSONObject(i);
-                urlPrefixMap.put(TAG_HLS, category.getString(TAG_HLS));
-                urlPrefixMap.put(TAG_DASH, category.getString(TAG_DASH));
-                urlPrefixMap.put(TAG_MP4, category.getString(TAG_MP4));
-                urlPrefixMap.put(TAG_IMAGES, category.getString(TAG_IMAGES));
-                category.getString(TAG_NAME);
-                JSONArray videos = category.getJSONArray(TAG_VIDEOS);
-                if (null != videos) {
-                    for (int j = 0; j < videos.length(); j++) {
-                        String videoUrl = null;
-                        String mimeType = null;
-                        JSONObject video = videos.getJSONObject(j);
-                        String subTitle = video.getString(TAG_SUBTITLE);
-                        JSONArray videoSpecs = video.getJSONArray(TAG_SOURCES);
-                        if (null == videoSpecs || videoSpecs.length() == 0) {
-                            continue;
+        List<VideoEntry> videos = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case TAG_HLS:
+                case TAG_DASH:
+                case TAG_MP4:
+                case TAG_IMAGES:
+                    urlPrefixMap.put(name, nextString(reader));
+                    break;
+                case TAG_NAME:
+                    categoryName = nextString(reader);
+                    break;
+                case TAG_VIDEOS:
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        VideoEntry video = readVideo(reader);
+                        if (video != null) {
+                            videos.add(video);
                         }
-                        for (int k = 0; k < videoSpecs.length(); k++) {
-                            JSONObject videoSpec = videoSpecs.getJSONObject(k);
-                            if (TARGET_FORMAT.equals(videoSpec.getString(TAG_VIDEO_TYPE))) {
-                                videoUrl = urlPrefixMap.get(TARGET_FORMAT) + videoSpec
-                                        .getString(TAG_VIDEO_URL);
-                                mimeType = videoSpec.getString(TAG_VIDEO_MIME);
-                            }
-                        }
-                        if (videoUrl == null) {
-                            continue;
-                        }
-                        String imageUrl = urlPrefixMap.get(TAG_IMAGES) + video.getString(TAG_THUMB);
-                        String bigImageUrl = urlPrefixMap.get(TAG_IMAGES) + video
-                                .getString(TAG_IMG_780_1200);
-                        String title = video.getString(TAG_TITLE);
-                        String studio = video.getString(TAG_STUDIO);
-                        long duration = video.getInt(TAG_DURATION) * 1000;
-                        list.add(buildMovieInfo(
-                                title, subTitle, studio, videoUrl, imageUrl, bigImageUrl));
                     }
-                }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
         }
+        reader.endObject();
 
-        return list;
+        int first = movies.size();
+        String videoPrefix = urlPrefixMap.get(TARGET_FORMAT);
+        String imagePrefix = urlPrefixMap.get(TAG_IMAGES);
+        for (VideoEntry video : videos) {
+            movies.add(buildMovieInfo(
+                    video.title,
+                    video.subtitle,
+                    video.studio,
+                    videoPrefix + video.videoUrl,
+                    imagePrefix + video.thumb,
+                    imagePrefix + video.bigImage,
+                    video.seekThumbnails == null ? null : imagePrefix + video.seekThumbnails,
+                    video.duration));
+        }
+        if (listener != null && movies.size() > first) {
+            // A copy, since the parser keeps appending to the catalog list.
+            listener.onCategoryParsed(
+                    categoryName, new ArrayList<>(movies.subList(first, movies.size())));
+        }
+    }
+
+    /** Returns the video entry, or {@code null} if it has no source in {@link #TARGET_FORMAT}. */
+    private static VideoEntry readVideo(JsonReader reader) throws IOException {
+        VideoEntry video = new VideoEntry();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case TAG_SUBTITLE:
+                    video.subtitle = nextString(reader);
+                    break;
+                case TAG_SOURCES:
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readSource(reader, video);
+                    }
+                    reader.endArray();
+                    break;
+                case TAG_THUMB:
+                    video.thumb = nextString(reader);
+                    break;
+                case TAG_IMG_780_1200:
+                    video.bigImage = nextString(reader);
+                    break;
+                case TAG_SEEK_THUMBNAILS:
+                    video.seekThumbnails = nextString(reader);
+                    break;
+                case TAG_TITLE:
+                    video.title = nextString(reader);
+                    break;
+                case TAG_STUDIO:
+                    video.studio = nextString(reader);
+                    break;
+                case TAG_DURATION:
+                    video.duration = reader.nextInt() * 1000L;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return video.videoUrl != null ? video : null;
+    }
+
+    private static void readSource(JsonReader reader, VideoEntry video) throws IOException {
+        String type = null;
+        String url = null;
+        String mime = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case TAG_VIDEO_TYPE:
+                    type = nextString(reader);
+                    break;
+                case TAG_VIDEO_URL:
+                    url = nextString(reader);
+                    break;
+                case TAG_VIDEO_MIME:
+                    mime = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (TARGET_FORMAT.equals(type)) {
+            video.videoUrl = url;
+            video.mimeType = mime;
+        }
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
     }
 
     private static Movie buildMovieInfo(
@@ -161,7 +299,9 @@ public final class MovieList {
             String studio,
             String videoUrl,
             String cardImageUrl,
-            String backgroundImageUrl) {
+            String backgroundImageUrl,
+            String seekThumbnailsUrl,
+            long duration) {
         Movie movie = new Movie();
         movie.setId(count++);
         movie.setTitle(title);
@@ -170,6 +310,21 @@ public final class MovieList {
         movie.setCardImageUrl(cardImageUrl);
         movie.setBackgroundImageUrl(backgroundImageUrl);
         movie.setVideoUrl(videoUrl);
+        movie.setSeekThumbnailsUrl(seekThumbnailsUrl);
+        movie.setDuration(duration);
         return movie;
     }
-}
\ No newline at end of file
+
+    /** Fields of a video entry as they appear in the catalog, before URL prefixes are applied. */
+    private static final class VideoEntry {
+        String title;
+        String subtitle;
+        String studio;
+        String videoUrl;
+        String mimeType;
+        String thumb;
+        String bigImage;
+        String seekThumbnails;
+        long duration;
+    }
+}
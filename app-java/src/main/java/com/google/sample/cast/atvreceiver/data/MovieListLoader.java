@@ -17,28 +17,119 @@ package com.google.sample.cast.atvreceiver.data;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.google.sample.cast.atvreceiver.DebugLog;
+
+import java.io.IOException;
 import java.util.List;
 
+/**
+ * Loads the catalog, delivering the copy stored by {@link CatalogCache} first when there is one
+ * and then revalidating it against the network in a second load. The stored copy is read from
+ * its snapshot when possible, so a warm start does not parse any JSON.
+ */
 public class MovieListLoader extends AsyncTaskLoader<List<Movie>> {
 
     private static final String TAG = "MovieListLoader";
     private final String mUrl;
+    private final CatalogCache mCache;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private MovieList.OnCategoryParsedListener mOnCategoryParsedListener;
+    private boolean mRevalidated;
 
     public MovieListLoader(Context context, String url) {
         super(context);
         this.mUrl = url;
+        this.mCache = new CatalogCache(context);
     }
 
     @Override
     public List<Movie> loadInBackground() {
+        if (MovieList.getList() == null && mCache.has(mUrl)) {
+            try {
+                long start = SystemClock.elapsedRealtime();
+                List<Movie> movies = mCache.readSnapshot();
+                if (movies != null) {
+                    MovieList.setList(movies);
+                    if (DebugLog.ENABLED) {
+                        Log.d(TAG, "Mapped catalog snapshot in "
+                                + (SystemClock.elapsedRealtime() - start) + " ms");
+                    }
+                    return movies;
+                }
+                return parseCatalog();
+            } catch (Exception e) {
+                Log.w(TAG, "Discarding unreadable cached catalog", e);
+                mCache.clear();
+            }
+        }
         try {
-            return MovieList.setupMovies(mUrl);
+            if (!mRevalidated) {
+                mRevalidated = true;
+                // Only a catalog that nothing has been shown for yet is published by category.
+                final MovieList.OnCategoryParsedListener listener =
+                        MovieList.getList() == null ? mainThreadListener() : null;
+                List<Movie> movies =
+                        mCache.revalidate(mUrl, in -> MovieList.updateMovies(in, listener));
+                if (movies != null) {
+                    writeSnapshot(movies);
+                    return movies;
+                }
+                if (MovieList.getList() == null) {
+                    return parseCatalog();
+                }
+            }
+            // Returning the list that was already delivered does not trigger another
+            // onLoadFinished().
+            return MovieList.getList();
         } catch (Exception e) {
             Log.e(TAG, "Failed to fetch media data", e);
+            return MovieList.getList();
+        }
+    }
+
+    /**
+     * Sets a listener that is called on the main thread with the movies of each category while
+     * the catalog is parsed, before the complete list is delivered. It is only called for the
+     * first catalog this loader delivers.
+     */
+    public void setOnCategoryParsedListener(MovieList.OnCategoryParsedListener listener) {
+        mOnCategoryParsedListener = listener;
+    }
+
+    private MovieList.OnCategoryParsedListener mainThreadListener() {
+        final MovieList.OnCategoryParsedListener listener = mOnCategoryParsedListener;
+        if (listener == null) {
             return null;
         }
+        return (name, movies) -> mHandler.post(() -> listener.onCategoryParsed(name, movies));
+    }
+
+    private List<Movie> parseCatalog() throws IOException {
+        List<Movie> movies = MovieList.updateMovies(mCache.open(), mainThreadListener());
+        writeSnapshot(movies);
+        return movies;
+    }
+
+    private void writeSnapshot(List<Movie> movies) {
+        try {
+            mCache.writeSnapshot(movies);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write the catalog snapshot", e);
+        }
+    }
+
+    @Override
+    public void deliverResult(List<Movie> data) {
+        super.deliverResult(data);
+        if (!mRevalidated && isStarted()) {
+            // The stored catalog is on screen; check whether the server has a newer one.
+            forceLoad();
+        }
     }
 
     @Override
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.util.NetworkTypeObserver;
+import com.google.sample.cast.atvreceiver.DebugLog;
+
+/**
+ * Remembers the bandwidth measured on each type of network across sessions, so that a new player
+ * picks its first variant from the real link rather than from a country-wide default.
+ */
+public class BandwidthEstimates {
+    private static final String TAG = "BandwidthEstimates";
+
+    private static final String PREFS_NAME = "bandwidth_estimates";
+    private static final String KEY_PREFIX = "network_type_";
+
+    private static final int[] NETWORK_TYPES = {
+            C.NETWORK_TYPE_ETHERNET,
+            C.NETWORK_TYPE_WIFI,
+            C.NETWORK_TYPE_2G,
+            C.NETWORK_TYPE_3G,
+            C.NETWORK_TYPE_4G,
+            C.NETWORK_TYPE_5G_NSA,
+            C.NETWORK_TYPE_5G_SA,
+            C.NETWORK_TYPE_OTHER
+    };
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final BandwidthMeter.EventListener mSampleListener = new SampleListener();
+    // The network type of the last transfer the current meter measured, if any.
+    private int mSampledNetworkType = C.NETWORK_TYPE_UNKNOWN;
+
+    public BandwidthEstimates(Context context) {
+        mContext = context.getApplicationContext();
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /** Returns a bandwidth meter that starts from the estimates saved for each network type. */
+    public DefaultBandwidthMeter buildBandwidthMeter() {
+        DefaultBandwidthMeter.Builder builder = new DefaultBandwidthMeter.Builder(mContext);
+        for (int networkType : NETWORK_TYPES) {
+            long bitrateEstimate = mPrefs.getLong(getKey(networkType), 0);
+            if (bitrateEstimate > 0) {
+                builder.setInitialBitrateEstimate(networkType, bitrateEstimate);
+            }
+        }
+        DefaultBandwidthMeter bandwidthMeter = builder.build();
+        mSampledNetworkType = C.NETWORK_TYPE_UNKNOWN;
+        bandwidthMeter.addEventListener(mHandler, mSampleListener);
+        return bandwidthMeter;
+    }
+
+    /**
+     * Saves the current estimate of {@code bandwidthMeter}, the last meter built, for the type of
+     * network the device is on. The meter starts over whenever the network type changes, so its
+     * estimate is always about the current one. Nothing is saved unless the meter has measured a
+     * transfer on that network, as its estimate would only be the one it started from.
+     */
+    public void save(BandwidthMeter bandwidthMeter) {
+        int networkType = NetworkTypeObserver.getInstance(mContext).getNetworkType();
+        if (networkType == C.NETWORK_TYPE_UNKNOWN
+                || networkType == C.NETWORK_TYPE_OFFLINE
+                || networkType != mSampledNetworkType) {
+            return;
+        }
+        long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Bitrate estimate for network type " + networkType + ": " + bitrateEstimate);
+        }
+        mPrefs.edit().putLong(getKey(networkType), bitrateEstimate).apply();
+    }
+
+    private static String getKey(int networkType) {
+        return KEY_PREFIX + networkType;
+    }
+
+    private class SampleListener implements BandwidthMeter.EventListener {
+        @Override
+        public void onBandwidthSample(int elapsedMs, long bytesTransferred, long bitrateEstimate) {
+            // The meter also reports a changed estimate without a transfer when it starts over.
+            if (bytesTransferred > 0) {
+                mSampledNetworkType = NetworkTypeObserver.getInstance(mContext).getNetworkType();
+            }
+        }
+    }
+}
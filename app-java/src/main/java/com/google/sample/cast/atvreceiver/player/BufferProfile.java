@@ -0,0 +1,87 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+
+/**
+ * Named buffering settings of the player. A profile is picked from the device's memory class by
+ * {@link #forDevice(Context)}, unless the {@code buffer_profile} string resource names one, which
+ * the application then sets through {@link PlayerHolder#setBufferProfile}.
+ */
+public enum BufferProfile {
+    /** Small buffers, for 1 GB sticks where a full default buffer competes with the UI. */
+    LOW_MEMORY(15000, 30000, 1500, 3000, 0),
+    /** The player's own defaults. */
+    BALANCED(
+            DefaultLoadControl.DEFAULT_MIN_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+            DefaultLoadControl.DEFAULT_BACK_BUFFER_DURATION_MS),
+    /** Starts on little data and then buffers far ahead, for devices with memory to spare. */
+    FAST_START(50000, 120000, 1000, 2500, 10000);
+
+    // Memory classes, in MB, at or below which LOW_MEMORY and at or above which FAST_START is
+    // picked.
+    private static final int LOW_MEMORY_CLASS_MB = 128;
+    private static final int HIGH_MEMORY_CLASS_MB = 384;
+
+    private final int mMinBufferMs;
+    private final int mMaxBufferMs;
+    private final int mBufferForPlaybackMs;
+    private final int mBufferForPlaybackAfterRebufferMs;
+    private final int mBackBufferMs;
+
+    BufferProfile(
+            int minBufferMs,
+            int maxBufferMs,
+            int bufferForPlaybackMs,
+            int bufferForPlaybackAfterRebufferMs,
+            int backBufferMs) {
+        mMinBufferMs = minBufferMs;
+        mMaxBufferMs = maxBufferMs;
+        mBufferForPlaybackMs = bufferForPlaybackMs;
+        mBufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+        mBackBufferMs = backBufferMs;
+    }
+
+    /** Returns the profile that suits the memory class of the device. */
+    public static BufferProfile forDevice(Context context) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClassMb = activityManager.getMemoryClass();
+        if (activityManager.isLowRamDevice() || memoryClassMb <= LOW_MEMORY_CLASS_MB) {
+            return LOW_MEMORY;
+        }
+        return memoryClassMb >= HIGH_MEMORY_CLASS_MB ? FAST_START : BALANCED;
+    }
+
+    public LoadControl buildLoadControl() {
+        return new DefaultLoadControl.Builder()
+                .setBufferDurationsMs(
+                        mMinBufferMs,
+                        mMaxBufferMs,
+                        mBufferForPlaybackMs,
+                        mBufferForPlaybackAfterRebufferMs)
+                .setBackBuffer(mBackBufferMs, /* retainBackBufferFromKeyframe= */ true)
+                .build();
+    }
+}
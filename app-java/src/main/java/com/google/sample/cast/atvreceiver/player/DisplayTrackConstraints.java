@@ -0,0 +1,183 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.media.MediaCodecInfo.VideoCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Display;
+
+import com.google.android.exoplayer2.mediacodec.MediaCodecInfo;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.util.MimeTypes;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the video tracks that the player may select within what the display and the decoder can
+ * actually show: no larger than the current display mode or the largest size the decoder
+ * supports, and no faster than the display's refresh rate. The limits are applied again whenever
+ * the display mode changes.
+ *
+ * <p>The decoder is queried once per process, on a background thread. Until its answer is in,
+ * only the display limits the tracks.
+ */
+public class DisplayTrackConstraints implements DisplayManager.DisplayListener {
+    private static final String TAG = "DisplayTrackConstraints";
+
+    // The codec of the catalog's streams, whose decoder limits the size and frame rate.
+    private static final String VIDEO_MIME_TYPE = MimeTypes.VIDEO_H264;
+
+    // A single thread, so that the decoder is only ever queried once.
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+    private static volatile boolean sDecoderQueried;
+    private static volatile VideoCapabilities sDecoderCapabilities;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mOnDecoderQueried = new Runnable() {
+        @Override
+        public void run() {
+            if (mStarted) {
+                update();
+            }
+        }
+    };
+    private final DisplayManager mDisplayManager;
+    private final DefaultTrackSelector mTrackSelector;
+    private int mMaxWidth = Integer.MAX_VALUE;
+    private int mMaxHeight = Integer.MAX_VALUE;
+    private int mMaxFrameRate = Integer.MAX_VALUE;
+    private boolean mStarted;
+
+    public DisplayTrackConstraints(Context context, DefaultTrackSelector trackSelector) {
+        mDisplayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        mTrackSelector = trackSelector;
+    }
+
+    /** Applies the limits of the current display mode and follows its changes. */
+    public void start() {
+        mStarted = true;
+        mDisplayManager.registerDisplayListener(this, mHandler);
+        update();
+        if (!sDecoderQueried) {
+            sExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!sDecoderQueried) {
+                        sDecoderCapabilities = queryDecoderCapabilities();
+                        sDecoderQueried = true;
+                    }
+                    mHandler.post(mOnDecoderQueried);
+                }
+            });
+        }
+    }
+
+    public void release() {
+        mStarted = false;
+        mHandler.removeCallbacks(mOnDecoderQueried);
+        mDisplayManager.unregisterDisplayListener(this);
+    }
+
+    /** Returns the largest width of the video tracks that may be selected. */
+    public int getMaxWidth() {
+        return mMaxWidth;
+    }
+
+    /** Returns the largest height of the video tracks that may be selected. */
+    public int getMaxHeight() {
+        return mMaxHeight;
+    }
+
+    /** Returns the highest frame rate of the video tracks that may be selected. */
+    public int getMaxFrameRate() {
+        return mMaxFrameRate;
+    }
+
+    @Override
+    public void onDisplayChanged(int displayId) {
+        if (displayId == Display.DEFAULT_DISPLAY) {
+            update();
+        }
+    }
+
+    @Override
+    public void onDisplayAdded(int displayId) {
+    }
+
+    @Override
+    public void onDisplayRemoved(int displayId) {
+    }
+
+    private void update() {
+        Display display = mDisplayManager.getDisplay(Display.DEFAULT_DISPLAY);
+        if (display == null) {
+            return;
+        }
+        Display.Mode mode = display.getMode();
+        int maxWidth = mode.getPhysicalWidth();
+        int maxHeight = mode.getPhysicalHeight();
+        // A frame rate above the refresh rate can only be shown by dropping frames.
+        int maxFrameRate = Math.round(mode.getRefreshRate());
+
+        VideoCapabilities capabilities = sDecoderCapabilities;
+        if (capabilities != null) {
+            maxWidth = Math.min(maxWidth, capabilities.getSupportedWidths().getUpper());
+            maxHeight = Math.min(maxHeight, capabilities.getSupportedHeights().getUpper());
+            if (capabilities.isSizeSupported(maxWidth, maxHeight)) {
+                maxFrameRate = Math.min(maxFrameRate, (int) Math.floor(
+                        capabilities.getSupportedFrameRatesFor(maxWidth, maxHeight).getUpper()));
+            }
+        }
+        if (maxWidth == mMaxWidth && maxHeight == mMaxHeight && maxFrameRate == mMaxFrameRate) {
+            return;
+        }
+        mMaxWidth = maxWidth;
+        mMaxHeight = maxHeight;
+        mMaxFrameRate = maxFrameRate;
+        // Rare enough to log in every build: once per player, and on display mode changes.
+        Log.i(TAG, "Video tracks limited to " + this);
+        mTrackSelector.setParameters(mTrackSelector.buildUponParameters()
+                .setMaxVideoSize(maxWidth, maxHeight)
+                .setMaxVideoFrameRate(maxFrameRate));
+    }
+
+    /** Returns the capabilities of the decoder the player would use, if there is one. */
+    private static VideoCapabilities queryDecoderCapabilities() {
+        try {
+            MediaCodecInfo decoderInfo = MediaCodecUtil.getDecoderInfo(
+                    VIDEO_MIME_TYPE, /* secure= */ false, /* tunneling= */ false);
+            if (decoderInfo == null || decoderInfo.capabilities == null) {
+                return null;
+            }
+            return decoderInfo.capabilities.getVideoCapabilities();
+        } catch (MediaCodecUtil.DecoderQueryException e) {
+            Log.w(TAG, "Cannot query the " + VIDEO_MIME_TYPE + " decoder", e);
+            return null;
+        }
+    }
+
+    /** Returns the limits currently applied, for diagnostics. */
+    @Override
+    public String toString() {
+        return mMaxWidth + "x" + mMaxHeight + " at " + mMaxFrameRate + " fps";
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import android.content.Context;
+import android.os.StatFs;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.database.StandaloneDatabaseProvider;
+import com.google.android.exoplayer2.drm.DrmSessionManagerProvider;
+import com.google.android.exoplayer2.source.DefaultMediaSourceFactory;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.hls.HlsDataSourceFactory;
+import com.google.android.exoplayer2.source.hls.HlsMediaSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultDataSource;
+import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of HLS media segments, shared by the player and {@link NextItemPreloader}.
+ * Only segments go through the cache: playlists are always fetched from the network, so live
+ * playlists keep refreshing.
+ *
+ * <p>By default the cache only lives as long as the process, which is enough for preloading. When
+ * {@link #configure(boolean, long) configured} as persistent, it keeps segments across launches,
+ * so that titles that are watched again or resumed play from disk. Either way the least recently
+ * used segments are evicted once the cache is full.
+ *
+ * <p>The cache is only opened, which reads its index from disk, when the first data source that
+ * reads through it is created. That happens on the player's loading thread or on the preloader's,
+ * so neither startup nor building the player waits for it.
+ */
+public final class MediaCache {
+    private static final String DIRECTORY = "media";
+    private static final String SESSION_DIRECTORY = "media-session";
+    /** Size of the cache unless configured otherwise. */
+    public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+    // Configured size that stands for getMaxBytesForStorage(), worked out when the cache opens.
+    private static final long MAX_BYTES_FOR_STORAGE = C.LENGTH_UNSET;
+
+    private static final long GIGABYTE = 1024 * 1024 * 1024;
+    // Share of the free storage that the cache may take at most.
+    private static final int FREE_STORAGE_DIVISOR = 4;
+
+    private static boolean sPersistent;
+    private static long sMaxBytes = DEFAULT_MAX_BYTES;
+    private static SimpleCache sCache;
+
+    private static final AtomicLong sHitBytes = new AtomicLong();
+    private static final AtomicLong sMissBytes = new AtomicLong();
+    private static final CacheDataSource.EventListener sCacheEventListener =
+            new CacheDataSource.EventListener() {
+                @Override
+                public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+                    sHitBytes.addAndGet(cachedBytesRead);
+                }
+
+                @Override
+                public void onCacheIgnored(int reason) {
+                }
+            };
+    private static final TransferListener sMissListener = new TransferListener() {
+        @Override
+        public void onTransferInitializing(
+                DataSource source, DataSpec dataSpec, boolean isNetwork) {
+        }
+
+        @Override
+        public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+        }
+
+        @Override
+        public void onBytesTransferred(
+                DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+            if (isNetwork) {
+                sMissBytes.addAndGet(bytesTransferred);
+            }
+        }
+
+        @Override
+        public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+        }
+    };
+
+    private MediaCache() {
+    }
+
+    /**
+     * Sets up the cache, sized with {@link #getMaxBytesForStorage(Context)} once it opens. This
+     * must be called before the cache is first used, typically from
+     * {@link android.app.Application#onCreate()}.
+     *
+     * @param persistent whether segments are kept across launches of the app.
+     */
+    public static void configure(boolean persistent) {
+        configure(persistent, MAX_BYTES_FOR_STORAGE);
+    }
+
+    /**
+     * Sets up the cache. This must be called before the cache is first used, typically from
+     * {@link android.app.Application#onCreate()}.
+     *
+     * @param persistent whether segments are kept across launches of the app.
+     * @param maxBytes the size above which the least recently used segments are evicted.
+     */
+    public static synchronized void configure(boolean persistent, long maxBytes) {
+        if (sCache != null) {
+            throw new IllegalStateException("The media cache is already in use");
+        }
+        sPersistent = persistent;
+        sMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a cache size suited to the device's storage: larger on devices with more storage,
+     * and never more than a quarter of the storage that is free. This queries the file system, so
+     * call it off the UI thread.
+     */
+    public static long getMaxBytesForStorage(Context context) {
+        StatFs stat = new StatFs(context.getCacheDir().getPath());
+        long totalBytes = stat.getTotalBytes();
+        long maxBytes;
+        if (totalBytes <= 8 * GIGABYTE) {
+            maxBytes = 128 * 1024 * 1024;
+        } else if (totalBytes <= 32 * GIGABYTE) {
+            maxBytes = 512 * 1024 * 1024;
+        } else {
+            maxBytes = GIGABYTE;
+        }
+        return Math.min(maxBytes, stat.getAvailableBytes() / FREE_STORAGE_DIVISOR);
+    }
+
+    /** Returns the number of segment bytes the player has read from the cache. */
+    public static long getHitBytes() {
+        return sHitBytes.get();
+    }
+
+    /** Returns the number of segment bytes the player had to fetch from the network. */
+    public static long getMissBytes() {
+        return sMissBytes.get();
+    }
+
+    /** Returns the share of segment bytes read from the cache, or 0 if nothing has been read. */
+    public static float getHitRatio() {
+        long hitBytes = sHitBytes.get();
+        long totalBytes = hitBytes + sMissBytes.get();
+        return totalBytes == 0 ? 0 : (float) hitBytes / totalBytes;
+    }
+
+    private static synchronized SimpleCache getCache(Context context) {
+        if (sCache == null) {
+            Context appContext = context.getApplicationContext();
+            StandaloneDatabaseProvider databaseProvider =
+                    new StandaloneDatabaseProvider(appContext);
+            File directory;
+            if (sPersistent) {
+                directory = new File(appContext.getCacheDir(), DIRECTORY);
+            } else {
+                // Drop whatever the previous process left behind, including the segments kept by
+                // a build that was configured with a persistent cache.
+                directory = new File(appContext.getCacheDir(), SESSION_DIRECTORY);
+                SimpleCache.delete(directory, databaseProvider);
+                SimpleCache.delete(new File(appContext.getCacheDir(), DIRECTORY), databaseProvider);
+            }
+            long maxBytes = sMaxBytes == MAX_BYTES_FOR_STORAGE
+                    ? getMaxBytesForStorage(appContext)
+                    : sMaxBytes;
+            sCache = new SimpleCache(
+                    directory, new LeastRecentlyUsedCacheEvictor(maxBytes), databaseProvider);
+        }
+        return sCache;
+    }
+
+    /** Returns a factory of data sources that fetch from the network. */
+    public static DataSource.Factory newUpstreamDataSourceFactory(Context context) {
+        return new DefaultDataSource.Factory(context.getApplicationContext());
+    }
+
+    /** Returns a factory of data sources that read through the segment cache. */
+    public static SegmentDataSourceFactory newCacheDataSourceFactory(Context context) {
+        return new SegmentDataSourceFactory(
+                context, newUpstreamDataSourceFactory(context), /* eventListener= */ null);
+    }
+
+    /**
+     * Returns a media source factory for the player that reads HLS segments through the cache and
+     * counts cache hits and misses.
+     */
+    public static MediaSource.Factory newMediaSourceFactory(Context context) {
+        SegmentDataSourceFactory segmentFactory = new SegmentDataSourceFactory(
+                context,
+                new DefaultDataSource.Factory(context.getApplicationContext())
+                        .setTransferListener(sMissListener),
+                sCacheEventListener);
+        return new CachingMediaSourceFactory(
+                new HlsMediaSource.Factory(new SegmentCachingHlsDataSourceFactory(
+                        newUpstreamDataSourceFactory(context), segmentFactory)),
+                new DefaultMediaSourceFactory(context));
+    }
+
+    /**
+     * Factory of data sources that read through the segment cache, which it opens when it creates
+     * its first data source.
+     */
+    public static final class SegmentDataSourceFactory implements DataSource.Factory {
+        private final Context mContext;
+        private final DataSource.Factory mUpstreamFactory;
+        @Nullable private final CacheDataSource.EventListener mEventListener;
+        private CacheDataSource.Factory mFactory;
+
+        SegmentDataSourceFactory(
+                Context context,
+                DataSource.Factory upstreamFactory,
+                @Nullable CacheDataSource.EventListener eventListener) {
+            mContext = context.getApplicationContext();
+            mUpstreamFactory = upstreamFactory;
+            mEventListener = eventListener;
+        }
+
+        /** Returns a new data source, opening the cache first if needed. Does disk I/O. */
+        @Override
+        public synchronized CacheDataSource createDataSource() {
+            if (mFactory == null) {
+                mFactory = new CacheDataSource.Factory()
+                        .setCache(getCache(mContext))
+                        .setUpstreamDataSourceFactory(mUpstreamFactory)
+                        .setEventListener(mEventListener);
+            }
+            return mFactory.createDataSource();
+        }
+    }
+
+    private static final class SegmentCachingHlsDataSourceFactory implements HlsDataSourceFactory {
+        private final DataSource.Factory mPlaylistFactory;
+        private final DataSource.Factory mSegmentFactory;
+
+        SegmentCachingHlsDataSourceFactory(
+                DataSource.Factory playlistFactory, DataSource.Factory segmentFactory) {
+            mPlaylistFactory = playlistFactory;
+            mSegmentFactory = segmentFactory;
+        }
+
+        @Override
+        public DataSource createDataSource(int dataType) {
+            return dataType == C.DATA_TYPE_MANIFEST
+                    ? mPlaylistFactory.createDataSource()
+                    : mSegmentFactory.createDataSource();
+        }
+    }
+
+    /** Creates HLS media sources with the caching factory and every other source as usual. */
+    private static final class CachingMediaSourceFactory implements MediaSource.Factory {
+        private final MediaSource.Factory mHlsFactory;
+        private final MediaSource.Factory mDefaultFactory;
+
+        CachingMediaSourceFactory(
+                MediaSource.Factory hlsFactory, MediaSource.Factory defaultFactory) {
+            mHlsFactory = hlsFactory;
+            mDefaultFactory = defaultFactory;
+        }
+
+        @Override
+        public MediaSource.Factory setDrmSessionManagerProvider(
+                DrmSessionManagerProvider drmSessionManagerProvider) {
+            mHlsFactory.setDrmSessionManagerProvider(drmSessionManagerProvider);
+            mDefaultFactory.setDrmSessionManagerProvider(drmSessionManagerProvider);
+            return this;
+        }
+
+        @Override
+        public MediaSource.Factory setLoadErrorHandlingPolicy(
+                LoadErrorHandlingPolicy loadErrorHandlingPolicy) {
+            mHlsFactory.setLoadErrorHandlingPolicy(loadErrorHandlingPolicy);
+            mDefaultFactory.setLoadErrorHandlingPolicy(loadErrorHandlingPolicy);
+            return this;
+        }
+
+        @Override
+        public int[] getSupportedTypes() {
+            return mDefaultFactory.getSupportedTypes();
+        }
+
+        @Override
+        public MediaSource createMediaSource(MediaItem mediaItem) {
+            MediaItem.LocalConfiguration configuration = mediaItem.localConfiguration;
+            if (configuration != null
+                    && Util.inferContentTypeForUriAndMimeType(
+                            configuration.uri, configuration.mimeType) == C.CONTENT_TYPE_HLS) {
+                return mHlsFactory.createMediaSource(mediaItem);
+            }
+            return mDefaultFactory.createMediaSource(mediaItem);
+        }
+    }
+}
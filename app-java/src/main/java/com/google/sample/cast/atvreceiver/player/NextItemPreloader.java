@@ -0,0 +1,277 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMultivariantPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceInputStream;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.CacheWriter;
+import com.google.android.exoplayer2.util.UriUtil;
+import com.google.android.exoplayer2.util.Util;
+import com.google.sample.cast.atvreceiver.DebugLog;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Preloads the start of the next item of the player's playlist, so that moving on to it, on its
+ * own or through next, does not start with fetching its first segments.
+ *
+ * <p>Once the current item has played past a configurable position, the next item's HLS
+ * playlists are resolved and its first seconds are written into the {@link MediaCache}, up to a
+ * byte budget. The player reads segments through the same cache, which hands the preloaded data
+ * over when the transition happens.
+ */
+public class NextItemPreloader implements Player.Listener {
+    private static final String TAG = "NextItemPreloader";
+
+    /** Default position in the current item after which the next item is preloaded. */
+    public static final long DEFAULT_PRELOAD_POSITION_MS = 10_000;
+    /** Default number of bytes that may be preloaded for an item. */
+    public static final long DEFAULT_MAX_PRELOAD_BYTES = 8 * 1024 * 1024;
+
+    // Media time of the next item to preload.
+    private static final long PRELOAD_DURATION_US = 6_000_000;
+    private static final long POSITION_CHECK_INTERVAL_MS = 1_000;
+
+    private final ExoPlayer mPlayer;
+    private final DataSource.Factory mPlaylistDataSourceFactory;
+    private final MediaCache.SegmentDataSourceFactory mSegmentDataSourceFactory;
+    private final long mPreloadPositionMs;
+    private final long mMaxPreloadBytes;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Runnable mCheckPosition = new Runnable() {
+        @Override
+        public void run() {
+            maybePreloadNextItem();
+            mHandler.postDelayed(this, POSITION_CHECK_INTERVAL_MS);
+        }
+    };
+
+    private PreloadTask mTask;
+
+    public NextItemPreloader(
+            ExoPlayer player,
+            DataSource.Factory playlistDataSourceFactory,
+            MediaCache.SegmentDataSourceFactory segmentDataSourceFactory,
+            long preloadPositionMs,
+            long maxPreloadBytes) {
+        mPlayer = player;
+        mPlaylistDataSourceFactory = playlistDataSourceFactory;
+        mSegmentDataSourceFactory = segmentDataSourceFactory;
+        mPreloadPositionMs = preloadPositionMs;
+        mMaxPreloadBytes = maxPreloadBytes;
+        mPlayer.addListener(this);
+    }
+
+    /** Stops preloading. The preloader cannot be used afterwards. */
+    public void release() {
+        mPlayer.removeListener(this);
+        mHandler.removeCallbacks(mCheckPosition);
+        cancelTask();
+        mExecutor.shutdown();
+    }
+
+    @Override
+    public void onIsPlayingChanged(boolean isPlaying) {
+        mHandler.removeCallbacks(mCheckPosition);
+        if (isPlaying) {
+            mHandler.post(mCheckPosition);
+        }
+    }
+
+    @Override
+    public void onMediaItemTransition(MediaItem mediaItem, int reason) {
+        // The player now reads the new item itself, taking whatever has been preloaded.
+        cancelTask();
+    }
+
+    private void maybePreloadNextItem() {
+        if (mPlayer.getCurrentPosition() < mPreloadPositionMs) {
+            return;
+        }
+        int nextIndex = mPlayer.getNextMediaItemIndex();
+        if (nextIndex == C.INDEX_UNSET) {
+            return;
+        }
+        MediaItem.LocalConfiguration next = mPlayer.getMediaItemAt(nextIndex).localConfiguration;
+        if (next == null
+                || Util.inferContentTypeForUriAndMimeType(next.uri, next.mimeType)
+                        != C.CONTENT_TYPE_HLS
+                || (mTask != null && mTask.mUri.equals(next.uri))) {
+            return;
+        }
+        cancelTask();
+        Format format = mPlayer.getVideoFormat();
+        mTask = new PreloadTask(next.uri, format == null ? Format.NO_VALUE : format.bitrate);
+        mExecutor.execute(mTask);
+    }
+
+    private void cancelTask() {
+        if (mTask != null) {
+            mTask.cancel();
+            mTask = null;
+        }
+    }
+
+    private final class PreloadTask implements Runnable {
+        final Uri mUri;
+        private final int mBitrate;
+        private volatile boolean mCanceled;
+        private volatile CacheWriter mWriter;
+        private long mBytesCached;
+
+        PreloadTask(Uri uri, int bitrate) {
+            mUri = uri;
+            mBitrate = bitrate;
+        }
+
+        void cancel() {
+            mCanceled = true;
+            CacheWriter writer = mWriter;
+            if (writer != null) {
+                writer.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (mCanceled) {
+                return;
+            }
+            try {
+                HlsPlaylist playlist = readPlaylist(mUri);
+                if (playlist instanceof HlsMultivariantPlaylist) {
+                    HlsMultivariantPlaylist.Variant variant =
+                            selectVariant((HlsMultivariantPlaylist) playlist);
+                    if (variant == null || mCanceled) {
+                        return;
+                    }
+                    playlist = readPlaylist(variant.url);
+                }
+                preloadSegments((HlsMediaPlaylist) playlist);
+                if (DebugLog.ENABLED) {
+                    Log.d(TAG, "Preloaded " + mBytesCached + " bytes of " + mUri);
+                }
+            } catch (InterruptedIOException e) {
+                if (DebugLog.ENABLED) {
+                    Log.d(TAG, "Stopped preloading " + mUri + " after " + mBytesCached + " bytes");
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Failed to preload " + mUri, e);
+            }
+        }
+
+        private HlsPlaylist readPlaylist(Uri uri) throws IOException {
+            DataSourceInputStream in = new DataSourceInputStream(
+                    mPlaylistDataSourceFactory.createDataSource(), new DataSpec(uri));
+            try {
+                return new HlsPlaylistParser().parse(uri, in);
+            } finally {
+                Util.closeQuietly(in);
+            }
+        }
+
+        /**
+         * Returns the variant with the highest bitrate not above the one currently playing, which
+         * is the variant the player is most likely to start the next item with.
+         */
+        private HlsMultivariantPlaylist.Variant selectVariant(HlsMultivariantPlaylist playlist) {
+            if (playlist.variants.isEmpty()) {
+                return null;
+            }
+            if (mBitrate == Format.NO_VALUE) {
+                // Nothing is playing yet, so the player starts with the first variant listed.
+                return playlist.variants.get(0);
+            }
+            HlsMultivariantPlaylist.Variant selected = null;
+            HlsMultivariantPlaylist.Variant lowest = null;
+            for (HlsMultivariantPlaylist.Variant variant : playlist.variants) {
+                int bitrate = variant.format.bitrate;
+                if (lowest == null || bitrate < lowest.format.bitrate) {
+                    lowest = variant;
+                }
+                if (bitrate <= mBitrate && (selected == null || bitrate > selected.format.bitrate)) {
+                    selected = variant;
+                }
+            }
+            return selected != null ? selected : lowest;
+        }
+
+        private void preloadSegments(HlsMediaPlaylist playlist) throws IOException {
+            HlsMediaPlaylist.Segment initializationSegment = null;
+            for (HlsMediaPlaylist.Segment segment : playlist.segments) {
+                if (mCanceled
+                        || segment.relativeStartTimeUs >= PRELOAD_DURATION_US
+                        || mBytesCached >= mMaxPreloadBytes) {
+                    return;
+                }
+                if (segment.initializationSegment != null
+                        && segment.initializationSegment != initializationSegment) {
+                    initializationSegment = segment.initializationSegment;
+                    preloadSegment(playlist, initializationSegment);
+                }
+                preloadSegment(playlist, segment);
+            }
+        }
+
+        private void preloadSegment(HlsMediaPlaylist playlist, HlsMediaPlaylist.Segment segment)
+                throws IOException {
+            DataSpec dataSpec = new DataSpec.Builder()
+                    .setUri(UriUtil.resolveToUri(playlist.baseUri, segment.url))
+                    .setPosition(segment.byteRangeOffset)
+                    .setLength(segment.byteRangeLength)
+                    .build();
+            CacheWriter writer = new CacheWriter(
+                    mSegmentDataSourceFactory.createDataSource(),
+                    dataSpec,
+                    /* temporaryBuffer= */ null,
+                    new CacheWriter.ProgressListener() {
+                        @Override
+                        public void onProgress(
+                                long requestLength, long bytesCached, long newBytesCached) {
+                            mBytesCached += newBytesCached;
+                            if (mBytesCached >= mMaxPreloadBytes) {
+                                // Over budget: stop here and leave the rest to the player.
+                                cancel();
+                            }
+                        }
+                    });
+            mWriter = writer;
+            if (mCanceled) {
+                return;
+            }
+            writer.cache();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.google.sample.cast.atvreceiver.DebugLog;
+
+/**
+ * Collects playback metrics from the player's analytics events.
+ *
+ * <p>The stall of a transition is the time from the player moving to another item, on its own or
+ * through a seek such as next or previous, until that item is playing. Transitions while playback
+ * is paused are not counted.
+ *
+ * <p>The latency of a LOAD is the time from the receiver getting a Cast LOAD request, or the
+ * playback screen being asked to play a title chosen in the app, until the first frame of the
+ * loaded media is rendered.
+ *
+ * <p>A rebuffer is the player running out of data while playing an item it had already started,
+ * as opposed to buffering after a LOAD, a transition or a seek. Every metric is reported together
+ * with the {@link BufferProfile} of the player, so that the profiles can be compared.
+ */
+public class PlaybackMetrics implements AnalyticsListener {
+    private static final String TAG = "PlaybackMetrics";
+
+    private final BufferProfile mBufferProfile;
+
+    private long mTransitionStartMs = C.TIME_UNSET;
+    private int mTransitionCount;
+    private long mTotalTransitionStallMs;
+    private long mMaxTransitionStallMs;
+    private long mLoadStartMs = C.TIME_UNSET;
+    private int mLoadCount;
+    private long mTotalLoadToFirstFrameMs;
+    // Whether the current item has been ready since it was loaded, reached or seeked to.
+    private boolean mReady;
+    private int mRebufferCount;
+    private DisplayTrackConstraints mTrackConstraints;
+
+    public PlaybackMetrics(BufferProfile bufferProfile) {
+        mBufferProfile = bufferProfile;
+    }
+
+    /**
+     * Starts measuring a LOAD received at {@code realtimeMs}, as given by
+     * {@link SystemClock#elapsedRealtime()}.
+     */
+    public void onLoadStarted(long realtimeMs) {
+        mLoadStartMs = realtimeMs;
+        mReady = false;
+    }
+
+    /**
+     * Forgets what was being measured on a player that has been released. A LOAD that has started
+     * stays measured, on the next player that these metrics are attached to.
+     */
+    public void onPlayerReleased() {
+        mTransitionStartMs = C.TIME_UNSET;
+        mReady = false;
+    }
+
+    /** Returns the video track limits of the latest player, or {@code null} if there was none. */
+    public DisplayTrackConstraints getTrackConstraints() {
+        return mTrackConstraints;
+    }
+
+    void setTrackConstraints(DisplayTrackConstraints trackConstraints) {
+        mTrackConstraints = trackConstraints;
+    }
+
+    @Override
+    public void onPlaybackStateChanged(EventTime eventTime, int state) {
+        if (state == Player.STATE_READY) {
+            mReady = true;
+        } else if (state == Player.STATE_BUFFERING && mReady) {
+            mReady = false;
+            mRebufferCount++;
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "[" + mBufferProfile + "] Rebuffer " + mRebufferCount);
+            }
+        } else {
+            mReady = false;
+        }
+    }
+
+    @Override
+    public void onPositionDiscontinuity(
+            EventTime eventTime,
+            Player.PositionInfo oldPosition,
+            Player.PositionInfo newPosition,
+            int reason) {
+        if (reason == Player.DISCONTINUITY_REASON_SEEK
+                || reason == Player.DISCONTINUITY_REASON_SEEK_ADJUSTMENT) {
+            mReady = false;
+        }
+    }
+
+    @Override
+    public void onRenderedFirstFrame(EventTime eventTime, Object output, long renderTimeMs) {
+        if (mLoadStartMs == C.TIME_UNSET) {
+            return;
+        }
+        long latencyMs = eventTime.realtimeMs - mLoadStartMs;
+        mLoadStartMs = C.TIME_UNSET;
+        mLoadCount++;
+        mTotalLoadToFirstFrameMs += latencyMs;
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "[" + mBufferProfile + "] LOAD to first frame: " + latencyMs
+                    + " ms, average " + getAverageLoadToFirstFrameMs() + " ms over " + mLoadCount);
+        }
+    }
+
+    @Override
+    public void onMediaItemTransition(EventTime eventTime, MediaItem mediaItem, int reason) {
+        mReady = false;
+        if (mediaItem != null && (reason == Player.MEDIA_ITEM_TRANSITION_REASON_AUTO
+                || reason == Player.MEDIA_ITEM_TRANSITION_REASON_SEEK)) {
+            mTransitionStartMs = eventTime.realtimeMs;
+        } else {
+            mTransitionStartMs = C.TIME_UNSET;
+        }
+    }
+
+    @Override
+    public void onEvents(Player player, Events events) {
+        if (mTransitionStartMs == C.TIME_UNSET) {
+            return;
+        }
+        if (!player.getPlayWhenReady()) {
+            mTransitionStartMs = C.TIME_UNSET;
+        } else if (player.isPlaying()) {
+            long stallMs = SystemClock.elapsedRealtime() - mTransitionStartMs;
+            mTransitionStartMs = C.TIME_UNSET;
+            mTransitionCount++;
+            mTotalTransitionStallMs += stallMs;
+            mMaxTransitionStallMs = Math.max(mMaxTransitionStallMs, stallMs);
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "[" + mBufferProfile + "] Transition stall: " + stallMs + " ms, average "
+                        + getAverageTransitionStallMs() + " ms over " + mTransitionCount);
+            }
+        }
+    }
+
+    /** Returns the buffer profile of the player that these metrics are about. */
+    public BufferProfile getBufferProfile() {
+        return mBufferProfile;
+    }
+
+    /** Returns the number of transitions measured so far. */
+    public int getTransitionCount() {
+        return mTransitionCount;
+    }
+
+    /** Returns the average transition stall, or 0 if no transition has been measured. */
+    public long getAverageTransitionStallMs() {
+        return mTransitionCount == 0 ? 0 : mTotalTransitionStallMs / mTransitionCount;
+    }
+
+    /** Returns the longest transition stall measured so far. */
+    public long getMaxTransitionStallMs() {
+        return mMaxTransitionStallMs;
+    }
+
+    /** Returns the number of LOADs measured so far. */
+    public int getLoadCount() {
+        return mLoadCount;
+    }
+
+    /** Returns the average LOAD to first frame latency, or 0 if no LOAD has been measured. */
+    public long getAverageLoadToFirstFrameMs() {
+        return mLoadCount == 0 ? 0 : mTotalLoadToFirstFrameMs / mLoadCount;
+    }
+
+    /** Returns the number of rebuffers counted so far. */
+    public int getRebufferCount() {
+        return mRebufferCount;
+    }
+
+    /** Returns a one-line summary of the metrics, for logging. */
+    @Override
+    public String toString() {
+        return mBufferProfile + ": " + mLoadCount + " LOADs, " + getAverageLoadToFirstFrameMs()
+                + " ms average to first frame, " + mRebufferCount + " rebuffers, "
+                + getAverageTransitionStallMs() + " ms average transition stall, video tracks "
+                + "limited to " + mTrackConstraints;
+    }
+}
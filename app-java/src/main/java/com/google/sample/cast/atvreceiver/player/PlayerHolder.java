@@ -0,0 +1,243 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.util.Log;
+
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.ext.mediasession.MediaSessionConnector;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.sample.cast.atvreceiver.DebugLog;
+
+import java.util.EnumMap;
+
+/**
+ * Owns the player and the media session for the whole process, so that a playback screen that
+ * is recreated, for example for every Cast LOAD, reuses a warm player instead of setting up
+ * codecs and renderers again.
+ *
+ * <p>A screen {@link #acquirePlayer() acquires} the player while it is started and
+ * {@link #returnPlayer() returns} it when it stops. A returned player is kept idle in foreground
+ * mode, holding on to its codecs, and is only released on memory pressure or once it has been
+ * idle for {@link #IDLE_TIMEOUT_MS}. Must be used on the main thread.
+ */
+public final class PlayerHolder implements ComponentCallbacks2 {
+    private static final String TAG = "PlayerHolder";
+
+    private static final long IDLE_TIMEOUT_MS = 2 * 60 * 1000;
+
+    private static PlayerHolder sInstance;
+
+    private final Context mContext;
+    private final BandwidthEstimates mBandwidthEstimates;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mReleaseIdlePlayer = new Runnable() {
+        @Override
+        public void run() {
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "Releasing the player after " + IDLE_TIMEOUT_MS + " ms idle");
+            }
+            releasePlayer();
+        }
+    };
+
+    private SimpleExoPlayer mPlayer;
+    private DefaultBandwidthMeter mBandwidthMeter;
+    private DisplayTrackConstraints mDisplayTrackConstraints;
+    private MediaSessionCompat mMediaSession;
+    private MediaSessionConnector mMediaSessionConnector;
+    private PlaylistWindow mPlaylistWindow;
+    private NextItemPreloader mNextItemPreloader;
+    // One per buffer profile, kept across players, so that a LOAD can be measured from before its
+    // player is built and each profile keeps adding up over the life of the process.
+    private final EnumMap<BufferProfile, PlaybackMetrics> mPlaybackMetrics =
+            new EnumMap<>(BufferProfile.class);
+    // The metrics of the current player, if there is one.
+    private PlaybackMetrics mPlayerMetrics;
+    private boolean mInUse;
+    private BufferProfile mBufferProfile;
+
+    private PlayerHolder(Context context) {
+        mContext = context;
+        mBandwidthEstimates = new BandwidthEstimates(context);
+    }
+
+    public static PlayerHolder getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new PlayerHolder(appContext);
+            appContext.registerComponentCallbacks(sInstance);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the player, building it and the media session only if there is no idle one, and
+     * keeps it until {@link #returnPlayer()}.
+     */
+    public ExoPlayer acquirePlayer() {
+        mHandler.removeCallbacks(mReleaseIdlePlayer);
+        mInUse = true;
+        if (mPlayer == null) {
+            BufferProfile bufferProfile = getBufferProfile();
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "Building the player with buffer profile " + bufferProfile);
+            }
+            mBandwidthMeter = mBandwidthEstimates.buildBandwidthMeter();
+            DefaultTrackSelector trackSelector = new DefaultTrackSelector(mContext);
+            mDisplayTrackConstraints = new DisplayTrackConstraints(mContext, trackSelector);
+            mDisplayTrackConstraints.start();
+            mPlayer = new SimpleExoPlayer.Builder(mContext)
+                    .setMediaSourceFactory(MediaCache.newMediaSourceFactory(mContext))
+                    .setLoadControl(bufferProfile.buildLoadControl())
+                    .setBandwidthMeter(mBandwidthMeter)
+                    .setTrackSelector(trackSelector)
+                    .build();
+            mPlayerMetrics = getPlaybackMetrics(bufferProfile);
+            mPlayerMetrics.setTrackConstraints(mDisplayTrackConstraints);
+            mPlayer.addAnalyticsListener(mPlayerMetrics);
+            mNextItemPreloader = new NextItemPreloader(
+                    mPlayer,
+                    MediaCache.newUpstreamDataSourceFactory(mContext),
+                    MediaCache.newCacheDataSourceFactory(mContext),
+                    NextItemPreloader.DEFAULT_PRELOAD_POSITION_MS,
+                    NextItemPreloader.DEFAULT_MAX_PRELOAD_BYTES);
+            mPlaylistWindow = new PlaylistWindow(mPlayer);
+            mMediaSession = new MediaSessionCompat(mContext, TAG);
+            mMediaSessionConnector = new MediaSessionConnector(mMediaSession);
+        } else if (DebugLog.ENABLED) {
+            Log.d(TAG, "Reusing the idle player");
+        }
+        return mPlayer;
+    }
+
+    /**
+     * Takes the player back once a screen no longer shows it. The player is stopped but is put in
+     * foreground mode, so that it keeps its renderers and their codecs, and the next
+     * {@link #acquirePlayer()} can start playing right away.
+     */
+    public void returnPlayer() {
+        if (!mInUse) {
+            return;
+        }
+        mInUse = false;
+        mMediaSessionConnector.setPlayer(null);
+        mMediaSession.setActive(false);
+        // Without foreground mode, stopping the player releases its codecs.
+        mPlayer.setForegroundMode(true);
+        mPlayer.stop();
+        mPlayer.clearMediaItems();
+        mBandwidthEstimates.save(mBandwidthMeter);
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Segment cache hit ratio: " + MediaCache.getHitRatio());
+            Log.d(TAG, "Playback metrics: " + mPlayerMetrics);
+        }
+        mHandler.postDelayed(mReleaseIdlePlayer, IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * Sets the buffer profile of the player, or {@code null} to pick one from the device's memory
+     * class. Takes effect the next time the player is built.
+     */
+    public void setBufferProfile(BufferProfile bufferProfile) {
+        mBufferProfile = bufferProfile;
+    }
+
+    public MediaSessionCompat getMediaSession() {
+        return mMediaSession;
+    }
+
+    public MediaSessionConnector getMediaSessionConnector() {
+        return mMediaSessionConnector;
+    }
+
+    public PlaylistWindow getPlaylistWindow() {
+        return mPlaylistWindow;
+    }
+
+    /**
+     * Returns the metrics of the current player or, if there is none, of the player that the next
+     * {@link #acquirePlayer()} builds. Never {@code null}.
+     */
+    public PlaybackMetrics getPlaybackMetrics() {
+        return mPlayerMetrics != null ? mPlayerMetrics : getPlaybackMetrics(getBufferProfile());
+    }
+
+    private PlaybackMetrics getPlaybackMetrics(BufferProfile bufferProfile) {
+        PlaybackMetrics playbackMetrics = mPlaybackMetrics.get(bufferProfile);
+        if (playbackMetrics == null) {
+            playbackMetrics = new PlaybackMetrics(bufferProfile);
+            mPlaybackMetrics.put(bufferProfile, playbackMetrics);
+        }
+        return playbackMetrics;
+    }
+
+    private BufferProfile getBufferProfile() {
+        return mBufferProfile != null ? mBufferProfile : BufferProfile.forDevice(mContext);
+    }
+
+    private void releasePlayer() {
+        mHandler.removeCallbacks(mReleaseIdlePlayer);
+        if (mInUse || mPlayer == null) {
+            return;
+        }
+        mNextItemPreloader.release();
+        mDisplayTrackConstraints.release();
+        mPlayer.setForegroundMode(false);
+        mPlayer.release();
+        mPlayerMetrics.onPlayerReleased();
+        mMediaSession.release();
+        mPlayer = null;
+        mBandwidthMeter = null;
+        mDisplayTrackConstraints = null;
+        mMediaSession = null;
+        mMediaSessionConnector = null;
+        mPlaylistWindow = null;
+        mNextItemPreloader = null;
+        mPlayerMetrics = null;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // An idle player is not worth keeping once the system runs short of memory. UI_HIDDEN
+        // alone is not a reason: a Cast LOAD may bring the app back at any time.
+        if (level == TRIM_MEMORY_RUNNING_LOW
+                || level == TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= TRIM_MEMORY_MODERATE) {
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "onTrimMemory(" + level + ")");
+            }
+            releasePlayer();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        releasePlayer();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.MediaMetadata;
+import com.google.android.exoplayer2.Player;
+import com.google.sample.cast.atvreceiver.data.Movie;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plays a playlist of a movie followed by the whole catalog while keeping only the current item
+ * and a few of its neighbours in the player's timeline. The window slides along the playlist as
+ * the player moves from one item to the next, so starting playback costs the same however large
+ * the catalog is, and previous and next still reach every entry of the playlist.
+ */
+public class PlaylistWindow implements Player.Listener {
+    private static final int ITEMS_BEHIND = 2;
+    private static final int ITEMS_AHEAD = 3;
+
+    private final Player mPlayer;
+    private Movie mFirstMovie;
+    private List<Movie> mCatalog = Collections.emptyList();
+    // Playlist position of the player's first media item.
+    private int mWindowStart;
+
+    public PlaylistWindow(Player player) {
+        mPlayer = player;
+        mPlayer.addListener(this);
+    }
+
+    /**
+     * Replaces the player's media items with the start of the playlist made of
+     * {@code firstMovie} followed by {@code catalog}.
+     */
+    public void setPlaylist(Movie firstMovie, List<Movie> catalog) {
+        setPlaylist(new Playlist(firstMovie, catalog));
+    }
+
+    /** Replaces the player's media items with the start of {@code playlist}. */
+    public void setPlaylist(Playlist playlist) {
+        mFirstMovie = playlist.mFirstMovie;
+        mCatalog = playlist.mCatalog;
+        mWindowStart = 0;
+        mPlayer.setMediaItems(playlist.mInitialItems);
+    }
+
+    /** Returns the number of items in the playlist, most of which are not in the timeline. */
+    public int size() {
+        return mFirstMovie == null ? 0 : 1 + mCatalog.size();
+    }
+
+    @Override
+    public void onMediaItemTransition(MediaItem mediaItem, int reason) {
+        if (mediaItem == null || mFirstMovie == null) {
+            return;
+        }
+        int current = mWindowStart + mPlayer.getCurrentMediaItemIndex();
+        int start = Math.max(0, current - ITEMS_BEHIND);
+        int end = Math.min(size(), current + ITEMS_AHEAD + 1);
+        int windowEnd = mWindowStart + mPlayer.getMediaItemCount();
+
+        // Removing items other than the current one does not interrupt playback.
+        if (windowEnd > end) {
+            mPlayer.removeMediaItems(end - mWindowStart, windowEnd - mWindowStart);
+            windowEnd = end;
+        }
+        if (start > mWindowStart) {
+            mPlayer.removeMediaItems(0, start - mWindowStart);
+            mWindowStart = start;
+        }
+        if (end > windowEnd) {
+            mPlayer.addMediaItems(buildMediaItems(mFirstMovie, mCatalog, windowEnd, end));
+        }
+        if (start < mWindowStart) {
+            mPlayer.addMediaItems(0, buildMediaItems(mFirstMovie, mCatalog, start, mWindowStart));
+            mWindowStart = start;
+        }
+    }
+
+    private static List<MediaItem> buildMediaItems(
+            Movie firstMovie, List<Movie> catalog, int start, int end) {
+        List<MediaItem> mediaItems = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            mediaItems.add(buildMediaItem(i == 0 ? firstMovie : catalog.get(i - 1)));
+        }
+        return mediaItems;
+    }
+
+    private static MediaItem buildMediaItem(Movie movie) {
+        String artwork = movie.getCardImageUrl();
+        return new MediaItem.Builder()
+                .setUri(movie.getVideoUrl())
+                .setTag(movie)
+                .setMediaMetadata(
+                        new MediaMetadata.Builder()
+                                .setArtworkUri(artwork == null ? null : Uri.parse(artwork))
+                                .setTitle(movie.getTitle())
+                                .setSubtitle(movie.getDescription())
+                                .build()
+                ).build();
+    }
+
+    /**
+     * A playlist of a movie followed by the catalog, with the media items of its initial window
+     * already built. Can be created on any thread, so that a load does not build media items on
+     * the main thread.
+     */
+    public static final class Playlist {
+        final Movie mFirstMovie;
+        final List<Movie> mCatalog;
+        final List<MediaItem> mInitialItems;
+
+        public Playlist(Movie firstMovie, List<Movie> catalog) {
+            mFirstMovie = firstMovie;
+            mCatalog = catalog == null ? Collections.<Movie>emptyList() : catalog;
+            mInitialItems = buildMediaItems(
+                    mFirstMovie, mCatalog, 0, Math.min(1 + mCatalog.size(), ITEMS_AHEAD + 1));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.leanback.media.PlayerAdapter;
+
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.ext.leanback.LeanbackPlayerAdapter;
+
+/**
+ * Adapts how often the transport controls are told about the playback position.
+ *
+ * <p>The {@link LeanbackPlayerAdapter} is built with the slow {@link #HIDDEN_UPDATE_MS} period,
+ * which is all that hidden controls need. While the controls are visible and the player is
+ * playing, this adds updates every {@link #VISIBLE_UPDATE_MS} so that the progress bar moves
+ * smoothly. While the player is paused, which it also is while the user scrubs, the position
+ * only moves on seeks, so it is only updated then.
+ *
+ * <p>The scheduler is the only one to turn the adapter's own updates on and off, which it does
+ * as playback starts and stops; {@link VideoPlayerGlue} leaves them alone as its host starts and
+ * stops. A scheduler lives as long as its glue is attached to the host.
+ */
+public class ProgressUpdateScheduler implements Runnable, Player.Listener {
+    /** The update period of the adapter, and so the one while the controls are hidden. */
+    public static final int HIDDEN_UPDATE_MS = 1000;
+    private static final int VISIBLE_UPDATE_MS = 16;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LeanbackPlayerAdapter mPlayerAdapter;
+    private final Player mPlayer;
+    private boolean mControlsVisible;
+
+    public ProgressUpdateScheduler(LeanbackPlayerAdapter playerAdapter, Player player) {
+        mPlayerAdapter = playerAdapter;
+        mPlayer = player;
+        mPlayer.addListener(this);
+        mPlayerAdapter.setProgressUpdatingEnabled(mPlayer.isPlaying());
+    }
+
+    /** Tells the scheduler whether the transport controls are showing. */
+    public void setControlsVisible(boolean visible) {
+        mControlsVisible = visible;
+        reschedule();
+    }
+
+    public void release() {
+        mPlayer.removeListener(this);
+        mHandler.removeCallbacks(this);
+        mPlayerAdapter.setProgressUpdatingEnabled(false);
+    }
+
+    @Override
+    public void onIsPlayingChanged(boolean isPlaying) {
+        // The adapter itself reports the position at which playback stopped.
+        mPlayerAdapter.setProgressUpdatingEnabled(isPlaying);
+        reschedule();
+    }
+
+    @Override
+    public void onPositionDiscontinuity(
+            Player.PositionInfo oldPosition, Player.PositionInfo newPosition, int reason) {
+        if (mControlsVisible && !mPlayer.isPlaying()) {
+            update();
+        }
+    }
+
+    @Override
+    public void run() {
+        update();
+        mHandler.postDelayed(this, VISIBLE_UPDATE_MS);
+    }
+
+    private void update() {
+        PlayerAdapter.Callback callback = mPlayerAdapter.getCallback();
+        if (callback != null) {
+            callback.onCurrentPositionChanged(mPlayerAdapter);
+            callback.onBufferedPositionChanged(mPlayerAdapter);
+        }
+    }
+
+    private void reschedule() {
+        mHandler.removeCallbacks(this);
+        if (mControlsVisible && mPlayer.isPlaying()) {
+            mHandler.post(this);
+        }
+    }
+}
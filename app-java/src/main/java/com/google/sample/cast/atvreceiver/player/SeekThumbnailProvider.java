@@ -0,0 +1,307 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.leanback.widget.PlaybackSeekDataProvider;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves seek preview thumbnails from a WebVTT thumbnail track, whose cues point at images or at
+ * {@code #xywh=x,y,w,h} tiles of sprite sheets.
+ *
+ * <p>The track, the sheets and the tiles are all fetched and decoded on a background thread.
+ * Decoded tiles are kept in an LRU cache bounded by {@link #MAX_CACHE_BYTES}, and the tiles next to
+ * a requested one are decoded ahead of time, so that scrubbing through them does not wait on the
+ * decoder. While a provider is installed on the glue, the player only seeks to the position at
+ * which the user stops scrubbing; without a track, the provider still has that effect but
+ * provides neither seek positions nor thumbnails.
+ */
+public class SeekThumbnailProvider extends PlaybackSeekDataProvider {
+    private static final String TAG = "SeekThumbnailProvider";
+
+    private static final int MAX_CACHE_BYTES = 8 * 1024 * 1024;
+    // Sprite sheets are large, so only the ones scrubbed through last keep a decoder.
+    private static final int MAX_SHEET_DECODERS = 2;
+    private static final int PREFETCH_COUNT = 3;
+    private static final int TIMEOUT_MS = 15000;
+    private static final String CUE_ARROW = "-->";
+    private static final String TILE_FRAGMENT = "#xywh=";
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<Integer, Bitmap> mTiles =
+            new LruCache<Integer, Bitmap>(MAX_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(Integer index, Bitmap tile) {
+                    return tile.getByteCount();
+                }
+            };
+    // Only used on the background thread.
+    private final LruCache<String, BitmapRegionDecoder> mSheetDecoders =
+            new LruCache<String, BitmapRegionDecoder>(MAX_SHEET_DECODERS) {
+                @Override
+                protected void entryRemoved(boolean evicted, String url,
+                        BitmapRegionDecoder oldValue, BitmapRegionDecoder newValue) {
+                    oldValue.recycle();
+                }
+            };
+
+    private volatile List<Cue> mCues;
+    private volatile boolean mReleased;
+
+    /**
+     * Creates a provider for the thumbnail track at {@code trackUrl}, which starts loading right
+     * away, or one without thumbnails if {@code trackUrl} is {@code null}.
+     */
+    public SeekThumbnailProvider(final String trackUrl) {
+        if (trackUrl == null) {
+            return;
+        }
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mReleased) {
+                    return;
+                }
+                try {
+                    mCues = readTrack(trackUrl);
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot read the thumbnail track " + trackUrl, e);
+                }
+            }
+        });
+    }
+
+    /** Returns the start of every cue, or {@code null} while the track is not loaded. */
+    @Override
+    public long[] getSeekPositions() {
+        List<Cue> cues = mCues;
+        if (cues == null || cues.isEmpty()) {
+            return null;
+        }
+        long[] positions = new long[cues.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = cues.get(i).mStartMs;
+        }
+        return positions;
+    }
+
+    @Override
+    public void getThumbnail(final int index, final ResultCallback callback) {
+        Bitmap tile = mTiles.get(index);
+        if (tile != null) {
+            callback.onThumbnailLoaded(tile, index);
+            return;
+        }
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap tile = loadTile(index);
+                if (tile == null) {
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mReleased) {
+                            callback.onThumbnailLoaded(tile, index);
+                        }
+                    }
+                });
+                for (int i = 1; i <= PREFETCH_COUNT; i++) {
+                    loadTile(index + i);
+                    loadTile(index - i);
+                }
+            }
+        });
+    }
+
+    /** Drops every decoded thumbnail. The provider must not be used afterwards. */
+    public void release() {
+        mReleased = true;
+        mHandler.removeCallbacksAndMessages(null);
+        mTiles.evictAll();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mSheetDecoders.evictAll();
+            }
+        });
+    }
+
+    /** Returns the tile of cue {@code index}, decoding it if it is not cached. */
+    private Bitmap loadTile(int index) {
+        List<Cue> cues = mCues;
+        if (mReleased || cues == null || index < 0 || index >= cues.size()) {
+            return null;
+        }
+        Bitmap tile = mTiles.get(index);
+        if (tile != null) {
+            return tile;
+        }
+        Cue cue = cues.get(index);
+        try {
+            BitmapRegionDecoder decoder = mSheetDecoders.get(cue.mImageUrl);
+            if (decoder == null) {
+                byte[] sheet = fetch(cue.mImageUrl);
+                decoder = BitmapRegionDecoder.newInstance(sheet, 0, sheet.length, false);
+                mSheetDecoders.put(cue.mImageUrl, decoder);
+            }
+            Rect region = cue.mRegion != null
+                    ? cue.mRegion : new Rect(0, 0, decoder.getWidth(), decoder.getHeight());
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            tile = decoder.decodeRegion(region, options);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Cannot decode the thumbnail " + cue.mImageUrl, e);
+            return null;
+        }
+        if (tile != null) {
+            mTiles.put(index, tile);
+        }
+        return tile;
+    }
+
+    private static List<Cue> readTrack(String trackUrl) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                open(trackUrl), StandardCharsets.UTF_8));
+        try {
+            return parseTrack(new URL(trackUrl), reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parses the cues of a WebVTT thumbnail track, resolving their images against {@code base}.
+     * Cues with a malformed start time, without an image or with a malformed tile are skipped.
+     */
+    static List<Cue> parseTrack(URL base, BufferedReader reader) throws IOException {
+        List<Cue> cues = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int arrow = line.indexOf(CUE_ARROW);
+            if (arrow < 0) {
+                continue;
+            }
+            long startMs = parseTimestamp(line.substring(0, arrow).trim());
+            String image = reader.readLine();
+            if (startMs < 0 || image == null || image.trim().isEmpty()) {
+                continue;
+            }
+            Cue cue = parseCue(base, startMs, image.trim());
+            if (cue != null) {
+                cues.add(cue);
+            }
+        }
+        return cues;
+    }
+
+    /** Returns the cue of {@code image}, or {@code null} if its tile is malformed. */
+    private static Cue parseCue(URL base, long startMs, String image) throws IOException {
+        Rect region = null;
+        int fragment = image.indexOf(TILE_FRAGMENT);
+        if (fragment >= 0) {
+            String[] xywh = image.substring(fragment + TILE_FRAGMENT.length()).split(",");
+            if (xywh.length != 4) {
+                return null;
+            }
+            try {
+                int x = Integer.parseInt(xywh[0].trim());
+                int y = Integer.parseInt(xywh[1].trim());
+                region = new Rect(x, y,
+                        x + Integer.parseInt(xywh[2].trim()),
+                        y + Integer.parseInt(xywh[3].trim()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            image = image.substring(0, fragment);
+        }
+        return new Cue(startMs, new URL(base, image).toString(), region);
+    }
+
+    /** Parses a {@code [hh:]mm:ss.ttt} timestamp, returning -1 if it is malformed. */
+    private static long parseTimestamp(String timestamp) {
+        try {
+            String[] parts = timestamp.split(":");
+            long ms = Math.round(Double.parseDouble(parts[parts.length - 1]) * 1000);
+            long minutes = 0;
+            for (int i = 0; i < parts.length - 1; i++) {
+                minutes = minutes * 60 + Long.parseLong(parts[i]);
+            }
+            return minutes * 60 * 1000 + ms;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] fetch(String url) throws IOException {
+        InputStream in = open(url);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static InputStream open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        return connection.getInputStream();
+    }
+
+    /** A thumbnail cue: the image, or tile of a sprite sheet, shown from {@code mStartMs} on. */
+    static final class Cue {
+        final long mStartMs;
+        final String mImageUrl;
+        final Rect mRegion;
+
+        Cue(long startMs, String imageUrl, Rect region) {
+            mStartMs = startMs;
+            mImageUrl = imageUrl;
+            mRegion = region;
+        }
+    }
+}
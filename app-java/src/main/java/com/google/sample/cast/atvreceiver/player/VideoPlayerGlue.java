@@ -16,16 +16,37 @@
 package com.google.sample.cast.atvreceiver.player;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.KeyEvent;
+import android.view.View;
 import androidx.leanback.media.PlaybackTransportControlGlue;
 import androidx.leanback.widget.Action;
 import androidx.leanback.widget.ArrayObjectAdapter;
 import androidx.leanback.widget.PlaybackControlsRow;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.SeekParameters;
 import com.google.android.exoplayer2.ext.leanback.LeanbackPlayerAdapter;
 import java.util.concurrent.TimeUnit;
 
 public class VideoPlayerGlue extends PlaybackTransportControlGlue<LeanbackPlayerAdapter> {
 
   private static final long TEN_SECONDS = TimeUnit.SECONDS.toMillis(10);
+  // The step of a scrub grows to the next of these every SCRUB_ACCELERATION_MS.
+  private static final long[] SCRUB_STEPS_MS = {
+      TEN_SECONDS,
+      TimeUnit.SECONDS.toMillis(30),
+      TimeUnit.MINUTES.toMillis(1),
+      TimeUnit.MINUTES.toMillis(2)
+  };
+  private static final long SCRUB_ACCELERATION_MS = 2000;
+  // A held key repeats faster than the player can show keyframes, so repeats are thinned out.
+  private static final long SCRUB_REPEAT_INTERVAL_MS = 200;
+  // Without a key release, as for the rewind and fast forward buttons, a scrub ends once no
+  // further step is asked for within this time.
+  private static final long SCRUB_SETTLE_MS = 600;
 
   /** Listens for when skip to next and previous actions have been dispatched. */
   public interface OnActionClickedListener {
@@ -38,19 +59,33 @@ public class VideoPlayerGlue extends PlaybackTransportControlGlue<LeanbackPlayer
   }
 
   private final OnActionClickedListener mActionListener;
+  private final ExoPlayer mPlayer;
+  private final Handler mHandler = new Handler(Looper.getMainLooper());
+  private final Runnable mFinishScrub = new Runnable() {
+    @Override
+    public void run() {
+      finishScrub();
+    }
+  };
 
   private PlaybackControlsRow.SkipPreviousAction mSkipPreviousAction;
   private PlaybackControlsRow.SkipNextAction mSkipNextAction;
   private PlaybackControlsRow.FastForwardAction mFastForwardAction;
   private PlaybackControlsRow.RewindAction mRewindAction;
+  private int mProgressUpdateCount;
+  private long mScrubStartMs = C.TIME_UNSET;
+  private long mLastScrubStepMs;
+  private long mScrubPositionMs;
 
   public VideoPlayerGlue(
       Context context,
       LeanbackPlayerAdapter playerAdapter,
+      ExoPlayer player,
       OnActionClickedListener actionListener) {
     super(context, playerAdapter);
 
     mActionListener = actionListener;
+    mPlayer = player;
 
     mSkipPreviousAction = new PlaybackControlsRow.SkipPreviousAction(context);
     mSkipNextAction = new PlaybackControlsRow.SkipNextAction(context);
@@ -78,6 +113,54 @@ public class VideoPlayerGlue extends PlaybackTransportControlGlue<LeanbackPlayer
     }
   }
 
+  @Override
+  public boolean onKey(View v, int keyCode, KeyEvent event) {
+    if (keyCode != KeyEvent.KEYCODE_MEDIA_FAST_FORWARD
+        && keyCode != KeyEvent.KEYCODE_MEDIA_REWIND) {
+      return super.onKey(v, keyCode, event);
+    }
+    if (event.getAction() == KeyEvent.ACTION_UP) {
+      finishScrub();
+    } else if (event.getAction() == KeyEvent.ACTION_DOWN
+        && (event.getRepeatCount() == 0
+            || event.getEventTime() - mLastScrubStepMs >= SCRUB_REPEAT_INTERVAL_MS)) {
+      scrub(keyCode == KeyEvent.KEYCODE_MEDIA_FAST_FORWARD);
+    }
+    return true;
+  }
+
+  @Override
+  protected void onDetachedFromHost() {
+    mHandler.removeCallbacks(mFinishScrub);
+    if (mScrubStartMs != C.TIME_UNSET) {
+      mScrubStartMs = C.TIME_UNSET;
+      mPlayer.setSeekParameters(SeekParameters.DEFAULT);
+    }
+    super.onDetachedFromHost();
+  }
+
+  @Override
+  protected void onHostStart() {
+    // Unlike the base class, this leaves the adapter's progress updates to the
+    // ProgressUpdateScheduler, which only turns them on while the player is playing.
+  }
+
+  @Override
+  protected void onHostStop() {
+    // The ProgressUpdateScheduler turns the updates off when it is released with the player.
+  }
+
+  @Override
+  protected void onUpdateProgress() {
+    mProgressUpdateCount++;
+    super.onUpdateProgress();
+  }
+
+  /** Returns how many times the controls have been told about the playback position. */
+  public int getProgressUpdateCount() {
+    return mProgressUpdateCount;
+  }
+
   @Override
   public void next() {
     mActionListener.onNext();
@@ -88,19 +171,52 @@ public class VideoPlayerGlue extends PlaybackTransportControlGlue<LeanbackPlayer
     mActionListener.onPrevious();
   }
 
-  /** Skips backwards 10 seconds. */
+  /** Skips backwards 10 seconds, or further if the user keeps rewinding. */
   public void rewind() {
-    long newPosition = getCurrentPosition() - TEN_SECONDS;
-    newPosition = (newPosition < 0) ? 0 : newPosition;
-    getPlayerAdapter().seekTo(newPosition);
+    scrub(false);
   }
 
-  /** Skips forward 10 seconds. */
+  /** Skips forward 10 seconds, or further if the user keeps fast forwarding. */
   public void fastForward() {
     if (getDuration() > -1) {
-      long newPosition = getCurrentPosition() + TEN_SECONDS;
+      scrub(true);
+    }
+  }
+
+  /**
+   * Takes one step of a scrub. The steps get longer the longer the scrub goes on, and only seek
+   * to the nearest keyframe, which the player can show without decoding up to the exact position.
+   */
+  private void scrub(boolean forward) {
+    long now = SystemClock.uptimeMillis();
+    if (mScrubStartMs == C.TIME_UNSET) {
+      mScrubStartMs = now;
+      mScrubPositionMs = getCurrentPosition();
+      mPlayer.setSeekParameters(SeekParameters.CLOSEST_SYNC);
+    }
+    mLastScrubStepMs = now;
+    int level = (int) Math.min(
+        (now - mScrubStartMs) / SCRUB_ACCELERATION_MS, SCRUB_STEPS_MS.length - 1);
+    long step = SCRUB_STEPS_MS[level];
+    long newPosition = mScrubPositionMs + (forward ? step : -step);
+    newPosition = (newPosition < 0) ? 0 : newPosition;
+    if (getDuration() > -1) {
       newPosition = (newPosition > getDuration()) ? getDuration() : newPosition;
-      getPlayerAdapter().seekTo(newPosition);
     }
+    mScrubPositionMs = newPosition;
+    getPlayerAdapter().seekTo(newPosition);
+    mHandler.removeCallbacks(mFinishScrub);
+    mHandler.postDelayed(mFinishScrub, SCRUB_SETTLE_MS);
+  }
+
+  /** Ends a scrub with an exact seek to the position it got to. */
+  private void finishScrub() {
+    mHandler.removeCallbacks(mFinishScrub);
+    if (mScrubStartMs == C.TIME_UNSET) {
+      return;
+    }
+    mScrubStartMs = C.TIME_UNSET;
+    mPlayer.setSeekParameters(SeekParameters.DEFAULT);
+    getPlayerAdapter().seekTo(mScrubPositionMs);
   }
 }
@@ -15,7 +15,11 @@
  */
 package com.google.sample.cast.atvreceiver.presenter;
 
+import android.content.Context;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
 
 import androidx.leanback.widget.ImageCardView;
 import androidx.leanback.widget.Presenter;
@@ -25,8 +29,13 @@ import android.util.Log;
 import android.view.ViewGroup;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.google.sample.cast.atvreceiver.DebugLog;
 import com.google.sample.cast.atvreceiver.data.Movie;
 import com.google.sample.cast.atvreceiver.R;
+
+import java.util.ArrayDeque;
 /**
  * A CardPresenter is used to generate Views and bind Objects to them on demand.
  * It contains an Image CardView
@@ -34,37 +43,96 @@ import com.google.sample.cast.atvreceiver.R;
 public class CardPresenter extends Presenter {
     private static final String TAG = "CardPresenter";
 
-    private static final int CARD_WIDTH = 313;
-    private static final int CARD_HEIGHT = 176;
-    private static int sSelectedBackgroundColor;
-    private static int sDefaultBackgroundColor;
+    public static final int CARD_WIDTH = 313;
+    public static final int CARD_HEIGHT = 176;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // Cards inflated ahead of time by prewarm(), handed out by onCreateViewHolder().
+    private final ArrayDeque<ImageCardView> mPrewarmedCards = new ArrayDeque<>();
+    private PrewarmTask mPrewarmTask;
+    private int mSelectedBackgroundColor;
+    private int mDefaultBackgroundColor;
     private Drawable mDefaultCardImage;
 
-    private static void updateCardBackgroundColor(ImageCardView view, boolean selected) {
-        int color = selected ? sSelectedBackgroundColor : sDefaultBackgroundColor;
+    private void updateCardBackgroundColor(ImageCardView view, boolean selected) {
+        int color = selected ? mSelectedBackgroundColor : mDefaultBackgroundColor;
         // Both background colors should be set because the view's background is temporarily visible
         // during animations.
         view.setBackgroundColor(color);
         view.findViewById(R.id.info_field).setBackgroundColor(color);
     }
 
+    /**
+     * Returns the request for the image of a card. Binding and prefetching both use it, so that a
+     * prefetched image is found under the same cache key when its card is bound.
+     */
+    public static RequestBuilder<Drawable> loadCardImage(RequestManager requests, String url) {
+        return requests.load(url).override(CARD_WIDTH, CARD_HEIGHT).centerCrop();
+    }
+
+    /**
+     * Inflates {@code count} cards on the main thread, one per message so that frames keep being
+     * drawn in between. The rows shown once the catalog has loaded then take their first cards
+     * from these instead of inflating them. {@code context} must be the one that the rows inflate
+     * their views with, which gives the cards their style; cards prewarmed with another context
+     * are dropped.
+     */
+    public void prewarm(Context context, int count) {
+        cancelPrewarm();
+        resolveResources(context);
+        mPrewarmTask = new PrewarmTask(context, count);
+        mHandler.post(mPrewarmTask);
+    }
+
+    /** Stops prewarming and drops the prewarmed cards that have not been handed out. */
+    public void cancelPrewarm() {
+        if (mPrewarmTask != null) {
+            mHandler.removeCallbacks(mPrewarmTask);
+            mPrewarmTask = null;
+        }
+        mPrewarmedCards.clear();
+    }
+
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent) {
-        Log.d(TAG, "onCreateViewHolder");
+        ImageCardView cardView = pollPrewarmedCard(parent.getContext());
+        if (cardView == null) {
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "onCreateViewHolder");
+            }
+            resolveResources(parent.getContext());
+            cardView = createCardView(parent.getContext());
+        }
+        return new ViewHolder(cardView);
+    }
+
+    private ImageCardView pollPrewarmedCard(Context context) {
+        ImageCardView cardView = mPrewarmedCards.poll();
+        if (cardView != null && cardView.getContext() != context) {
+            Log.w(TAG, "Dropping the cards prewarmed with another context than the rows'");
+            cancelPrewarm();
+            return null;
+        }
+        return cardView;
+    }
 
-        sDefaultBackgroundColor =
-                ContextCompat.getColor(parent.getContext(), R.color.default_background);
-        sSelectedBackgroundColor =
-                ContextCompat.getColor(parent.getContext(), R.color.selected_background);
+    private void resolveResources(Context context) {
+        if (mDefaultCardImage != null) {
+            return;
+        }
+        mDefaultBackgroundColor = ContextCompat.getColor(context, R.color.default_background);
+        mSelectedBackgroundColor = ContextCompat.getColor(context, R.color.selected_background);
         /*
          * This template uses a default image in res/drawable, but the general case for Android TV
          * will require your resources in xhdpi. For more information, see
          * https://developer.android.com/training/tv/start/layouts.html#density-resources
          */
-        mDefaultCardImage = ContextCompat.getDrawable(parent.getContext(), R.drawable.movie);
+        mDefaultCardImage = ContextCompat.getDrawable(context, R.drawable.movie);
+    }
 
+    private ImageCardView createCardView(Context context) {
         ImageCardView cardView =
-                new ImageCardView(parent.getContext()) {
+                new ImageCardView(context) {
                     @Override
                     public void setSelected(boolean selected) {
                         updateCardBackgroundColor(this, selected);
@@ -75,33 +143,82 @@ public class CardPresenter extends Presenter {
         cardView.setFocusable(true);
         cardView.setFocusableInTouchMode(true);
         updateCardBackgroundColor(cardView, false);
-        return new ViewHolder(cardView);
+        return cardView;
     }
 
     @Override
     public void onBindViewHolder(Presenter.ViewHolder viewHolder, Object item) {
-        Movie movie = (Movie) item;
         ImageCardView cardView = (ImageCardView) viewHolder.view;
 
-        Log.d(TAG, "onBindViewHolder");
-        if (movie.getCardImageUrl() != null) {
-            cardView.setTitleText(movie.getTitle());
-            cardView.setContentText(movie.getStudio());
-            cardView.setMainImageDimensions(CARD_WIDTH, CARD_HEIGHT);
-            Glide.with(viewHolder.view.getContext())
-                    .load(movie.getCardImageUrl())
-                    .centerCrop()
-                    .error(mDefaultCardImage)
-                    .into(cardView.getMainImageView());
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "onBindViewHolder");
+        }
+        Trace.beginSection("CardPresenter.onBindViewHolder");
+        try {
+            if (!(item instanceof Movie)) {
+                // A placeholder for an item that is still being loaded.
+                Glide.with(viewHolder.view.getContext()).clear(cardView.getMainImageView());
+                cardView.setTitleText(null);
+                cardView.setContentText(null);
+                cardView.setMainImageDimensions(CARD_WIDTH, CARD_HEIGHT);
+                cardView.setMainImage(mDefaultCardImage);
+                return;
+            }
+            Movie movie = (Movie) item;
+            if (movie.getCardImageUrl() != null) {
+                cardView.setTitleText(movie.getTitle());
+                cardView.setContentText(movie.getStudio());
+                cardView.setMainImageDimensions(CARD_WIDTH, CARD_HEIGHT);
+                // An image in the memory cache is set within this section; others are decoded on
+                // Glide's threads, where they show up in their own sections of the trace.
+                Trace.beginSection("CardPresenter.loadImage");
+                try {
+                    loadCardImage(Glide.with(viewHolder.view.getContext()), movie.getCardImageUrl())
+                            .error(mDefaultCardImage)
+                            .into(cardView.getMainImageView());
+                } finally {
+                    Trace.endSection();
+                }
+            }
+        } finally {
+            Trace.endSection();
         }
     }
 
     @Override
     public void onUnbindViewHolder(Presenter.ViewHolder viewHolder) {
-        Log.d(TAG, "onUnbindViewHolder");
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "onUnbindViewHolder");
+        }
         ImageCardView cardView = (ImageCardView) viewHolder.view;
         // Remove references to images so that the garbage collector can free up memory
         cardView.setBadgeImage(null);
         cardView.setMainImage(null);
     }
+
+    private final class PrewarmTask implements Runnable {
+        private final Context mContext;
+        private int mRemaining;
+
+        PrewarmTask(Context context, int count) {
+            mContext = context;
+            mRemaining = count;
+        }
+
+        @Override
+        public void run() {
+            if (mRemaining <= 0) {
+                return;
+            }
+            mPrewarmedCards.add(createCardView(mContext));
+            if (--mRemaining > 0) {
+                mHandler.post(this);
+            } else {
+                if (DebugLog.ENABLED) {
+                    Log.d(TAG, "Prewarmed " + mPrewarmedCards.size() + " cards");
+                }
+                mPrewarmTask = null;
+            }
+        }
+    }
 }
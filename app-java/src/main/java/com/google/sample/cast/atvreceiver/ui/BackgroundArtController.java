@@ -0,0 +1,238 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.ui;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
+import android.util.DisplayMetrics;
+
+import androidx.leanback.app.BackgroundManager;
+import androidx.leanback.widget.ObjectAdapter;
+
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.target.CustomTarget;
+import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.request.transition.Transition;
+import com.google.sample.cast.atvreceiver.data.Movie;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Shows the background art of the selected card in a {@link BackgroundManager}.
+ *
+ * <p>Selections are debounced on the main looper, so that scrolling through a row only loads the
+ * background of the card it stops on. The backgrounds of the cards next to the selected one are
+ * prefetched at the size they are shown at, and a background that has been crossfaded away from
+ * hands its bitmap back to Glide's pool, where the next background of the same size is decoded
+ * into it.
+ */
+class BackgroundArtController {
+    private static final int UPDATE_DELAY_MS = 300;
+    // BackgroundManager keeps drawing the previous background while it crossfades to the next
+    // one, so its bitmap is only returned to the pool once the crossfade is over.
+    private static final int RELEASE_DELAY_MS = 1000;
+    private static final int PREFETCH_NEIGHBOURS = 1;
+    // Backgrounds sit dimmed behind the rows, so they are not decoded beyond full HD even on 4K
+    // panels.
+    private static final int MAX_BACKGROUND_HEIGHT = 1080;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final RequestManager mRequests;
+    private final BackgroundManager mBackgroundManager;
+    private final Drawable mDefaultBackground;
+    private final int mWidth;
+    private final int mHeight;
+    private final Runnable mUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            updateBackground();
+        }
+    };
+    // Prefetches in flight, by image URL.
+    private final Map<String, Target<Bitmap>> mPrefetches = new HashMap<>();
+    // Backgrounds that have been replaced and are waiting for their crossfade to end.
+    private final List<BackgroundTarget> mReplaced = new ArrayList<>();
+    private String mPendingUri;
+    private BackgroundTarget mLoading;
+    private BackgroundTarget mShown;
+
+    BackgroundArtController(RequestManager requests, BackgroundManager backgroundManager,
+            Drawable defaultBackground, DisplayMetrics metrics) {
+        mRequests = requests;
+        mBackgroundManager = backgroundManager;
+        mDefaultBackground = defaultBackground;
+        float scale = Math.min(1f, (float) MAX_BACKGROUND_HEIGHT / metrics.heightPixels);
+        mWidth = Math.round(metrics.widthPixels * scale);
+        mHeight = Math.round(metrics.heightPixels * scale);
+    }
+
+    /**
+     * Shows the background of the card at {@code position} of {@code items} once the selection
+     * has settled, and prefetches the backgrounds of its neighbours.
+     */
+    void onItemSelected(ObjectAdapter items, int position) {
+        Set<String> urls = new LinkedHashSet<>();
+        for (int i = 1; i <= PREFETCH_NEIGHBOURS; i++) {
+            addBackgroundUrl(items, position + i, urls);
+            addBackgroundUrl(items, position - i, urls);
+        }
+        prefetch(urls);
+        if (position >= 0 && position < items.size() && items.get(position) instanceof Movie) {
+            setBackgroundUri(((Movie) items.get(position)).getBackgroundImageUrl());
+        }
+    }
+
+    /** Shows the background at {@code uri} once no other one is requested for a while. */
+    void setBackgroundUri(String uri) {
+        mPendingUri = uri;
+        mHandler.removeCallbacks(mUpdateRunnable);
+        mHandler.postDelayed(mUpdateRunnable, UPDATE_DELAY_MS);
+    }
+
+    /** Cancels the pending update and every load in flight. */
+    void release() {
+        mHandler.removeCallbacksAndMessages(null);
+        for (Target<Bitmap> prefetch : mPrefetches.values()) {
+            mRequests.clear(prefetch);
+        }
+        mPrefetches.clear();
+        if (mLoading != null) {
+            mRequests.clear(mLoading);
+            mLoading = null;
+        }
+        // The shown background stays up; its request is cleared along with the activity's.
+        releaseReplaced();
+    }
+
+    private void updateBackground() {
+        if (mLoading != null) {
+            if (Objects.equals(mLoading.mUri, mPendingUri)) {
+                return;
+            }
+            mRequests.clear(mLoading);
+            mLoading = null;
+        }
+        if (mShown != null && Objects.equals(mShown.mUri, mPendingUri)) {
+            return;
+        }
+        mLoading = new BackgroundTarget(mPendingUri);
+        Trace.beginSection("BackgroundArtController.loadImage");
+        try {
+            load(mPendingUri).into(mLoading);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private void prefetch(Set<String> urls) {
+        Iterator<Map.Entry<String, Target<Bitmap>>> prefetches = mPrefetches.entrySet().iterator();
+        while (prefetches.hasNext()) {
+            Map.Entry<String, Target<Bitmap>> prefetch = prefetches.next();
+            if (!urls.contains(prefetch.getKey())) {
+                mRequests.clear(prefetch.getValue());
+                prefetches.remove();
+            }
+        }
+        for (String url : urls) {
+            if (!mPrefetches.containsKey(url)) {
+                mPrefetches.put(url, load(url).preload(mWidth, mHeight));
+            }
+        }
+    }
+
+    private RequestBuilder<Bitmap> load(String uri) {
+        // Hardware bitmaps cannot be pooled, so backgrounds are always decoded into software ones.
+        return mRequests.asBitmap()
+                .load(uri)
+                .centerCrop()
+                .disallowHardwareConfig();
+    }
+
+    /** Crossfades to {@code bitmap}, or to the default background if it is {@code null}. */
+    private void show(BackgroundTarget target, Bitmap bitmap) {
+        mLoading = null;
+        if (bitmap != null) {
+            mBackgroundManager.setBitmap(bitmap);
+        } else {
+            mBackgroundManager.setDrawable(mDefaultBackground);
+        }
+        if (mShown != null) {
+            final BackgroundTarget replaced = mShown;
+            mReplaced.add(replaced);
+            mHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    mReplaced.remove(replaced);
+                    mRequests.clear(replaced);
+                }
+            }, RELEASE_DELAY_MS);
+        }
+        mShown = target;
+    }
+
+    private void releaseReplaced() {
+        for (BackgroundTarget target : mReplaced) {
+            mRequests.clear(target);
+        }
+        mReplaced.clear();
+    }
+
+    private static void addBackgroundUrl(ObjectAdapter items, int position, Set<String> urls) {
+        if (position < 0 || position >= items.size()) {
+            return;
+        }
+        // Items of a paged row that are not loaded yet have no background to prefetch.
+        Object item = items.get(position);
+        if (item instanceof Movie && ((Movie) item).getBackgroundImageUrl() != null) {
+            urls.add(((Movie) item).getBackgroundImageUrl());
+        }
+    }
+
+    private final class BackgroundTarget extends CustomTarget<Bitmap> {
+        final String mUri;
+
+        BackgroundTarget(String uri) {
+            super(mWidth, mHeight);
+            mUri = uri;
+        }
+
+        @Override
+        public void onResourceReady(Bitmap resource, Transition<? super Bitmap> transition) {
+            show(this, resource);
+        }
+
+        @Override
+        public void onLoadFailed(Drawable errorDrawable) {
+            show(this, null);
+        }
+
+        @Override
+        public void onLoadCleared(Drawable placeholder) {
+            // Only cleared once the bitmap is no longer drawn.
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.ui;
+
+import android.graphics.drawable.Drawable;
+
+import androidx.leanback.widget.ListRow;
+import androidx.leanback.widget.ObjectAdapter;
+
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.target.Target;
+import com.google.sample.cast.atvreceiver.data.Movie;
+import com.google.sample.cast.atvreceiver.presenter.CardPresenter;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Warms the image caches with the cards that are about to scroll into view, so that fast D-pad
+ * scrolling does not leave a trail of blank cards.
+ *
+ * <p>On every selection it prefetches the next {@link #PREFETCH_COUNT} cards in the direction
+ * focus is moving, and the first {@link #ADJACENT_ROW_COUNT} cards of the rows above and below.
+ * Prefetches that are no longer among those, such as the ones ahead of a focus that turned
+ * around, are canceled.
+ */
+class CardImagePrefetcher {
+    private static final int PREFETCH_COUNT = 6;
+    private static final int ADJACENT_ROW_COUNT = 3;
+
+    private final RequestManager mRequests;
+    // Prefetches in flight, by image URL.
+    private final Map<String, Target<Drawable>> mPrefetches = new HashMap<>();
+    private ObjectAdapter mLastRow;
+    private int mLastPosition;
+    private int mDirection = 1;
+
+    CardImagePrefetcher(RequestManager requests) {
+        mRequests = requests;
+    }
+
+    /**
+     * Prefetches for the card at {@code position} of {@code row} having been selected.
+     *
+     * @param rows the adapter of all rows.
+     * @param rowIndex the position of {@code row} in {@code rows}.
+     */
+    void onItemSelected(ObjectAdapter rows, int rowIndex, ListRow row, int position) {
+        ObjectAdapter items = row.getAdapter();
+        if (items == mLastRow && position != mLastPosition) {
+            mDirection = position > mLastPosition ? 1 : -1;
+        }
+        mLastRow = items;
+        mLastPosition = position;
+
+        Set<String> urls = new LinkedHashSet<>();
+        for (int i = 1; i <= PREFETCH_COUNT; i++) {
+            addImageUrl(items, position + i * mDirection, urls);
+        }
+        addFirstImageUrls(rows, rowIndex - 1, urls);
+        addFirstImageUrls(rows, rowIndex + 1, urls);
+
+        Iterator<Map.Entry<String, Target<Drawable>>> prefetches =
+                mPrefetches.entrySet().iterator();
+        while (prefetches.hasNext()) {
+            Map.Entry<String, Target<Drawable>> prefetch = prefetches.next();
+            if (!urls.contains(prefetch.getKey())) {
+                mRequests.clear(prefetch.getValue());
+                prefetches.remove();
+            }
+        }
+        for (String url : urls) {
+            if (!mPrefetches.containsKey(url)) {
+                mPrefetches.put(url, CardPresenter.loadCardImage(mRequests, url)
+                        .preload(CardPresenter.CARD_WIDTH, CardPresenter.CARD_HEIGHT));
+            }
+        }
+    }
+
+    /** Cancels every prefetch in flight. */
+    void cancel() {
+        for (Target<Drawable> prefetch : mPrefetches.values()) {
+            mRequests.clear(prefetch);
+        }
+        mPrefetches.clear();
+        mLastRow = null;
+    }
+
+    private static void addFirstImageUrls(ObjectAdapter rows, int rowIndex, Set<String> urls) {
+        if (rowIndex < 0 || rowIndex >= rows.size()
+                || !(rows.get(rowIndex) instanceof ListRow)) {
+            return;
+        }
+        ObjectAdapter items = ((ListRow) rows.get(rowIndex)).getAdapter();
+        for (int i = 0; i < ADJACENT_ROW_COUNT; i++) {
+            addImageUrl(items, i, urls);
+        }
+    }
+
+    private static void addImageUrl(ObjectAdapter items, int position, Set<String> urls) {
+        if (position < 0 || position >= items.size()) {
+            return;
+        }
+        // Items of a paged row that are not loaded yet have no image to prefetch.
+        Object item = items.get(position);
+        if (item instanceof Movie && ((Movie) item).getCardImageUrl() != null) {
+            urls.add(((Movie) item).getCardImageUrl());
+        }
+    }
+}
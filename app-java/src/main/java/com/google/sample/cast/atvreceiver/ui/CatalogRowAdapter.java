@@ -0,0 +1,74 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.ui;
+
+import androidx.leanback.widget.ObjectAdapter;
+import androidx.leanback.widget.Presenter;
+
+import com.google.sample.cast.atvreceiver.data.Movie;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Row adapter that is a view over the shared catalog rather than a copy of it. A row shows the
+ * catalog either in order or through an index permutation, so building a row allocates at most
+ * one {@code int} per movie and never touches the catalog itself.
+ */
+public class CatalogRowAdapter extends ObjectAdapter {
+    private final List<Movie> mCatalog;
+    private final int[] mOrder;
+
+    /**
+     * @param order catalog positions in the order the row shows them, or {@code null} to show the
+     *     catalog in order.
+     */
+    public CatalogRowAdapter(Presenter presenter, List<Movie> catalog, int[] order) {
+        super(presenter);
+        mCatalog = catalog;
+        mOrder = order;
+    }
+
+    /** Returns a random permutation of the positions of a catalog of {@code size} movies. */
+    public static int[] shuffledOrder(int size, Random random) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+
+    /** Returns the catalog position of the item at {@code position}. */
+    public int getCatalogPosition(int position) {
+        return mOrder == null ? position : mOrder[position];
+    }
+
+    @Override
+    public int size() {
+        return mOrder == null ? mCatalog.size() : mOrder.length;
+    }
+
+    @Override
+    public Object get(int position) {
+        return mCatalog.get(getCatalogPosition(position));
+    }
+}
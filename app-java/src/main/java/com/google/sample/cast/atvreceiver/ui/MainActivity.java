@@ -18,6 +18,7 @@ package com.google.sample.cast.atvreceiver.ui;
 import android.app.Activity;
 import android.os.Bundle;
 import android.util.Log;
+import com.google.sample.cast.atvreceiver.DebugLog;
 import com.google.sample.cast.atvreceiver.R;
 /**
  * Main Activity class that loads {@link MainFragment}.
@@ -29,7 +30,9 @@ public class MainActivity extends Activity {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        Log.d("MainActivity ","onCreate");
+        if (DebugLog.ENABLED) {
+            Log.d("MainActivity ","onCreate");
+        }
         setContentView(R.layout.activity_main);
     }
 
@@ -20,7 +20,7 @@ import android.content.Intent;
 import android.content.Loader;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.os.Handler;
+import android.os.Trace;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
@@ -40,35 +40,41 @@ import androidx.leanback.widget.Row;
 import androidx.leanback.widget.RowPresenter;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.SimpleTarget;
-import com.bumptech.glide.request.transition.Transition;
+import com.google.sample.cast.atvreceiver.DebugLog;
+import com.google.sample.cast.atvreceiver.ImagePipelineModule;
 import com.google.sample.cast.atvreceiver.R;
 import com.google.sample.cast.atvreceiver.data.Movie;
 import com.google.sample.cast.atvreceiver.data.MovieList;
 import com.google.sample.cast.atvreceiver.data.MovieListLoader;
 import com.google.sample.cast.atvreceiver.presenter.CardPresenter;
 
-import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Random;
 
 public class MainFragment extends BrowseFragment implements LoaderManager.LoaderCallbacks<List<Movie>> {
     private static final String TAG = "MainFragment";
+    private static final int ROWS_ON_SCREEN = 3;
+    // Rows of up to this many cards are bound straight from the catalog rather than paged.
+    private static final int MAX_UNPAGED_ROW_SIZE = 4 * PagedRowAdapter.PAGE_SIZE;
 
-    private static final int BACKGROUND_UPDATE_DELAY = 300;
 
-    private final Handler mHandler = new Handler();
     private Drawable mDefaultBackground;
     private DisplayMetrics mMetrics;
-    private Timer mBackgroundTimer;
-    private String mBackgroundUri;
     private BackgroundManager mBackgroundManager;
+    private BackgroundArtController mBackgroundArtController;
     private ArrayObjectAdapter mCategoryRowAdapter;
+    private final CardPresenter mCardPresenter = new CardPresenter();
+    // The first row while it is being filled in from a catalog that is still being parsed.
+    private ArrayObjectAdapter mPartialRowAdapter;
+    // The focused card of the partial row, kept when the row is swapped for the full one.
+    private int mPartialRowSelectedPosition;
+    private CardImagePrefetcher mCardImagePrefetcher;
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
-        Log.i(TAG, "onCreate");
+        if (DebugLog.ENABLED) {
+            Log.i(TAG, "onCreate");
+        }
         super.onActivityCreated(savedInstanceState);
 
         getLoaderManager().initLoader(0, null, this);
@@ -77,7 +83,16 @@ public class MainFragment extends BrowseFragment implements LoaderManager.Loader
 
         setupUIElements();
 
-        mCategoryRowAdapter = new ArrayObjectAdapter(new ListRowPresenter());
+        // The rows of a BrowseFragment already share one pool of recycled views. It holds a
+        // screen's worth of cards, so that a row scrolling into view reuses the cards of the
+        // one that scrolled out, and the cards of the first screen are inflated while the catalog
+        // loads, with the context of the fragment's views that the rows inflate theirs with.
+        int cardsOnScreen = ROWS_ON_SCREEN * (mMetrics.widthPixels / CardPresenter.CARD_WIDTH + 2);
+        ListRowPresenter rowPresenter = new ListRowPresenter();
+        rowPresenter.setRecycledPoolSize(mCardPresenter, cardsOnScreen);
+        mCardPresenter.prewarm(getView().getContext(), cardsOnScreen);
+        mCategoryRowAdapter = new ArrayObjectAdapter(rowPresenter);
+        mCardImagePrefetcher = new CardImagePrefetcher(Glide.with(this));
         setAdapter(mCategoryRowAdapter);
 
         setupEventListeners();
@@ -86,9 +101,15 @@ public class MainFragment extends BrowseFragment implements LoaderManager.Loader
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (null != mBackgroundTimer) {
-            Log.d(TAG, "onDestroy: " + mBackgroundTimer.toString());
-            mBackgroundTimer.cancel();
+        mCardPresenter.cancelPrewarm();
+        if (mCardImagePrefetcher != null) {
+            mCardImagePrefetcher.cancel();
+        }
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Image memory cache: " + ImagePipelineModule.getMemoryCacheStats());
+        }
+        if (mBackgroundArtController != null) {
+            mBackgroundArtController.release();
         }
     }
 
@@ -100,6 +121,8 @@ public class MainFragment extends BrowseFragment implements LoaderManager.Loader
         mDefaultBackground = ContextCompat.getDrawable(getActivity(), R.drawable.default_background);
         mMetrics = new DisplayMetrics();
         getActivity().getWindowManager().getDefaultDisplay().getMetrics(mMetrics);
+        mBackgroundArtController = new BackgroundArtController(Glide.with(getActivity()),
+                mBackgroundManager, mDefaultBackground, mMetrics);
     }
 
     private void setupUIElements() {
@@ -127,59 +150,108 @@ public class MainFragment extends BrowseFragment implements LoaderManager.Loader
         setOnItemViewSelectedListener(new ItemViewSelectedListener());
     }
 
-    private void updateBackground(String uri) {
-        int width = mMetrics.widthPixels;
-        int height = mMetrics.heightPixels;
-        Glide.with(getActivity())
-                .load(uri)
-                .centerCrop()
-                .error(mDefaultBackground)
-                .into(new SimpleTarget<Drawable>(width, height) {
-                    @Override
-                    public void onResourceReady(Drawable resource,
-                                                Transition<? super Drawable> transition) {
-                        mBackgroundManager.setDrawable(resource);
-                    }
-                });
-        mBackgroundTimer.cancel();
-    }
-
-    private void startBackgroundTimer() {
-        if (null != mBackgroundTimer) {
-            mBackgroundTimer.cancel();
-        }
-        mBackgroundTimer = new Timer();
-        mBackgroundTimer.schedule(new UpdateBackgroundTask(), BACKGROUND_UPDATE_DELAY);
-    }
-
     @Override
     public Loader<List<Movie>> onCreateLoader(int id, Bundle args) {
-        return new MovieListLoader(getActivity(), getString(R.string.catalog_url));
+        MovieListLoader loader =
+                new MovieListLoader(getActivity(), getString(R.string.catalog_url));
+        loader.setOnCategoryParsedListener(new CategoryParsedListener());
+        return loader;
     }
 
     @Override
     public void onLoadFinished(Loader<List<Movie>> loader, List<Movie> data) {
-        CardPresenter cardPresenter = new CardPresenter();
-
-        int i;
-        for (i = 0; i < MovieList.MOVIE_CATEGORY.length; i++) {
-            if (i != 0) {
-                Collections.shuffle(data);
-            }
-            ArrayObjectAdapter listRowAdapter = new ArrayObjectAdapter(cardPresenter);
-            for (int j = 0; j < data.size(); j++) {
-                listRowAdapter.add(data.get(j));
+        if (data == null) {
+            return;
+        }
+        int firstNewRow = 0;
+        if (mPartialRowAdapter != null) {
+            // The first row already shows the whole catalog in order; only its adapter changes.
+            replacePartialRow(data);
+            firstNewRow = 1;
+        } else {
+            // A refreshed catalog replaces the rows built from the cached one.
+            mCategoryRowAdapter.clear();
+        }
+        Random random = new Random();
+
+        Trace.beginSection("MainFragment.buildRows");
+        try {
+            int i;
+            for (i = firstNewRow; i < MovieList.MOVIE_CATEGORY.length; i++) {
+                // Every row is a view over the shared catalog: the first one in catalog order, the
+                // others shuffled.
+                int[] order = i == 0 ? null : CatalogRowAdapter.shuffledOrder(data.size(), random);
+                CatalogRowAdapter listRowAdapter = newRowAdapter(data, order);
+                HeaderItem header = new HeaderItem(i, MovieList.MOVIE_CATEGORY[i]);
+                mCategoryRowAdapter.add(new ListRow(header, listRowAdapter));
             }
-            HeaderItem header = new HeaderItem(i, MovieList.MOVIE_CATEGORY[i]);
-            mCategoryRowAdapter.add(new ListRow(header, listRowAdapter));
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Returns a row over {@code data}. Only large catalogs are paged: a paged row shows
+     * placeholders until its pages have been loaded, which is not worth it for a catalog that
+     * fits in a few pages.
+     */
+    private CatalogRowAdapter newRowAdapter(List<Movie> data, int[] order) {
+        if (data.size() <= MAX_UNPAGED_ROW_SIZE) {
+            return new CatalogRowAdapter(mCardPresenter, data, order);
+        }
+        return new PagedRowAdapter(mCardPresenter, data, order);
+    }
+
+    /**
+     * Swaps the partial first row for a view over the parsed catalog, keeping the card in focus,
+     * so that a paged row only holds the pages around that card like the other rows.
+     */
+    private void replacePartialRow(List<Movie> data) {
+        CatalogRowAdapter listRowAdapter = newRowAdapter(data, null);
+        if (listRowAdapter instanceof PagedRowAdapter) {
+            ((PagedRowAdapter) listRowAdapter).setSelectedPosition(mPartialRowSelectedPosition);
+        }
+        HeaderItem header = new HeaderItem(0, MovieList.MOVIE_CATEGORY[0]);
+        mCategoryRowAdapter.replace(0, new ListRow(header, listRowAdapter));
+        mPartialRowAdapter = null;
+        if (getSelectedPosition() == 0) {
+            // Rebinding the row to another adapter moves its focus back to the first card.
+            ListRowPresenter.SelectItemViewHolderTask selectItem =
+                    new ListRowPresenter.SelectItemViewHolderTask(mPartialRowSelectedPosition);
+            selectItem.setSmoothScroll(false);
+            setSelectedPosition(0, false, selectItem);
         }
     }
 
     @Override
     public void onLoaderReset(Loader<List<Movie>> loader) {
+        mPartialRowAdapter = null;
         mCategoryRowAdapter.clear();
     }
 
+    /**
+     * Shows the first row as soon as the first category of a downloading catalog is parsed and
+     * appends each further category to it, instead of waiting for the complete catalog.
+     */
+    private final class CategoryParsedListener implements MovieList.OnCategoryParsedListener {
+        @Override
+        public void onCategoryParsed(String name, List<Movie> movies) {
+            Trace.beginSection("MainFragment.appendCategory");
+            try {
+                if (mPartialRowAdapter == null) {
+                    mCategoryRowAdapter.clear();
+                    mPartialRowAdapter = new ArrayObjectAdapter(mCardPresenter);
+                    mPartialRowSelectedPosition = 0;
+                    HeaderItem header = new HeaderItem(0, MovieList.MOVIE_CATEGORY[0]);
+                    mCategoryRowAdapter.add(new ListRow(header, mPartialRowAdapter));
+                }
+                mPartialRowAdapter.addAll(mPartialRowAdapter.size(), movies);
+            } finally {
+                Trace.endSection();
+            }
+        }
+    }
+
     private final class ItemViewClickedListener implements OnItemViewClickedListener {
         @Override
         public void onItemClicked(Presenter.ViewHolder itemViewHolder, Object item,
@@ -187,7 +259,9 @@ public class MainFragment extends BrowseFragment implements LoaderManager.Loader
 
             if (item instanceof Movie) {
                 Movie movie = (Movie) item;
-                Log.d(TAG, "Item: " + item.toString());
+                if (DebugLog.ENABLED) {
+                    Log.d(TAG, "Item: " + item.toString());
+                }
                 Intent intent = new Intent(getActivity(), PlaybackActivity.class);
                 intent.putExtra(MainActivity.MOVIE, movie);
                 startActivity(intent);
@@ -202,24 +276,18 @@ public class MainFragment extends BrowseFragment implements LoaderManager.Loader
                 Object item,
                 RowPresenter.ViewHolder rowViewHolder,
                 Row row) {
-            if (item instanceof Movie) {
-                mBackgroundUri = ((Movie) item).getBackgroundImageUrl();
-                startBackgroundTimer();
-            }
-        }
-    }
-
-    private class UpdateBackgroundTask extends TimerTask {
-
-        @Override
-        public void run() {
-            mHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    updateBackground(mBackgroundUri);
+            if (row instanceof ListRow) {
+                int position = ((ListRowPresenter.ViewHolder) rowViewHolder).getSelectedPosition();
+                if (((ListRow) row).getAdapter() instanceof PagedRowAdapter) {
+                    ((PagedRowAdapter) ((ListRow) row).getAdapter()).setSelectedPosition(position);
+                } else if (((ListRow) row).getAdapter() == mPartialRowAdapter) {
+                    mPartialRowSelectedPosition = position;
                 }
-            });
+                // BrowseFragment has already moved its selected row to the one holding the item.
+                mCardImagePrefetcher.onItemSelected(
+                        mCategoryRowAdapter, getSelectedPosition(), (ListRow) row, position);
+                mBackgroundArtController.onItemSelected(((ListRow) row).getAdapter(), position);
+            }
         }
     }
-
 }
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.ui;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import androidx.leanback.widget.Presenter;
+
+import com.google.sample.cast.atvreceiver.data.Movie;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Row adapter for very large rows. Only the pages around the focused position are held in memory
+ * and they are read from the catalog on a background thread, so neither building a row nor
+ * scrolling through it decodes movies on the UI thread. Items of pages that have not been loaded
+ * yet are {@code null}, which the presenter shows as placeholders.
+ *
+ * <p>The row grows a page at a time as focus approaches its end, using
+ * {@link #notifyItemRangeInserted(int, int)} rather than rebuilding the row.
+ */
+public class PagedRowAdapter extends CatalogRowAdapter {
+    private static final String TAG = "PagedRowAdapter";
+
+    static final int PAGE_SIZE = 50;
+    // Pages loaded on either side of the focused one.
+    private static final int PREFETCH_PAGES = 1;
+    // Pages further than this from the focused one are dropped.
+    private static final int RETAINED_PAGES = 3;
+
+    // A single thread, shared by all rows, so that loading pages never competes with itself.
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+
+    private final Executor mExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final SparseArray<Movie[]> mPages = new SparseArray<>();
+    private final SparseBooleanArray mPendingPages = new SparseBooleanArray();
+    private int mRevealed;
+    private int mFocusedPage;
+
+    public PagedRowAdapter(Presenter presenter, List<Movie> catalog, int[] order) {
+        this(presenter, catalog, order, sExecutor);
+    }
+
+    /** Loads pages on {@code executor} instead of the thread shared by all rows. */
+    PagedRowAdapter(Presenter presenter, List<Movie> catalog, int[] order, Executor executor) {
+        super(presenter, catalog, order);
+        mExecutor = executor;
+        mRevealed = Math.min((1 + PREFETCH_PAGES) * PAGE_SIZE, super.size());
+        requestPages(0);
+    }
+
+    @Override
+    public int size() {
+        return mRevealed;
+    }
+
+    /** Returns the movie at {@code position}, or {@code null} while its page is being loaded. */
+    @Override
+    public Object get(int position) {
+        int page = position / PAGE_SIZE;
+        Movie[] movies = mPages.get(page);
+        if (movies == null) {
+            requestPage(page);
+            return null;
+        }
+        return movies[position % PAGE_SIZE];
+    }
+
+    /**
+     * Moves the window of loaded pages to the one holding {@code position}, revealing the next
+     * page of the row if focus has come close to its end.
+     */
+    public void setSelectedPosition(int position) {
+        mFocusedPage = position / PAGE_SIZE;
+        int revealed = Math.min((mFocusedPage + 1 + PREFETCH_PAGES) * PAGE_SIZE, super.size());
+        if (revealed > mRevealed) {
+            int start = mRevealed;
+            mRevealed = revealed;
+            notifyItemRangeInserted(start, revealed - start);
+        }
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            if (Math.abs(mPages.keyAt(i) - mFocusedPage) > RETAINED_PAGES) {
+                mPages.removeAt(i);
+            }
+        }
+        requestPages(mFocusedPage);
+    }
+
+    private void requestPages(int focusedPage) {
+        requestPage(focusedPage);
+        for (int i = 1; i <= PREFETCH_PAGES; i++) {
+            requestPage(focusedPage + i);
+            requestPage(focusedPage - i);
+        }
+    }
+
+    private void requestPage(final int page) {
+        final int start = page * PAGE_SIZE;
+        if (page < 0 || start >= mRevealed
+                || mPages.get(page) != null || mPendingPages.get(page)) {
+            return;
+        }
+        mPendingPages.put(page, true);
+        final int count = Math.min(PAGE_SIZE, super.size() - start);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Movie[] movies = null;
+                try {
+                    movies = new Movie[count];
+                    for (int i = 0; i < count; i++) {
+                        movies[i] = loadItem(start + i);
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to load page " + page, e);
+                    movies = null;
+                }
+                final Movie[] result = movies;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(page, result);
+                    }
+                });
+            }
+        });
+    }
+
+    private Movie loadItem(int position) {
+        return (Movie) super.get(position);
+    }
+
+    private void onPageLoaded(int page, Movie[] movies) {
+        mPendingPages.delete(page);
+        if (movies == null || Math.abs(page - mFocusedPage) > RETAINED_PAGES) {
+            // Focus has moved on; the page is loaded again if it comes back into view.
+            return;
+        }
+        mPages.put(page, movies);
+        notifyItemRangeChanged(page * PAGE_SIZE, movies.length);
+    }
+}
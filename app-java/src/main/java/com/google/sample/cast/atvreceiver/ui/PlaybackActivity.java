@@ -17,6 +17,7 @@ package com.google.sample.cast.atvreceiver.ui;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 
 import androidx.fragment.app.FragmentActivity;
 import com.google.android.gms.cast.tv.CastReceiverContext;
@@ -30,20 +31,36 @@ public class PlaybackActivity extends FragmentActivity {
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
+        // Taken first, so that the reported LOAD latency includes starting the activity.
+        long createdRealtimeMs = SystemClock.elapsedRealtime();
         super.onCreate(savedInstanceState);
 
-        playbackVideoFragment = new PlaybackVideoFragment();
         if (savedInstanceState == null) {
+            playbackVideoFragment = new PlaybackVideoFragment();
+            playbackVideoFragment.setIntentRealtimeMs(createdRealtimeMs);
+            // Committed right away rather than on the next frame, so that the fragment handles
+            // the intent and starts preparing the media from within this onCreate().
             getSupportFragmentManager()
                     .beginTransaction()
                     .replace(android.R.id.content, playbackVideoFragment)
-                    .commit();
+                    .commitNow();
+        } else {
+            playbackVideoFragment = (PlaybackVideoFragment)
+                    getSupportFragmentManager().findFragmentById(android.R.id.content);
         }
     }
 
     @Override
     protected void onNewIntent(Intent intent) {
         super.onNewIntent(intent);
+        // A fragment that starts its session again in onStart() handles the activity's intent,
+        // which must then be this one rather than the one the activity was created with.
+        setIntent(intent);
+        playbackVideoFragment.setIntentRealtimeMs(SystemClock.elapsedRealtime());
+        if (!playbackVideoFragment.isSessionStarted()) {
+            // The activity is stopped and the fragment has handed back its player.
+            return;
+        }
 
         MediaManager mediaManager = CastReceiverContext.getInstance().getMediaManager();
         if (mediaManager.onNewIntent(intent)) {
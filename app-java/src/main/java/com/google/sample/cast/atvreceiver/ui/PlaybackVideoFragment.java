@@ -18,6 +18,10 @@ package com.google.sample.cast.atvreceiver.ui;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.support.v4.media.MediaDescriptionCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.util.Log;
@@ -27,9 +31,10 @@ import androidx.leanback.app.VideoSupportFragment;
 import androidx.leanback.app.VideoSupportFragmentGlueHost;
 import androidx.leanback.widget.PlaybackControlsRow;
 
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayer;
 import com.google.android.exoplayer2.MediaItem;
 import com.google.android.exoplayer2.Player;
-import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.ext.leanback.LeanbackPlayerAdapter;
 import com.google.android.exoplayer2.ext.mediasession.MediaSessionConnector;
 import com.google.android.exoplayer2.ext.mediasession.TimelineQueueNavigator;
@@ -47,16 +52,25 @@ import com.google.android.gms.cast.tv.media.MediaManager.MediaStatusInterceptor;
 import com.google.android.gms.cast.tv.media.MediaStatusWriter;
 import com.google.android.gms.common.images.WebImage;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.TaskExecutors;
 import com.google.android.gms.tasks.Tasks;
+import com.google.sample.cast.atvreceiver.DebugLog;
+import com.google.sample.cast.atvreceiver.data.CatalogIndex;
 import com.google.sample.cast.atvreceiver.data.Movie;
 import com.google.sample.cast.atvreceiver.data.MovieList;
+import com.google.sample.cast.atvreceiver.player.PlayerHolder;
+import com.google.sample.cast.atvreceiver.player.PlaylistWindow;
+import com.google.sample.cast.atvreceiver.player.ProgressUpdateScheduler;
+import com.google.sample.cast.atvreceiver.player.SeekThumbnailProvider;
 import com.google.sample.cast.atvreceiver.player.VideoPlayerGlue;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Handles video playback with media controls.
@@ -64,33 +78,98 @@ import java.util.List;
 public class PlaybackVideoFragment extends VideoSupportFragment {
 
     private static final String LOG_TAG = "PlaybackVideoFragment";
-    private static final int UPDATE_DELAY = 16;
 
+    // Resolves LOADs one at a time, so that a burst of them does not contend for the catalog.
+    private static final Executor sLoadExecutor = Executors.newSingleThreadExecutor();
+    // LOADs closer together than this are a burst, of which only the last is played.
+    private static final long LOAD_COALESCING_WINDOW_MS = 500;
+
+    private PlayerHolder mPlayerHolder;
     private MediaSessionCompat mMediaSession;
     private MediaSessionConnector mMediaSessionConnector;
 
     private Player mPlayer;
     private LeanbackPlayerAdapter mPlayerAdapter;
     private VideoPlayerGlue mPlayerGlue;
+    private ProgressUpdateScheduler mProgressUpdateScheduler;
+    private SeekThumbnailProvider mSeekThumbnailProvider;
     private PlaylistActionListener mPlaylistActionListener;
+    private PlaylistWindow mPlaylistWindow;
+    private final Player.Listener mPlayerListener = new Player.Listener() {
+        @Override
+        public void onMediaItemTransition(MediaItem mediaItem, int reason) {
+            CharSequence title = "";
+            CharSequence subtitle = "";
+            String seekThumbnailsUrl = null;
+            if (mediaItem != null) {
+                // mediaIem is null if player has been stopped or
+                // all media items have been removed from the playlist
+                title = mediaItem.mediaMetadata.title;
+                subtitle = mediaItem.mediaMetadata.subtitle;
+                if (mediaItem.localConfiguration != null
+                        && mediaItem.localConfiguration.tag instanceof Movie) {
+                    seekThumbnailsUrl =
+                            ((Movie) mediaItem.localConfiguration.tag).getSeekThumbnailsUrl();
+                }
+            }
+            mMediaManager.getMediaStatusModifier().clear();
+            mPlayerGlue.setTitle(title);
+            mPlayerGlue.setSubtitle(subtitle);
+            setSeekThumbnailProvider(new SeekThumbnailProvider(seekThumbnailsUrl));
+        }
+    };
 
     private MediaManager mMediaManager;
+    private LoadOperation mCurrentLoad;
+    private long mLastLoadRealtimeMs = C.TIME_UNSET;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private long mIntentRealtimeMs = C.TIME_UNSET;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        Log.d(LOG_TAG, "onCreate");
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onCreate");
+        }
 
-        mMediaSession = new MediaSessionCompat(requireContext(), LOG_TAG);
-        mMediaSessionConnector = new MediaSessionConnector(mMediaSession);
-        initializePlayer();
+        mPlayerHolder = PlayerHolder.getInstance(requireContext());
+        // Started here rather than in onStart(), so that the media is already being prepared
+        // while the activity inflates the views.
+        startSession();
     }
 
     @Override
     public void onStart() {
         super.onStart();
-        Log.d(LOG_TAG, "onStart");
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onStart");
+        }
 
+        if (mPlayer == null) {
+            // The player was handed back when the fragment stopped.
+            startSession();
+        }
+    }
+
+    /**
+     * Records when the activity received the intent about to be handled, as given by
+     * {@link SystemClock#elapsedRealtime()}. Used to report the latency of loads, whether they come
+     * from Cast LOAD requests or from titles chosen in the app.
+     */
+    void setIntentRealtimeMs(long realtimeMs) {
+        mIntentRealtimeMs = realtimeMs;
+    }
+
+    /**
+     * Returns whether the fragment holds the player and handles intents itself. If it does not,
+     * it handles the activity's intent once it is started again.
+     */
+    boolean isSessionStarted() {
+        return mPlayer != null;
+    }
+
+    private void startSession() {
+        initializePlayer();
         mMediaManager = CastReceiverContext.getInstance().getMediaManager();
         mMediaManager.setSessionCompatToken(mMediaSession.getSessionToken());
         mMediaManager.setMediaLoadCommandCallback(new MyMediaLoadCommandCallback());
@@ -106,7 +185,6 @@ public class PlaybackVideoFragment extends VideoSupportFragment {
             }
         });
 
-        initializePlayer();
         mMediaSessionConnector.setPlayer(mPlayer);
 
         TimelineQueueNavigator timelineQueueNavigator = new TimelineQueueNavigator(mMediaSession) {
@@ -134,19 +212,22 @@ public class PlaybackVideoFragment extends VideoSupportFragment {
         // If the SDK doesn't recognize the intent, you can handle the intent with
         // your own logic.
         processIntent(requireActivity().getIntent());
-
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        Log.d(LOG_TAG, "onResume");
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onResume");
+        }
     }
 
     @Override
     public void onPause() {
         super.onPause();
-        Log.d(LOG_TAG, "onPause");
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onPause");
+        }
         if (mPlayerGlue != null && mPlayerGlue.isPlaying()) {
             mPlayerGlue.pause();
         }
@@ -155,28 +236,55 @@ public class PlaybackVideoFragment extends VideoSupportFragment {
     @Override
     public void onStop() {
         super.onStop();
-        Log.d(LOG_TAG, "onStop");
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onStop");
+        }
 
-        mMediaSessionConnector.setPlayer(null);
-        mMediaSession.setActive(false);
-        mMediaSession.release();
         mMediaManager.setSessionCompatToken(null);
+        if (mCurrentLoad != null) {
+            mCurrentLoad.cancel();
+            mCurrentLoad = null;
+        }
         releasePlayer();
     }
 
+    @Override
+    public void showControlsOverlay(boolean runAnimation) {
+        super.showControlsOverlay(runAnimation);
+        if (mProgressUpdateScheduler != null) {
+            mProgressUpdateScheduler.setControlsVisible(true);
+        }
+    }
+
+    @Override
+    public void hideControlsOverlay(boolean runAnimation) {
+        super.hideControlsOverlay(runAnimation);
+        if (mProgressUpdateScheduler != null) {
+            mProgressUpdateScheduler.setControlsVisible(false);
+        }
+    }
+
     @Override
     public void onError(int errorCode, CharSequence errorMessage) {
-        Log.d(LOG_TAG, "onError");
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onError");
+        }
         logAndDisplay(errorMessage.toString());
         requireActivity().finish();
     }
 
     void processIntent(Intent intent) {
-        Log.d(LOG_TAG, "processIntent()");
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "processIntent()");
+        }
 
         if (intent.hasExtra(MainActivity.MOVIE)) {
             // Intent came from MainActivity (User chose an item inside ATV app).
             Movie movie = (Movie) intent.getSerializableExtra(MainActivity.MOVIE);
+            mPlayerHolder.getPlaybackMetrics().onLoadStarted(mIntentRealtimeMs != C.TIME_UNSET
+                    ? mIntentRealtimeMs
+                    : SystemClock.elapsedRealtime());
+            mIntentRealtimeMs = C.TIME_UNSET;
             startPlayback(movie, 0);
         } else {
             logAndDisplay("Null or unrecognized intent action");
@@ -184,8 +292,30 @@ public class PlaybackVideoFragment extends VideoSupportFragment {
         }
     }
 
-    private static Movie convertEntityToMovie(String entity) {
-        return MovieList.getList().get(0);
+    private static Movie convertEntityToMovie(String entity) throws MediaException {
+        CatalogIndex index = MovieList.getIndex();
+        Movie movie = index == null ? null : index.find(entity);
+        if (movie == null) {
+            throw newLoadFailedException(MediaError.ERROR_REASON_INVALID_PARAMS);
+        }
+        return movie;
+    }
+
+    private static MediaException newLoadFailedException(String reason) {
+        return new MediaException(
+            new MediaError.Builder()
+                .setDetailedErrorCode(DetailedErrorCode.LOAD_FAILED)
+                .setReason(reason)
+                .build());
+    }
+
+    private static MediaException newLoadInterruptedException(long requestId) {
+        return new MediaException(
+            new MediaError.Builder()
+                .setType(MediaError.ERROR_TYPE_LOAD_CANCELLED)
+                .setDetailedErrorCode(DetailedErrorCode.LOAD_INTERRUPTED)
+                .setRequestId(requestId)
+                .build());
     }
 
     private static Movie convertLoadRequestToMovie(MediaLoadRequestData loadRequestData) {
@@ -202,95 +332,124 @@ public class PlaybackVideoFragment extends VideoSupportFragment {
             videoUrl = mediaInfo.getContentUrl();
         }
 
+        // A catalog movie carries more than the request does, such as its seek thumbnails.
+        CatalogIndex index = MovieList.getIndex();
+        if (index != null) {
+            Movie movie = index.find(mediaInfo.getEntity());
+            if (movie == null) {
+                movie = index.find(videoUrl);
+            }
+            if (movie != null) {
+                return movie;
+            }
+        }
+
         MediaMetadata metadata = mediaInfo.getMetadata();
         Movie movie = new Movie();
+        // Not a catalog id, so that the movie is not equal to any catalog movie.
+        movie.setId(-1);
         movie.setVideoUrl(videoUrl);
         if (metadata != null) {
             movie.setTitle(metadata.getString(MediaMetadata.KEY_TITLE));
             movie.setDescription(metadata.getString(MediaMetadata.KEY_SUBTITLE));
-            movie.setCardImageUrl(metadata.getImages().get(0).getUrl().toString());
+            List<WebImage> images = metadata.getImages();
+            if (!images.isEmpty()) {
+                movie.setCardImageUrl(images.get(0).getUrl().toString());
+            }
         }
         return movie;
     }
 
     private void initializePlayer() {
         if (mPlayer == null) {
-            Log.d(LOG_TAG, "initializePlayer");
+            if (DebugLog.ENABLED) {
+                Log.d(LOG_TAG, "initializePlayer");
+            }
             VideoSupportFragmentGlueHost glueHost =
                 new VideoSupportFragmentGlueHost(PlaybackVideoFragment.this);
 
-            mPlayer = new SimpleExoPlayer.Builder(requireContext()).build();
-            mPlayerAdapter = new LeanbackPlayerAdapter(requireContext(), mPlayer, UPDATE_DELAY);
+            ExoPlayer player = mPlayerHolder.acquirePlayer();
+            mPlayer = player;
+            mMediaSession = mPlayerHolder.getMediaSession();
+            mMediaSessionConnector = mPlayerHolder.getMediaSessionConnector();
+            mPlaylistWindow = mPlayerHolder.getPlaylistWindow();
+            mPlayerAdapter = new LeanbackPlayerAdapter(
+                    requireContext(), mPlayer, ProgressUpdateScheduler.HIDDEN_UPDATE_MS);
             mPlayerAdapter.setRepeatAction(PlaybackControlsRow.RepeatAction.INDEX_NONE);
             mPlaylistActionListener = new PlaylistActionListener();
-            mPlayerGlue = new VideoPlayerGlue(getContext(), mPlayerAdapter, mPlaylistActionListener);
+            mPlayerGlue = new VideoPlayerGlue(
+                    getContext(), mPlayerAdapter, player, mPlaylistActionListener);
             mPlayerGlue.setHost(glueHost);
             mPlayerGlue.setSeekEnabled(true);
+            mProgressUpdateScheduler = new ProgressUpdateScheduler(mPlayerAdapter, mPlayer);
+            mProgressUpdateScheduler.setControlsVisible(isControlsOverlayVisible());
+            setSeekThumbnailProvider(new SeekThumbnailProvider(null));
 
-            mPlayer.addListener(new Player.Listener() {
-                @Override
-                public void onMediaItemTransition(MediaItem mediaItem, int reason) {
-                    CharSequence title = "";
-                    CharSequence subtitle = "";
-                    if (mediaItem != null) {
-                        // mediaIem is null if player has been stopped or
-                        // all media items have been removed from the playlist
-                        title = mediaItem.mediaMetadata.title;
-                        subtitle = mediaItem.mediaMetadata.subtitle;
-                    }
-                    mMediaManager.getMediaStatusModifier().clear();
-                    mPlayerGlue.setTitle(title);
-                    mPlayerGlue.setSubtitle(subtitle);
-                }
-            });
+            mPlayer.addListener(mPlayerListener);
         }
     }
 
     private void releasePlayer() {
         if (mPlayer != null) {
-            Log.d(LOG_TAG, "releasePlayer");
-            mPlayer.release();
+            if (DebugLog.ENABLED) {
+                Log.d(LOG_TAG, "releasePlayer");
+            }
+            // The player outlives this fragment, so nothing of the fragment may stay attached.
+            mPlayer.removeListener(mPlayerListener);
+            mProgressUpdateScheduler.release();
+            setSeekThumbnailProvider(null);
+            if (DebugLog.ENABLED) {
+                Log.d(LOG_TAG, "Progress updates: " + mPlayerGlue.getProgressUpdateCount());
+            }
+            mPlayerGlue.setHost(null);
+            mPlayerHolder.returnPlayer();
             mPlayer = null;
             mPlayerAdapter = null;
+            mPlayerGlue = null;
+            mProgressUpdateScheduler = null;
+            mPlaylistWindow = null;
+            mMediaSession = null;
+            mMediaSessionConnector = null;
+        }
+    }
+
+    /**
+     * Makes {@code provider} serve the seek previews of the current item, which also makes the
+     * player only seek once the user stops scrubbing, and releases the previous one.
+     */
+    private void setSeekThumbnailProvider(SeekThumbnailProvider provider) {
+        if (mSeekThumbnailProvider != null) {
+            mSeekThumbnailProvider.release();
         }
+        mSeekThumbnailProvider = provider;
+        mPlayerGlue.setSeekProvider(provider);
     }
 
     private void startPlayback(Movie movie, long startPosition) {
-        List<MediaItem> mediaItems = new ArrayList<>();
-
-        MediaItem firstMediaItem = new MediaItem.Builder()
-            .setUri(movie.getVideoUrl())
-            .setMediaMetadata(
-                new com.google.android.exoplayer2.MediaMetadata.Builder()
-                    .setArtworkUri(Uri.parse(movie.getCardImageUrl()))
-                    .setTitle(movie.getTitle())
-                    .setSubtitle(movie.getDescription())
-                    .build()
-            ).build();
-        mediaItems.add(firstMediaItem);
-
-        MovieList.getList().forEach( movieItem -> {
-            mediaItems.add(new MediaItem.Builder()
-                .setUri(movieItem.getVideoUrl())
-                .setMediaMetadata(
-                    new com.google.android.exoplayer2.MediaMetadata.Builder()
-                        .setArtworkUri(Uri.parse(movieItem.getCardImageUrl()))
-                        .setTitle(movieItem.getTitle())
-                        .setSubtitle(movieItem.getDescription())
-                        .build()
-                ).build()
-            );
-        });
+        startPlayback(new PlaylistWindow.Playlist(movie, MovieList.getList()), startPosition);
+    }
+
+    private void startPlayback(PlaylistWindow.Playlist playlist, long startPosition) {
+        Trace.beginSection("PlaybackVideoFragment.startPlayback");
+        try {
+            mPlaylistWindow.setPlaylist(playlist);
+            mPlayer.prepare();
+            mPlayerGlue.playWhenPrepared();
+            mPlayerGlue.seekTo(startPosition);
+            mMediaManager.getMediaStatusModifier().clear();
+        } finally {
+            Trace.endSection();
+        }
+    }
 
-        mPlayer.setMediaItems(mediaItems);
-        mPlayer.prepare();
-        mPlayerGlue.playWhenPrepared();
-        mPlayerGlue.seekTo(startPosition);
-        mMediaManager.getMediaStatusModifier().clear();
+    private Task<Void> delay(long delayMs) {
+        final TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        mHandler.postDelayed(() -> source.trySetResult(null), delayMs);
+        return source.getTask();
     }
 
     private void logAndDisplay(String error) {
-        Log.d(LOG_TAG, error);
+        Log.w(LOG_TAG, error);
         Toast.makeText(getActivity(), error, Toast.LENGTH_SHORT).show();
     }
 
@@ -306,9 +465,11 @@ public class PlaybackVideoFragment extends VideoSupportFragment {
         }
     }
 
-    private void myFillMediaInfo(MediaInfoWriter mediaInfoWriter) {
+    private void myFillMediaInfo(MediaInfoWriter mediaInfoWriter) throws MediaException {
         MediaInfo mediaInfo = mediaInfoWriter.getMediaInfo();
-        Log.d(LOG_TAG,"***Type:"+mediaInfo.getContentType());
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG,"***Type:"+mediaInfo.getContentType());
+        }
         if (mediaInfo.getContentUrl() == null && mediaInfo.getEntity() != null) {
             // Load By Entity
             String entity = mediaInfo.getEntity();
@@ -328,29 +489,108 @@ public class PlaybackVideoFragment extends VideoSupportFragment {
     class MyMediaLoadCommandCallback extends MediaLoadCommandCallback {
         @Override
         public Task<MediaLoadRequestData> onLoad(String senderId, MediaLoadRequestData loadRequestData) {
-            Toast.makeText(getActivity(), "onLoad()", Toast.LENGTH_SHORT).show();
+            if (DebugLog.ENABLED) {
+                Log.d(LOG_TAG, "onLoad()");
+            }
 
             if (loadRequestData == null) {
                 // Throw MediaException to indicate load failure.
-                return Tasks.forException(new MediaException(
-                    new MediaError.Builder()
-                        .setDetailedErrorCode(DetailedErrorCode.LOAD_FAILED)
-                        .setReason(MediaError.ERROR_REASON_INVALID_REQUEST)
-                        .build()));
+                return Tasks.forException(
+                    newLoadFailedException(MediaError.ERROR_REASON_INVALID_REQUEST));
             }
-
-            return Tasks.call(() -> {
-                // Resolve the entity into your data structure and load media.
+            long now = SystemClock.elapsedRealtime();
+            mPlayerHolder.getPlaybackMetrics().onLoadStarted(
+                    mIntentRealtimeMs != C.TIME_UNSET ? mIntentRealtimeMs : now);
+            mIntentRealtimeMs = C.TIME_UNSET;
+
+            // A newer LOAD replaces whatever an older one has not finished yet. Within a burst of
+            // LOADs, the media of the older one is also stopped, and the newer one waits for the
+            // burst to settle, so that only the last of them is prepared and broadcast.
+            boolean inBurst = mLastLoadRealtimeMs != C.TIME_UNSET
+                    && now - mLastLoadRealtimeMs < LOAD_COALESCING_WINDOW_MS;
+            mLastLoadRealtimeMs = now;
+            if (mCurrentLoad != null) {
+                mCurrentLoad.cancel();
+            }
+            if (inBurst && mPlayer != null) {
+                mPlayer.stop();
+            }
+            final LoadOperation load = new LoadOperation(loadRequestData);
+            mCurrentLoad = load;
+            final List<Movie> catalog = MovieList.getList();
+
+            Task<Void> settled = inBurst ? delay(LOAD_COALESCING_WINDOW_MS) : Tasks.forResult(null);
+            settled.onSuccessTask(sLoadExecutor, ignored -> {
+                if (load.isCanceled()) {
+                    return Tasks.forResult(null);
+                }
+                // Resolve the entity into your data structure and build the media items.
                 myFillMediaInfo(new MediaInfoWriter(loadRequestData.getMediaInfo()));
-                startPlayback(convertLoadRequestToMovie(loadRequestData), 0);
+                return Tasks.forResult(new PlaylistWindow.Playlist(
+                        convertLoadRequestToMovie(loadRequestData), catalog));
+            }).addOnCompleteListener(TaskExecutors.MAIN_THREAD, task -> {
+                // Only the final handoff to the player and the media manager is on the main
+                // thread.
+                if (load.isCanceled()) {
+                    return;
+                }
+                if (mCurrentLoad == load) {
+                    mCurrentLoad = null;
+                }
+                if (!task.isSuccessful()) {
+                    load.fail(task.getException());
+                    return;
+                }
+                if (mPlayer == null) {
+                    // The fragment stopped while the load was being resolved.
+                    load.cancel();
+                    return;
+                }
+                startPlayback(task.getResult(), 0);
 
                 // Update media metadata and state (this clears all previous status
                 // overrides).
                 mMediaManager.setDataFromLoad(loadRequestData);
                 mMediaManager.broadcastMediaStatus();
-
-                return loadRequestData;
+                load.succeed();
             });
+            return load.getTask();
+        }
+    }
+
+    /**
+     * A LOAD being resolved in the background. A newer LOAD cancels it, which answers it as
+     * interrupted right away and makes the pipeline drop it at its next step.
+     */
+    private static final class LoadOperation {
+        private final MediaLoadRequestData mRequest;
+        private final TaskCompletionSource<MediaLoadRequestData> mResult =
+                new TaskCompletionSource<>();
+        private volatile boolean mCanceled;
+
+        LoadOperation(MediaLoadRequestData request) {
+            mRequest = request;
+        }
+
+        Task<MediaLoadRequestData> getTask() {
+            return mResult.getTask();
+        }
+
+        boolean isCanceled() {
+            return mCanceled;
+        }
+
+        void cancel() {
+            mCanceled = true;
+            mResult.trySetException(newLoadInterruptedException(mRequest.getRequestId()));
+        }
+
+        void fail(Exception e) {
+            mResult.trySetException(e);
+        }
+
+        void succeed() {
+            mResult.trySetResult(mRequest);
         }
     }
-}
\ No newline at end of file
+}
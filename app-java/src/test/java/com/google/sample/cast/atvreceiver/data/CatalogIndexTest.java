@@ -0,0 +1,98 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class CatalogIndexTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<Movie> mMovies = Arrays.asList(
+            newMovie(10, "https://example.com/a.mp4"),
+            newMovie(20, "https://example.com/b.mp4"),
+            newMovie(30, null));
+
+    @Test
+    public void indexOf_findsMoviesByIdAndByVideoUrl() {
+        CatalogIndex index = new CatalogIndex(mMovies);
+
+        assertEquals(0, index.indexOf("10"));
+        assertEquals(1, index.indexOf("https://example.com/b.mp4"));
+        assertEquals(2, index.indexOf("30"));
+    }
+
+    @Test
+    public void indexOf_returnsMinusOneForUnknownEntities() {
+        CatalogIndex index = new CatalogIndex(mMovies);
+
+        assertEquals(-1, index.indexOf("40"));
+        assertEquals(-1, index.indexOf("https://example.com/c.mp4"));
+        assertEquals(-1, index.indexOf(null));
+    }
+
+    @Test
+    public void indexOf_keepsTheFirstMovieOfASharedVideoUrl() {
+        CatalogIndex index = new CatalogIndex(Arrays.asList(
+                newMovie(1, "https://example.com/a.mp4"),
+                newMovie(2, "https://example.com/a.mp4")));
+
+        assertEquals(0, index.indexOf("https://example.com/a.mp4"));
+        assertEquals(1, index.indexOf("2"));
+    }
+
+    @Test
+    public void find_returnsTheMovieAtTheIndexedPosition() {
+        CatalogIndex index = new CatalogIndex(mMovies);
+
+        assertSame(mMovies.get(1), index.find("20"));
+        assertNull(index.find("40"));
+    }
+
+    @Test
+    public void indexOf_readsASnapshotWithoutChangingPositions() throws IOException {
+        File file = mFolder.newFile();
+        CatalogSnapshot.write(file, mMovies);
+
+        CatalogIndex index = new CatalogIndex(CatalogSnapshot.read(file));
+
+        assertEquals(0, index.indexOf("https://example.com/a.mp4"));
+        assertEquals(1, index.indexOf("20"));
+        assertEquals(2, index.indexOf("30"));
+        assertEquals(20, index.find("https://example.com/b.mp4").getId());
+    }
+
+    private static Movie newMovie(int id, String videoUrl) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        movie.setVideoUrl(videoUrl);
+        return movie;
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class CatalogSnapshotTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void read_returnsTheMoviesThatWereWritten() throws IOException {
+        Movie first = newMovie(1, "Big Buck Bunny", "Blender Foundation");
+        first.setSeekThumbnailsUrl("https://example.com/bunny/thumbnails.vtt");
+        Movie second = newMovie(2, "Sintel \u00e9t\u00e9", "Blender Foundation");
+        File file = mFolder.newFile();
+
+        CatalogSnapshot.write(file, Arrays.asList(first, second));
+        List<Movie> movies = CatalogSnapshot.read(file);
+
+        assertEquals(2, movies.size());
+        assertMovieEquals(first, movies.get(0));
+        assertMovieEquals(second, movies.get(1));
+    }
+
+    @Test
+    public void read_keepsMissingStringsNull() throws IOException {
+        Movie movie = new Movie();
+        movie.setId(7);
+        File file = mFolder.newFile();
+
+        CatalogSnapshot.write(file, Arrays.asList(movie));
+        Movie read = CatalogSnapshot.read(file).get(0);
+
+        assertEquals(7, read.getId());
+        assertNull(read.getTitle());
+        assertNull(read.getVideoUrl());
+        assertNull(read.getSeekThumbnailsUrl());
+    }
+
+    @Test
+    public void read_emptyCatalog() throws IOException {
+        File file = mFolder.newFile();
+
+        CatalogSnapshot.write(file, new ArrayList<Movie>());
+
+        assertEquals(0, CatalogSnapshot.read(file).size());
+    }
+
+    @Test
+    public void read_returnsNullForAnotherVersion() throws IOException {
+        File file = mFolder.newFile();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(0x43415453);
+            out.writeInt(1);
+            out.writeInt(0);
+            out.writeInt(0);
+        } finally {
+            out.close();
+        }
+
+        assertNull(CatalogSnapshot.read(file));
+    }
+
+    @Test
+    public void get_returnsTheSameInstanceUntilEvicted() throws IOException {
+        File file = mFolder.newFile();
+        CatalogSnapshot.write(file, Arrays.asList(newMovie(1, "A", "S"), newMovie(2, "B", "S")));
+
+        List<Movie> movies = CatalogSnapshot.read(file);
+
+        assertSame(movies.get(1), movies.get(1));
+    }
+
+    @Test
+    public void get_returnsAnEqualMovieOnceEvicted() throws IOException {
+        List<Movie> written = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            written.add(newMovie(i, "Movie " + i, "S"));
+        }
+        File file = mFolder.newFile();
+        CatalogSnapshot.write(file, written);
+
+        List<Movie> movies = CatalogSnapshot.read(file);
+        Movie first = movies.get(0);
+        for (Movie movie : movies) {
+            assertEquals(movie.getId(), movie.hashCode());
+        }
+
+        assertNotSame(first, movies.get(0));
+        assertEquals(first, movies.get(0));
+        assertNotEquals(first, movies.get(1));
+    }
+
+    @Test
+    public void movieTable_readsSingleFieldsWithoutDecoding() throws IOException {
+        File file = mFolder.newFile();
+        CatalogSnapshot.write(file, Arrays.asList(newMovie(1, "A", "S"), newMovie(42, "B", "S")));
+
+        CatalogSnapshot.MovieTable movies = (CatalogSnapshot.MovieTable) CatalogSnapshot.read(file);
+
+        assertEquals(42, movies.getId(1));
+        assertEquals("https://example.com/42.mp4", movies.getVideoUrl(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_outOfBounds() throws IOException {
+        File file = mFolder.newFile();
+        CatalogSnapshot.write(file, Arrays.asList(newMovie(1, "A", "S")));
+
+        CatalogSnapshot.read(file).get(1);
+    }
+
+    private static Movie newMovie(int id, String title, String studio) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        movie.setTitle(title);
+        movie.setDescription("About " + title);
+        movie.setStudio(studio);
+        movie.setVideoUrl("https://example.com/" + id + ".mp4");
+        movie.setCardImageUrl("https://example.com/" + id + "/card.jpg");
+        movie.setBackgroundImageUrl("https://example.com/" + id + "/background.jpg");
+        movie.setDuration(id * 60_000L);
+        return movie;
+    }
+
+    private static void assertMovieEquals(Movie expected, Movie actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getStudio(), actual.getStudio());
+        assertEquals(expected.getVideoUrl(), actual.getVideoUrl());
+        assertEquals(expected.getCardImageUrl(), actual.getCardImageUrl());
+        assertEquals(expected.getBackgroundImageUrl(), actual.getBackgroundImageUrl());
+        assertEquals(expected.getDuration(), actual.getDuration());
+        assertEquals(expected.getSeekThumbnailsUrl(), actual.getSeekThumbnailsUrl());
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.analytics.AnalyticsListener.EventTime;
+import com.google.android.exoplayer2.analytics.AnalyticsListener.Events;
+import com.google.android.exoplayer2.util.FlagSet;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+
+@RunWith(RobolectricTestRunner.class)
+public class PlaybackMetricsTest {
+    private static final MediaItem MEDIA_ITEM = MediaItem.fromUri("https://example.com/1.mp4");
+
+    private final PlaybackMetrics mMetrics = new PlaybackMetrics(BufferProfile.BALANCED);
+    private final Player mPlayer = mock(Player.class);
+    private final Events mEvents = new Events(new FlagSet.Builder().build(), new SparseArray<>());
+
+    @Test
+    public void newMetrics_areEmpty() {
+        assertSame(BufferProfile.BALANCED, mMetrics.getBufferProfile());
+        assertEquals(0, mMetrics.getLoadCount());
+        assertEquals(0, mMetrics.getAverageLoadToFirstFrameMs());
+        assertEquals(0, mMetrics.getTransitionCount());
+        assertEquals(0, mMetrics.getAverageTransitionStallMs());
+        assertEquals(0, mMetrics.getRebufferCount());
+    }
+
+    @Test
+    public void onRenderedFirstFrame_measuresTheLoad() {
+        mMetrics.onLoadStarted(1000);
+        mMetrics.onRenderedFirstFrame(eventTime(1600), null, 0);
+        mMetrics.onLoadStarted(5000);
+        mMetrics.onRenderedFirstFrame(eventTime(5200), null, 0);
+
+        assertEquals(2, mMetrics.getLoadCount());
+        assertEquals(400, mMetrics.getAverageLoadToFirstFrameMs());
+    }
+
+    @Test
+    public void onRenderedFirstFrame_countsOnlyTheFirstFrameOfALoad() {
+        mMetrics.onLoadStarted(1000);
+        mMetrics.onRenderedFirstFrame(eventTime(1600), null, 0);
+        mMetrics.onRenderedFirstFrame(eventTime(9000), null, 0);
+
+        assertEquals(1, mMetrics.getLoadCount());
+        assertEquals(600, mMetrics.getAverageLoadToFirstFrameMs());
+    }
+
+    @Test
+    public void onPlayerReleased_keepsMeasuringAStartedLoad() {
+        mMetrics.onLoadStarted(1000);
+        mMetrics.onPlayerReleased();
+        mMetrics.onRenderedFirstFrame(eventTime(1300), null, 0);
+
+        assertEquals(1, mMetrics.getLoadCount());
+        assertEquals(300, mMetrics.getAverageLoadToFirstFrameMs());
+    }
+
+    @Test
+    public void onPlaybackStateChanged_countsBufferingOnceReady() {
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING);
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_READY);
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING);
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING);
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_READY);
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING);
+
+        assertEquals(2, mMetrics.getRebufferCount());
+    }
+
+    @Test
+    public void onPlaybackStateChanged_doesNotCountBufferingAfterASeek() {
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_READY);
+        mMetrics.onPositionDiscontinuity(
+                eventTime(0), null, null, Player.DISCONTINUITY_REASON_SEEK);
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING);
+
+        assertEquals(0, mMetrics.getRebufferCount());
+    }
+
+    @Test
+    public void onPlaybackStateChanged_doesNotCountBufferingAfterATransition() {
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_READY);
+        mMetrics.onMediaItemTransition(
+                eventTime(0), MEDIA_ITEM, Player.MEDIA_ITEM_TRANSITION_REASON_AUTO);
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING);
+
+        assertEquals(0, mMetrics.getRebufferCount());
+    }
+
+    @Test
+    public void onPlaybackStateChanged_doesNotCountBufferingAfterALoad() {
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_READY);
+        mMetrics.onLoadStarted(SystemClock.elapsedRealtime());
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING);
+
+        assertEquals(0, mMetrics.getRebufferCount());
+    }
+
+    @Test
+    public void onEvents_measuresTheTransitionStallUntilPlaying() {
+        startTransition(Player.MEDIA_ITEM_TRANSITION_REASON_AUTO);
+        ShadowSystemClock.advanceBy(Duration.ofMillis(300));
+        onEvents(true, false);
+        ShadowSystemClock.advanceBy(Duration.ofMillis(200));
+        onEvents(true, true);
+
+        startTransition(Player.MEDIA_ITEM_TRANSITION_REASON_SEEK);
+        ShadowSystemClock.advanceBy(Duration.ofMillis(100));
+        onEvents(true, true);
+
+        assertEquals(2, mMetrics.getTransitionCount());
+        assertEquals(300, mMetrics.getAverageTransitionStallMs());
+        assertEquals(500, mMetrics.getMaxTransitionStallMs());
+    }
+
+    @Test
+    public void onEvents_doesNotMeasureTransitionsWhilePaused() {
+        startTransition(Player.MEDIA_ITEM_TRANSITION_REASON_AUTO);
+        onEvents(false, false);
+        onEvents(true, true);
+
+        assertEquals(0, mMetrics.getTransitionCount());
+    }
+
+    @Test
+    public void onEvents_doesNotMeasurePlaylistChanges() {
+        startTransition(Player.MEDIA_ITEM_TRANSITION_REASON_PLAYLIST_CHANGED);
+        onEvents(true, true);
+
+        assertEquals(0, mMetrics.getTransitionCount());
+    }
+
+    @Test
+    public void onPlayerReleased_dropsAPendingTransition() {
+        startTransition(Player.MEDIA_ITEM_TRANSITION_REASON_AUTO);
+        mMetrics.onPlayerReleased();
+        onEvents(true, true);
+
+        assertEquals(0, mMetrics.getTransitionCount());
+    }
+
+    private void startTransition(int reason) {
+        mMetrics.onMediaItemTransition(
+                eventTime(SystemClock.elapsedRealtime()), MEDIA_ITEM, reason);
+    }
+
+    private void onEvents(boolean playWhenReady, boolean isPlaying) {
+        when(mPlayer.getPlayWhenReady()).thenReturn(playWhenReady);
+        when(mPlayer.isPlaying()).thenReturn(isPlaying);
+        mMetrics.onEvents(mPlayer, mEvents);
+    }
+
+    private static EventTime eventTime(long realtimeMs) {
+        return new EventTime(realtimeMs, Timeline.EMPTY, 0, null, 0, Timeline.EMPTY, 0, null, 0, 0);
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.Player;
+import com.google.sample.cast.atvreceiver.data.Movie;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class PlaylistWindowTest {
+    // The player's timeline, kept by the mocked player.
+    private final List<MediaItem> mItems = new ArrayList<>();
+    private int mCurrentIndex;
+
+    private PlaylistWindow mWindow;
+
+    @Before
+    public void setUp() {
+        Player player = mock(Player.class);
+        doAnswer(invocation -> {
+            mItems.clear();
+            mItems.addAll(invocation.getArgument(0));
+            mCurrentIndex = 0;
+            return null;
+        }).when(player).setMediaItems(anyList());
+        doAnswer(invocation -> mItems.addAll(invocation.getArgument(0)))
+                .when(player).addMediaItems(anyList());
+        doAnswer(invocation -> {
+            int index = invocation.getArgument(0);
+            List<MediaItem> items = invocation.getArgument(1);
+            mItems.addAll(index, items);
+            if (index <= mCurrentIndex) {
+                mCurrentIndex += items.size();
+            }
+            return null;
+        }).when(player).addMediaItems(anyInt(), anyList());
+        doAnswer(invocation -> {
+            int from = invocation.getArgument(0);
+            int to = invocation.getArgument(1);
+            mItems.subList(from, to).clear();
+            if (to <= mCurrentIndex) {
+                mCurrentIndex -= to - from;
+            }
+            return null;
+        }).when(player).removeMediaItems(anyInt(), anyInt());
+        when(player.getMediaItemCount()).thenAnswer(invocation -> mItems.size());
+        when(player.getCurrentMediaItemIndex()).thenAnswer(invocation -> mCurrentIndex);
+        mWindow = new PlaylistWindow(player);
+    }
+
+    @Test
+    public void setPlaylist_putsOnlyTheStartOfThePlaylistInTheTimeline() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(10));
+
+        assertEquals(11, mWindow.size());
+        assertEquals(Arrays.asList(0, 1, 2, 3), timeline());
+    }
+
+    @Test
+    public void setPlaylist_shortPlaylist() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(1));
+
+        assertEquals(2, mWindow.size());
+        assertEquals(Arrays.asList(0, 1), timeline());
+    }
+
+    @Test
+    public void setPlaylist_withoutCatalog() {
+        mWindow.setPlaylist(new PlaylistWindow.Playlist(newMovie(0), null));
+
+        assertEquals(1, mWindow.size());
+        assertEquals(Collections.singletonList(0), timeline());
+    }
+
+    @Test
+    public void onMediaItemTransition_addsItemsAhead() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(10));
+
+        playPosition(1);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), timeline());
+    }
+
+    @Test
+    public void onMediaItemTransition_dropsItemsFarBehind() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(10));
+        playPosition(1);
+
+        playPosition(3);
+
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), timeline());
+        assertEquals(3, current());
+    }
+
+    @Test
+    public void onMediaItemTransition_slidesBackOnPrevious() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(10));
+        playPosition(1);
+        playPosition(3);
+        playPosition(5);
+
+        playPosition(4);
+
+        assertEquals(Arrays.asList(2, 3, 4, 5, 6, 7), timeline());
+        assertEquals(4, current());
+
+        playPosition(3);
+        playPosition(2);
+        playPosition(1);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), timeline());
+        assertEquals(1, current());
+    }
+
+    @Test
+    public void onMediaItemTransition_stopsAtTheEndOfThePlaylist() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(4));
+        playPosition(1);
+        playPosition(3);
+
+        playPosition(4);
+
+        assertEquals(Arrays.asList(2, 3, 4), timeline());
+        assertEquals(4, current());
+    }
+
+    @Test
+    public void onMediaItemTransition_ignoresTheEndOfPlayback() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(10));
+
+        mWindow.onMediaItemTransition(null, Player.MEDIA_ITEM_TRANSITION_REASON_PLAYLIST_CHANGED);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), timeline());
+    }
+
+    /** Moves the player to the item of its timeline at playlist {@code position}. */
+    private void playPosition(int position) {
+        mCurrentIndex = timeline().indexOf(position);
+        assertNotEquals("Not in the timeline: " + position, -1, mCurrentIndex);
+        mWindow.onMediaItemTransition(
+                mItems.get(mCurrentIndex), Player.MEDIA_ITEM_TRANSITION_REASON_AUTO);
+    }
+
+    /** Returns the playlist position of the player's current item. */
+    private int current() {
+        return getMovie(mItems.get(mCurrentIndex)).getId();
+    }
+
+    /** Returns the playlist positions of the items in the player's timeline. */
+    private List<Integer> timeline() {
+        List<Integer> positions = new ArrayList<>();
+        for (MediaItem item : mItems) {
+            positions.add(getMovie(item).getId());
+        }
+        return positions;
+    }
+
+    private static Movie getMovie(MediaItem item) {
+        return (Movie) item.localConfiguration.tag;
+    }
+
+    private static List<Movie> newCatalog(int size) {
+        List<Movie> catalog = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            catalog.add(newMovie(i));
+        }
+        return catalog;
+    }
+
+    // Ids are playlist positions, the first movie being 0.
+    private static Movie newMovie(int id) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        movie.setTitle("Movie " + id);
+        movie.setVideoUrl("https://example.com/" + id + ".mp4");
+        return movie;
+    }
+}
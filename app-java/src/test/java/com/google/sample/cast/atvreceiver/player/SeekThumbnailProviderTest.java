@@ -0,0 +1,147 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class SeekThumbnailProviderTest {
+    private static final String TRACK_URL = "https://example.com/movies/bunny/thumbnails.vtt";
+
+    @Test
+    public void parseTrack_readsSpriteSheetTiles() throws IOException {
+        List<SeekThumbnailProvider.Cue> cues = parse(
+                "WEBVTT\n"
+                        + "\n"
+                        + "00:00.000 --> 00:05.000\n"
+                        + "sprite.jpg#xywh=0,0,160,90\n"
+                        + "\n"
+                        + "00:05.000 --> 00:10.000\n"
+                        + "sprite.jpg#xywh=160,0,160,90\n");
+
+        assertEquals(2, cues.size());
+        assertCue(0, "https://example.com/movies/bunny/sprite.jpg", new Rect(0, 0, 160, 90),
+                cues.get(0));
+        assertCue(5000, "https://example.com/movies/bunny/sprite.jpg",
+                new Rect(160, 0, 320, 90), cues.get(1));
+    }
+
+    @Test
+    public void parseTrack_readsWholeImages() throws IOException {
+        List<SeekThumbnailProvider.Cue> cues = parse(
+                "WEBVTT\n"
+                        + "\n"
+                        + "00:00.000 --> 00:05.000\n"
+                        + "/images/1.jpg\n"
+                        + "\n"
+                        + "00:05.000 --> 00:10.000\n"
+                        + "https://cdn.example.com/2.jpg\n");
+
+        assertCue(0, "https://example.com/images/1.jpg", null, cues.get(0));
+        assertCue(5000, "https://cdn.example.com/2.jpg", null, cues.get(1));
+    }
+
+    @Test
+    public void parseTrack_readsHoursAndCueIdentifiers() throws IOException {
+        List<SeekThumbnailProvider.Cue> cues = parse(
+                "WEBVTT\n"
+                        + "\n"
+                        + "NOTE thumbnails every minute\n"
+                        + "\n"
+                        + "62\n"
+                        + "01:02:03.500 --> 01:03:03.500\n"
+                        + "  sprite-2.jpg#xywh=0,90,160,90  \n");
+
+        assertEquals(1, cues.size());
+        assertCue(3723500, "https://example.com/movies/bunny/sprite-2.jpg",
+                new Rect(0, 90, 160, 180), cues.get(0));
+    }
+
+    @Test
+    public void parseTrack_skipsMalformedCues() throws IOException {
+        List<SeekThumbnailProvider.Cue> cues = parse(
+                "WEBVTT\n"
+                        + "\n"
+                        + "00:xx.000 --> 00:05.000\n"
+                        + "sprite.jpg#xywh=0,0,160,90\n"
+                        + "\n"
+                        + "00:05.000 --> 00:10.000\n"
+                        + "\n"
+                        + "00:10.000 --> 00:15.000\n"
+                        + "sprite.jpg#xywh=320,0,160,90\n");
+
+        assertEquals(1, cues.size());
+        assertCue(10000, "https://example.com/movies/bunny/sprite.jpg",
+                new Rect(320, 0, 480, 90), cues.get(0));
+    }
+
+    @Test
+    public void parseTrack_skipsCuesWithAnIncompleteTile() throws IOException {
+        List<SeekThumbnailProvider.Cue> cues = parse(
+                "00:00.000 --> 00:05.000\n"
+                        + "sprite.jpg#xywh=0,0,160\n"
+                        + "\n"
+                        + "00:05.000 --> 00:10.000\n"
+                        + "sprite.jpg#xywh=160,0,160,90\n");
+
+        assertEquals(1, cues.size());
+        assertCue(5000, "https://example.com/movies/bunny/sprite.jpg",
+                new Rect(160, 0, 320, 90), cues.get(0));
+    }
+
+    @Test
+    public void parseTrack_skipsCuesWithATileThatIsNotANumber() throws IOException {
+        List<SeekThumbnailProvider.Cue> cues = parse(
+                "00:00.000 --> 00:05.000\n"
+                        + "sprite.jpg#xywh=0,0,wide,90\n"
+                        + "\n"
+                        + "00:05.000 --> 00:10.000\n"
+                        + "sprite.jpg#xywh=160,0,160,90\n");
+
+        assertEquals(1, cues.size());
+        assertCue(5000, "https://example.com/movies/bunny/sprite.jpg",
+                new Rect(160, 0, 320, 90), cues.get(0));
+    }
+
+    private static List<SeekThumbnailProvider.Cue> parse(String track) throws IOException {
+        return SeekThumbnailProvider.parseTrack(
+                new URL(TRACK_URL), new BufferedReader(new StringReader(track)));
+    }
+
+    private static void assertCue(long startMs, String imageUrl, Rect region,
+            SeekThumbnailProvider.Cue cue) {
+        assertEquals(startMs, cue.mStartMs);
+        assertEquals(imageUrl, cue.mImageUrl);
+        if (region == null) {
+            assertNull(cue.mRegion);
+        } else {
+            assertEquals(region, cue.mRegion);
+        }
+    }
+}
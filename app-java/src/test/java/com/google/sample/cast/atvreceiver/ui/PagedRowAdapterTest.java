@@ -0,0 +1,191 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.ui;
+
+import static com.google.sample.cast.atvreceiver.ui.PagedRowAdapter.PAGE_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+
+import androidx.leanback.widget.ObjectAdapter;
+import androidx.leanback.widget.Presenter;
+
+import com.google.sample.cast.atvreceiver.data.Movie;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+@RunWith(RobolectricTestRunner.class)
+public class PagedRowAdapterTest {
+    // Runs page loads right away; their results still reach the adapter through the main looper.
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final Presenter mPresenter = mock(Presenter.class);
+    private final List<String> mEvents = new ArrayList<>();
+    private final ObjectAdapter.DataObserver mObserver = new ObjectAdapter.DataObserver() {
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mEvents.add("changed " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mEvents.add("inserted " + positionStart + " " + itemCount);
+        }
+    };
+
+    private List<Movie> mCatalog;
+
+    @Before
+    public void setUp() {
+        mCatalog = newCatalog(10 * PAGE_SIZE);
+    }
+
+    @Test
+    public void newAdapter_revealsAndLoadsTheFirstPages() {
+        PagedRowAdapter adapter = newAdapter(mCatalog, null);
+
+        assertEquals(2 * PAGE_SIZE, adapter.size());
+        assertNull(adapter.get(0));
+
+        idleMainLooper();
+
+        assertSame(mCatalog.get(0), adapter.get(0));
+        assertSame(mCatalog.get(2 * PAGE_SIZE - 1), adapter.get(2 * PAGE_SIZE - 1));
+        assertEquals(2, mEvents.size());
+        assertTrue(mEvents.contains("changed 0 " + PAGE_SIZE));
+        assertTrue(mEvents.contains("changed " + PAGE_SIZE + " " + PAGE_SIZE));
+    }
+
+    @Test
+    public void newAdapter_revealsAShortCatalogWhole() {
+        List<Movie> catalog = newCatalog(PAGE_SIZE + 3);
+        PagedRowAdapter adapter = newAdapter(catalog, null);
+        idleMainLooper();
+
+        assertEquals(PAGE_SIZE + 3, adapter.size());
+        assertSame(catalog.get(PAGE_SIZE + 2), adapter.get(PAGE_SIZE + 2));
+    }
+
+    @Test
+    public void get_followsTheRowOrder() {
+        int[] order = CatalogRowAdapter.shuffledOrder(mCatalog.size(), new Random(7));
+        PagedRowAdapter adapter = newAdapter(mCatalog, order);
+        idleMainLooper();
+
+        for (int i = 0; i < adapter.size(); i++) {
+            assertSame(mCatalog.get(order[i]), adapter.get(i));
+        }
+    }
+
+    @Test
+    public void setSelectedPosition_revealsTheNextPage() {
+        PagedRowAdapter adapter = newAdapter(mCatalog, null);
+        idleMainLooper();
+        mEvents.clear();
+
+        adapter.setSelectedPosition(PAGE_SIZE);
+        idleMainLooper();
+
+        assertEquals(3 * PAGE_SIZE, adapter.size());
+        assertEquals("inserted " + 2 * PAGE_SIZE + " " + PAGE_SIZE, mEvents.get(0));
+        assertTrue(mEvents.contains("changed " + 2 * PAGE_SIZE + " " + PAGE_SIZE));
+        assertSame(mCatalog.get(3 * PAGE_SIZE - 1), adapter.get(3 * PAGE_SIZE - 1));
+    }
+
+    @Test
+    public void setSelectedPosition_neverRevealsPastTheCatalog() {
+        PagedRowAdapter adapter = newAdapter(mCatalog, null);
+
+        adapter.setSelectedPosition(mCatalog.size() - 1);
+
+        assertEquals(mCatalog.size(), adapter.size());
+    }
+
+    @Test
+    public void setSelectedPosition_dropsPagesFarFromFocus() {
+        PagedRowAdapter adapter = newAdapter(mCatalog, null);
+        idleMainLooper();
+
+        adapter.setSelectedPosition(5 * PAGE_SIZE);
+        idleMainLooper();
+
+        assertNull(adapter.get(0));
+        assertNull(adapter.get(PAGE_SIZE));
+        assertSame(mCatalog.get(5 * PAGE_SIZE), adapter.get(5 * PAGE_SIZE));
+    }
+
+    @Test
+    public void setSelectedPosition_ignoresPagesLoadedAfterFocusMovedAway() {
+        PagedRowAdapter adapter = newAdapter(mCatalog, null);
+
+        adapter.setSelectedPosition(5 * PAGE_SIZE);
+        idleMainLooper();
+
+        assertFalse(mEvents.contains("changed 0 " + PAGE_SIZE));
+        assertNull(adapter.get(0));
+    }
+
+    @Test
+    public void get_loadsAPageAgainOnceFocusComesBack() {
+        PagedRowAdapter adapter = newAdapter(mCatalog, null);
+        adapter.setSelectedPosition(5 * PAGE_SIZE);
+        idleMainLooper();
+
+        adapter.setSelectedPosition(0);
+        idleMainLooper();
+
+        assertSame(mCatalog.get(0), adapter.get(0));
+    }
+
+    private PagedRowAdapter newAdapter(List<Movie> catalog, int[] order) {
+        PagedRowAdapter adapter = new PagedRowAdapter(mPresenter, catalog, order, DIRECT_EXECUTOR);
+        adapter.registerObserver(mObserver);
+        return adapter;
+    }
+
+    private static List<Movie> newCatalog(int size) {
+        List<Movie> catalog = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Movie movie = new Movie();
+            movie.setId(i);
+            catalog.add(movie);
+        }
+        return catalog;
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
@@ -21,11 +21,20 @@ import androidx.lifecycle.ProcessLifecycleOwner
 import com.google.android.gms.cast.tv.SenderInfo
 import android.widget.Toast
 import com.google.android.gms.cast.tv.SenderDisconnectedEventInfo
+import com.google.sample.cast.atvreceiver.player.BufferProfile
+import com.google.sample.cast.atvreceiver.player.MediaCache
+import com.google.sample.cast.atvreceiver.player.PlayerHolder
 
 class CastDemoApplication : Application() {
     override fun onCreate() {
         super.onCreate()
         CastReceiverContext.initInstance(this)
+        // The cache is sized for the device's storage once it opens, off the main thread.
+        MediaCache.configure(resources.getBoolean(R.bool.persistent_media_cache))
+        val bufferProfile = getString(R.string.buffer_profile)
+        if (bufferProfile.isNotEmpty()) {
+            PlayerHolder.getInstance(this).setBufferProfile(BufferProfile.valueOf(bufferProfile))
+        }
         CastReceiverContext.getInstance().registerEventCallback(EventCallback())
         ProcessLifecycleOwner.get().lifecycle.addObserver(AppLifecycleObserver())
     }
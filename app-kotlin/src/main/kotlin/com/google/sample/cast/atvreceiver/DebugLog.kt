@@ -0,0 +1,41 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver
+
+import android.util.Log
+
+/**
+ * Gate for debug and info logging. Call sites check [ENABLED] before building their message, so
+ * that with logging off no string is built and `Log` is never called:
+ *
+ * ```
+ * if (DebugLog.ENABLED) {
+ *     Log.d(TAG, "Bound $movie")
+ * }
+ * ```
+ *
+ * Warnings and errors are always logged.
+ */
+object DebugLog {
+    private const val TAG = "AtvReceiver"
+
+    /**
+     * Whether debug logging is on. It always is in debug builds; a release build logs only if
+     * `adb shell setprop log.tag.AtvReceiver DEBUG` was run before the app started.
+     */
+    @JvmField
+    val ENABLED = BuildConfig.DEBUG || Log.isLoggable(TAG, Log.DEBUG)
+}
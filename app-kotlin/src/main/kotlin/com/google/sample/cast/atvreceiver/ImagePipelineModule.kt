@@ -0,0 +1,103 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver
+
+import android.app.ActivityManager
+import android.content.Context
+import android.util.Log
+import com.bumptech.glide.GlideBuilder
+import com.bumptech.glide.annotation.GlideModule
+import com.bumptech.glide.load.DecodeFormat
+import com.bumptech.glide.load.Key
+import com.bumptech.glide.load.engine.Resource
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool
+import com.bumptech.glide.load.engine.cache.LruResourceCache
+import com.bumptech.glide.module.AppGlideModule
+import com.bumptech.glide.request.RequestOptions
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Configures image loading for low-memory TV devices.
+ *
+ * Images are downsampled to the size they are shown at and decoded as RGB_565 unless they have
+ * alpha. The memory cache and the bitmap pool are sized from the memory class of the device rather
+ * than from the size of its screen, and the memory cache counts its hits and misses.
+ */
+@GlideModule
+class ImagePipelineModule : AppGlideModule() {
+    override fun applyOptions(context: Context, builder: GlideBuilder) {
+        val activityManager = context.getSystemService(Context.ACTIVITY_SERVICE) as ActivityManager
+        var heapBytes = activityManager.memoryClass * 1024L * 1024L
+        if (activityManager.isLowRamDevice) {
+            heapBytes /= 2
+        }
+        val memoryCache = CountingResourceCache(heapBytes / MEMORY_CACHE_HEAP_DIVISOR)
+        sMemoryCache = memoryCache
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Memory cache of " + memoryCache.maxSize + " bytes")
+        }
+        builder.setMemoryCache(memoryCache)
+                .setBitmapPool(LruBitmapPool(heapBytes / BITMAP_POOL_HEAP_DIVISOR))
+                .setDefaultRequestOptions(RequestOptions()
+                        .format(DecodeFormat.PREFER_RGB_565))
+    }
+
+    override fun isManifestParsingEnabled(): Boolean {
+        return false
+    }
+
+    /**
+     * A memory cache that counts its hits and misses. Glide looks an image up here, and takes it
+     * out into its active resources, for every request that no image on screen can serve.
+     */
+    private class CountingResourceCache(size: Long) : LruResourceCache(size) {
+        val mHits = AtomicLong()
+        val mMisses = AtomicLong()
+
+        override fun remove(key: Key): Resource<*>? {
+            val resource = super.remove(key)
+            (if (resource != null) mHits else mMisses).incrementAndGet()
+            return resource
+        }
+    }
+
+    companion object {
+        private const val TAG = "ImagePipelineModule"
+
+        // Shares of the heap for the memory cache and the bitmap pool, halved on low-RAM devices.
+        private const val MEMORY_CACHE_HEAP_DIVISOR = 8
+        private const val BITMAP_POOL_HEAP_DIVISOR = 16
+
+        private var sMemoryCache: CountingResourceCache? = null
+
+        /** The number of images found in the memory cache.  */
+        val memoryCacheHitCount: Long
+            get() = sMemoryCache?.mHits?.get() ?: 0
+
+        /** The number of images looked up in the memory cache but not found there.  */
+        val memoryCacheMissCount: Long
+            get() = sMemoryCache?.mMisses?.get() ?: 0
+
+        /** The bytes used by the images in the memory cache.  */
+        val memoryCacheBytes: Long
+            get() = sMemoryCache?.currentSize ?: 0
+
+        /** A one-line summary of the memory cache, for logging.  */
+        val memoryCacheStats: String
+            get() = ("$memoryCacheHitCount hits, $memoryCacheMissCount misses, "
+                    + "$memoryCacheBytes bytes in use")
+    }
+}
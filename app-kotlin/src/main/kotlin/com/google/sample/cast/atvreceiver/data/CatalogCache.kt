@@ -0,0 +1,218 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.data
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.util.Log
+import androidx.core.os.trace
+import java.io.BufferedInputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.OutputStream
+import java.io.Reader
+import java.net.HttpURLConnection
+import java.net.URL
+import com.google.sample.cast.atvreceiver.DebugLog
+
+/**
+ * Keeps the last downloaded catalog on disk together with its HTTP validators, so that it can be
+ * shown without waiting on the network and revalidated with a conditional request. A
+ * [CatalogSnapshot] of the parsed catalog is kept next to it.
+ */
+class CatalogCache(context: Context) {
+    private val mFile = File(context.cacheDir, CATALOG_FILE)
+    private val mSnapshotFile = File(context.cacheDir, SNAPSHOT_FILE)
+    private val mPrefs: SharedPreferences =
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+
+    /** Returns whether a catalog downloaded from `url` is stored.  */
+    fun has(url: String): Boolean {
+        return url == mPrefs.getString(KEY_URL, null) && mFile.isFile
+    }
+
+    /** Opens the stored catalog. The caller is responsible for closing the reader.  */
+    @Throws(IOException::class)
+    fun open(): Reader {
+        return InputStreamReader(BufferedInputStream(FileInputStream(mFile)), "iso-8859-1")
+    }
+
+    /**
+     * Returns the snapshot of the stored catalog, or `null` if none has been written since
+     * the catalog was last downloaded.
+     */
+    @Throws(IOException::class)
+    fun readSnapshot(): List<Movie>? {
+        if (!mSnapshotFile.isFile) {
+            return null
+        }
+        return trace("CatalogSnapshot.read") { CatalogSnapshot.read(mSnapshotFile) }
+    }
+
+    /** Stores the parsed form of the stored catalog.  */
+    @Throws(IOException::class)
+    fun writeSnapshot(movies: List<Movie>) {
+        CatalogSnapshot.write(mSnapshotFile, movies)
+    }
+
+    /** Deletes the stored catalog, its snapshot and its validators.  */
+    fun clear() {
+        mPrefs.edit().clear().apply()
+        mSnapshotFile.delete()
+        mFile.delete()
+    }
+
+    /**
+     * Checks `url` for a newer catalog, sending the validators of the stored one. A new
+     * catalog is handed to `parser` while it downloads and is stored at the same time, so
+     * parsing does not have to wait for the whole body. If the body cannot be read to its end or
+     * stored, the validators are dropped, so that the next check is unconditional.
+     *
+     * @return the result of `parser` for the new catalog, or `null` if the server
+     * answered that the stored catalog is still current.
+     */
+    @Throws(IOException::class)
+    fun <T> revalidate(url: String, parser: (Reader) -> T): T? {
+        val cached = has(url)
+        val connection = URL(url).openConnection() as HttpURLConnection
+        try {
+            connection.connectTimeout = TIMEOUT_MS
+            connection.readTimeout = TIMEOUT_MS
+            if (cached) {
+                mPrefs.getString(KEY_ETAG, null)?.let {
+                    connection.setRequestProperty("If-None-Match", it)
+                }
+                mPrefs.getString(KEY_LAST_MODIFIED, null)?.let {
+                    connection.setRequestProperty("If-Modified-Since", it)
+                }
+            }
+
+            val responseCode = connection.responseCode
+            if (cached && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                if (DebugLog.ENABLED) {
+                    Log.d(TAG, "Catalog not modified")
+                }
+                return null
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw IOException("Unexpected response code $responseCode")
+            }
+
+            val result = try {
+                store(connection.inputStream, parser)
+            } catch (e: Exception) {
+                // The parser may already have published the new catalog, which is not the one
+                // stored: drop the validators so that the next check downloads it again.
+                mPrefs.edit().clear().apply()
+                throw e
+            }
+            // The validators are written only once the new body is in place, so a crash in
+            // between can never pair new validators with an old catalog.
+            mPrefs.edit()
+                    .putString(KEY_URL, url)
+                    .putString(KEY_ETAG, connection.getHeaderField("ETag"))
+                    .putString(KEY_LAST_MODIFIED, connection.getHeaderField("Last-Modified"))
+                    .apply()
+            return result
+        } finally {
+            connection.disconnect()
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun <T> store(input: InputStream, parser: (Reader) -> T): T {
+        val tmp = File(mFile.path + ".tmp")
+        val result = try {
+            FileOutputStream(tmp).use { out ->
+                val tee = TeeInputStream(input, out)
+                val parsed = parser(InputStreamReader(tee, "iso-8859-1"))
+                // Whatever the parser left unread still belongs in the stored copy.
+                tee.drain()
+                parsed
+            }
+        } catch (e: Exception) {
+            tmp.delete()
+            throw e
+        } finally {
+            input.close()
+        }
+        // The snapshot was built from the catalog that is about to be replaced.
+        mSnapshotFile.delete()
+        if (!tmp.renameTo(mFile)) {
+            tmp.delete()
+            throw IOException("Failed to store the catalog")
+        }
+        return result
+    }
+
+    /** Copies everything read from the source into a second stream.  */
+    private class TeeInputStream(input: InputStream, private val mCopy: OutputStream) :
+            FilterInputStream(input) {
+        override fun read(): Int {
+            val b = super.read()
+            if (b != -1) {
+                mCopy.write(b)
+            }
+            return b
+        }
+
+        override fun read(buffer: ByteArray, offset: Int, count: Int): Int {
+            val read = super.read(buffer, offset, count)
+            if (read > 0) {
+                mCopy.write(buffer, offset, read)
+            }
+            return read
+        }
+
+        override fun skip(n: Long): Long {
+            // Skipped bytes are still copied.
+            val buffer = ByteArray(BUFFER_SIZE)
+            return maxOf(read(buffer, 0, minOf(n, BUFFER_SIZE.toLong()).toInt()), 0).toLong()
+        }
+
+        override fun markSupported(): Boolean {
+            return false
+        }
+
+        override fun close() {
+            // The source is closed by store(), after the rest of it has been copied.
+        }
+
+        fun drain() {
+            val buffer = ByteArray(BUFFER_SIZE)
+            while (read(buffer, 0, buffer.size) != -1) {
+                // Copied by read().
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "CatalogCache"
+        private const val CATALOG_FILE = "catalog.json"
+        private const val SNAPSHOT_FILE = "catalog.snapshot"
+        private const val PREFS_NAME = "catalog_cache"
+        private const val KEY_URL = "url"
+        private const val KEY_ETAG = "etag"
+        private const val KEY_LAST_MODIFIED = "last_modified"
+        private const val TIMEOUT_MS = 15000
+        private const val BUFFER_SIZE = 8192
+    }
+}
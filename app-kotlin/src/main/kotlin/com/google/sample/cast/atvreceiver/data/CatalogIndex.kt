@@ -0,0 +1,62 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.data
+
+import java.util.HashMap
+
+/**
+ * Lookup table from a Cast entity to a catalog position, built once per catalog so that load
+ * requests are resolved without scanning the list. An entity is either the string form of a
+ * [movie id][Movie.id] or the movie's video URL, which is also what senders put in
+ * the content id of a load request.
+ */
+class CatalogIndex internal constructor(private val mMovies: List<Movie>) {
+    private val mPositions: MutableMap<String, Int> = HashMap(mMovies.size * 4)
+
+    init {
+        if (mMovies is CatalogSnapshot.MovieTable) {
+            // Decode only the two keyed fields instead of every movie.
+            for (i in mMovies.indices) {
+                put(mMovies.getId(i).toString(), i)
+                put(mMovies.getVideoUrl(i), i)
+            }
+        } else {
+            for (i in mMovies.indices) {
+                val movie = mMovies[i]
+                put(movie.id.toString(), i)
+                put(movie.videoUrl, i)
+            }
+        }
+    }
+
+    private fun put(key: String?, position: Int) {
+        // The first movie wins if two entries share a video URL.
+        if (key != null && !mPositions.containsKey(key)) {
+            mPositions[key] = position
+        }
+    }
+
+    /** Returns the catalog position of `entity`, or -1 if it is not in the catalog.  */
+    fun indexOf(entity: String?): Int {
+        return entity?.let { mPositions[it] } ?: -1
+    }
+
+    /** Returns the movie for `entity`, or `null` if it is not in the catalog.  */
+    fun find(entity: String?): Movie? {
+        val position = indexOf(entity)
+        return if (position < 0) null else mMovies[position]
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.data
+
+import android.util.LruCache
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.AbstractList
+import java.util.ArrayList
+import java.util.HashMap
+import java.util.RandomAccess
+
+/**
+ * Versioned binary form of a parsed catalog, read back through a memory mapping so that no JSON
+ * has to be parsed on startup.
+ *
+ * The file is laid out as a header (`magic, version, movieCount, stringCount`), one
+ * fixed-width record per movie, a table of `stringCount + 1` string offsets and finally the
+ * UTF-8 bytes of all distinct strings. Records refer to strings by their index in the table.
+ */
+internal object CatalogSnapshot {
+    private const val MAGIC = 0x43415453 // "CATS"
+    private const val VERSION = 2
+    private const val HEADER_SIZE = 4 * 4
+
+    private const val RECORD_ID = 0
+    private const val RECORD_TITLE = 4
+    private const val RECORD_DESCRIPTION = 8
+    private const val RECORD_STUDIO = 12
+    private const val RECORD_VIDEO_URL = 16
+    private const val RECORD_CARD_IMAGE_URL = 20
+    private const val RECORD_BACKGROUND_IMAGE_URL = 24
+    private const val RECORD_DURATION = 28
+    private const val RECORD_SEEK_THUMBNAILS_URL = 36
+    private const val RECORD_SIZE = 40
+
+    private const val NO_STRING = -1
+
+    // Decoded movies kept by a snapshot: enough for the pages that the browse rows hold around
+    // their focused cards.
+    private const val MAX_DECODED_MOVIES = 512
+
+    @Throws(IOException::class)
+    fun write(file: File, movies: List<Movie>) {
+        val indices: MutableMap<String, Int> = HashMap()
+        val strings: MutableList<ByteArray> = ArrayList()
+        for (movie in movies) {
+            intern(movie.title, indices, strings)
+            intern(movie.description, indices, strings)
+            intern(movie.studio, indices, strings)
+            intern(movie.videoUrl, indices, strings)
+            intern(movie.cardImageUrl, indices, strings)
+            intern(movie.backgroundImageUrl, indices, strings)
+            intern(movie.seekThumbnailsUrl, indices, strings)
+        }
+
+        val tmp = File(file.path + ".tmp")
+        DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(VERSION)
+            out.writeInt(movies.size)
+            out.writeInt(strings.size)
+            for (movie in movies) {
+                out.writeInt(movie.id)
+                out.writeInt(indexOf(movie.title, indices))
+                out.writeInt(indexOf(movie.description, indices))
+                out.writeInt(indexOf(movie.studio, indices))
+                out.writeInt(indexOf(movie.videoUrl, indices))
+                out.writeInt(indexOf(movie.cardImageUrl, indices))
+                out.writeInt(indexOf(movie.backgroundImageUrl, indices))
+                out.writeLong(movie.duration)
+                out.writeInt(indexOf(movie.seekThumbnailsUrl, indices))
+            }
+            var offset = 0
+            for (string in strings) {
+                out.writeInt(offset)
+                offset += string.size
+            }
+            out.writeInt(offset)
+            for (string in strings) {
+                out.write(string)
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete()
+            throw IOException("Failed to store the catalog snapshot")
+        }
+    }
+
+    /**
+     * Maps `file` and returns a read-only list over it, or `null` if the file was
+     * written by a different version of the format.
+     */
+    @Throws(IOException::class)
+    fun read(file: File): List<Movie>? {
+        RandomAccessFile(file, "r").use { input ->
+            val channel = input.channel
+            // The mapping stays valid after the channel is closed.
+            val buffer: ByteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            if (buffer.limit() < HEADER_SIZE
+                    || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION) {
+                return null
+            }
+            val movieCount = buffer.getInt(8)
+            val stringCount = buffer.getInt(12)
+            val offsetsStart = HEADER_SIZE + movieCount.toLong() * RECORD_SIZE
+            val stringsStart = offsetsStart + (stringCount + 1L) * 4
+            if (movieCount < 0 || stringCount < 0 || stringsStart > buffer.limit()
+                    || stringsStart + buffer.getInt(stringsStart.toInt() - 4) > buffer.limit()) {
+                throw IOException("Truncated catalog snapshot")
+            }
+            return MovieTable(buffer, movieCount, offsetsStart.toInt(), stringsStart.toInt())
+        }
+    }
+
+    private fun intern(value: String?, indices: MutableMap<String, Int>, strings: MutableList<ByteArray>) {
+        if (value != null && !indices.containsKey(value)) {
+            indices[value] = strings.size
+            strings.add(value.toByteArray(Charsets.UTF_8))
+        }
+    }
+
+    private fun indexOf(value: String?, indices: Map<String, Int>): Int {
+        return if (value == null) NO_STRING else indices.getValue(value)
+    }
+
+    /**
+     * Read-only list over a mapped snapshot. Nothing is decoded up front: [get] builds its
+     * [Movie] from the mapping the first time it is asked for, so only the items that are
+     * actually shown cost any decoding. The most recently used movies are kept, so asking for
+     * the same item again usually returns the same instance; an evicted one is decoded again as
+     * a new instance, which is only [equal][Movie.equals] to the one handed out before.
+     */
+    internal class MovieTable(
+            private val mBuffer: ByteBuffer,
+            private val mSize: Int,
+            private val mOffsetsStart: Int,
+            private val mStringsStart: Int) : AbstractList<Movie>(), RandomAccess {
+
+        private val mMovies = LruCache<Int, Movie>(MAX_DECODED_MOVIES)
+
+        override fun get(index: Int): Movie {
+            if (index < 0 || index >= mSize) {
+                throw IndexOutOfBoundsException("Index: $index, Size: $mSize")
+            }
+            return mMovies.get(index) ?: decode(index).also { mMovies.put(index, it) }
+        }
+
+        override val size: Int
+            get() = mSize
+
+        /** Returns the id of the movie at `index` without decoding the whole movie.  */
+        fun getId(index: Int): Int {
+            return mBuffer.getInt(HEADER_SIZE + index * RECORD_SIZE + RECORD_ID)
+        }
+
+        /** Returns the video URL of the movie at `index` without decoding the whole movie.  */
+        fun getVideoUrl(index: Int): String? {
+            return readString(
+                    mBuffer.duplicate(), HEADER_SIZE + index * RECORD_SIZE + RECORD_VIDEO_URL)
+        }
+
+        private fun decode(index: Int): Movie {
+            // A private duplicate keeps concurrent readers from sharing a buffer position.
+            val buffer = mBuffer.duplicate()
+            val record = HEADER_SIZE + index * RECORD_SIZE
+            val movie = Movie()
+            movie.id = buffer.getInt(record + RECORD_ID)
+            movie.title = readString(buffer, record + RECORD_TITLE)
+            movie.description = readString(buffer, record + RECORD_DESCRIPTION)
+            movie.studio = readString(buffer, record + RECORD_STUDIO)
+            movie.videoUrl = readString(buffer, record + RECORD_VIDEO_URL)
+            movie.cardImageUrl = readString(buffer, record + RECORD_CARD_IMAGE_URL)
+            movie.backgroundImageUrl = readString(buffer, record + RECORD_BACKGROUND_IMAGE_URL)
+            movie.duration = buffer.getLong(record + RECORD_DURATION)
+            movie.seekThumbnailsUrl = readString(buffer, record + RECORD_SEEK_THUMBNAILS_URL)
+            return movie
+        }
+
+        private fun readString(buffer: ByteBuffer, field: Int): String? {
+            val index = buffer.getInt(field)
+            if (index == NO_STRING) {
+                return null
+            }
+            val start = buffer.getInt(mOffsetsStart + index * 4)
+            val end = buffer.getInt(mOffsetsStart + (index + 1) * 4)
+            val bytes = ByteArray(end - start)
+            buffer.position(mStringsStart + start)
+            buffer.get(bytes)
+            return String(bytes, Charsets.UTF_8)
+        }
+    }
+}
@@ -28,6 +28,27 @@ class Movie : Serializable {
     var cardImageUrl: String? = null
     var videoUrl: String? = null
     var studio: String? = null
+    /** Duration in milliseconds. */
+    var duration = 0L
+    /**
+     * URL of a WebVTT track of seek preview thumbnails, which are usually tiles of sprite sheets,
+     * or `null` if the movie has none.
+     */
+    var seekThumbnailsUrl: String? = null
+
+    /**
+     * Returns whether `other` is a movie with the same id. A catalog snapshot decodes its movies
+     * on demand and may hand out a new instance for the same entry, so movies must not be
+     * compared by identity.
+     */
+    override fun equals(other: Any?): Boolean {
+        return other is Movie && other.id == id
+    }
+
+    override fun hashCode(): Int {
+        return id
+    }
+
     override fun toString(): String {
         return "Movie{" +
                 "id=" + id +
@@ -15,44 +15,36 @@
  */
 package com.google.sample.cast.atvreceiver.data
 
-import android.util.Log
-import org.json.JSONObject
-import org.json.JSONException
-import java.io.*
-import java.lang.Exception
-import java.lang.StringBuilder
+import android.util.JsonReader
+import android.util.JsonToken
+import androidx.core.os.trace
+import java.io.BufferedInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.Reader
 import java.net.URL
 import java.util.ArrayList
+import java.util.Collections
 import java.util.HashMap
 
 class MovieList {
-    protected fun parseUrl(urlString: String?): JSONObject? {
-        var inputStream: InputStream? = null
-        return try {
-            val url = URL(urlString)
-            val urlConnection = url.openConnection()
-            inputStream = BufferedInputStream(urlConnection.getInputStream())
-            val reader = BufferedReader(InputStreamReader(
-                    urlConnection.getInputStream(), "iso-8859-1"), 1024)
-            val sb = StringBuilder()
-            var line: String?
-            while (reader.readLine().also { line = it } != null) {
-                sb.append(line)
-            }
-            val json = sb.toString()
-            JSONObject(json)
-        } catch (e: Exception) {
-            Log.d(TAG, "Failed to parse the json for media list", e)
-            null
-        } finally {
-            if (null != inputStream) {
-                try {
-                    inputStream.close()
-                } catch (e: IOException) {
-                    // ignore
-                }
-            }
-        }
+    /** Receives the movies of each catalog category as soon as that category has been parsed.  */
+    fun interface OnCategoryParsedListener {
+        fun onCategoryParsed(name: String?, movies: List<Movie>)
+    }
+
+    /** Fields of a video entry as they appear in the catalog, before URL prefixes are applied. */
+    private class VideoEntry {
+        var title: String? = null
+        var subtitle: String? = null
+        var studio: String? = null
+        var videoUrl: String? = null
+        var mimeType: String? = null
+        var thumb: String? = null
+        var bigImage: String? = null
+        var seekThumbnails: String? = null
+        var duration = 0L
     }
 
     companion object {
@@ -73,6 +65,7 @@ class MovieList {
         private const val TAG_DURATION = "duration"
         private const val TAG_THUMB = "image-480x270" // "thumb";
         private const val TAG_IMG_780_1200 = "image-780x1200"
+        private const val TAG_SEEK_THUMBNAILS = "seek-thumbnails"
         private const val TAG_TITLE = "title"
         private const val TARGET_FORMAT = TAG_HLS
         val MOVIE_CATEGORY = arrayOf(
@@ -81,73 +74,200 @@ class MovieList {
                 "Ads",
                 "Live"
         )
-        private var list: MutableList<Movie>? = null
+        @Volatile
+        private var list: List<Movie>? = null
+        @Volatile
+        private var index: CatalogIndex? = null
         private var count = 0
+        /** Returns the current catalog. The list is read-only, as it is shared by every screen.  */
         fun getList(): List<Movie>? {
             return list
         }
 
-        @Throws(JSONException::class)
+        /** Returns the index of the current list, or `null` if no catalog has been loaded.  */
+        fun getIndex(): CatalogIndex? {
+            return index
+        }
+
+        /** Makes `movies`, for example a list read back from a snapshot, the current list.  */
+        fun setList(movies: List<Movie>) {
+            index = CatalogIndex(movies)
+            list = movies
+        }
+
+        @Throws(IOException::class)
         fun setupMovies(url: String?): List<Movie>? {
             if (null != list) {
                 return list
             }
-            list = ArrayList()
-            val urlPrefixMap: MutableMap<String, String> = HashMap()
-            val jsonObj = MovieList().parseUrl(url)
-            val categories = jsonObj!!.getJSONArray(TAG_CATEGORIES)
-            if (null != categories) {
-                for (i in 0 until categories.length()) {
-                    val category = categories.getJSONObject(i)
-                    urlPrefixMap[TAG_HLS] = category.getString(TAG_HLS)
-                    urlPrefixMap[TAG_DASH] = category.getString(TAG_DASH)
-                    urlPrefixMap[TAG_MP4] = category.getString(TAG_MP4)
-                    urlPrefixMap[TAG_IMAGES] = category.getString(TAG_IMAGES)
-                    category.getString(TAG_NAME)
-                    val videos = category.getJSONArray(TAG_VIDEOS)
-                    if (null != videos) {
-                        for (j in 0 until videos.length()) {
-                            var videoUrl: String? = null
-                            var mimeType: String? = null
-                            val video = videos.getJSONObject(j)
-                            val subTitle = video.getString(TAG_SUBTITLE)
-                            val videoSpecs = video.getJSONArray(TAG_SOURCES)
-                            if (null == videoSpecs || videoSpecs.length() == 0) {
-                                continue
-                            }
-                            for (k in 0 until videoSpecs.length()) {
-                                val videoSpec = videoSpecs.getJSONObject(k)
-                                if (TARGET_FORMAT == videoSpec.getString(TAG_VIDEO_TYPE)) {
-                                    videoUrl = urlPrefixMap[TARGET_FORMAT].toString() + videoSpec
-                                            .getString(TAG_VIDEO_URL)
-                                    mimeType = videoSpec.getString(TAG_VIDEO_MIME)
-                                }
-                            }
-                            if (videoUrl == null) {
-                                continue
+            var inputStream: InputStream? = null
+            try {
+                val urlConnection = URL(url).openConnection()
+                inputStream = BufferedInputStream(urlConnection.getInputStream())
+                return updateMovies(InputStreamReader(inputStream, "iso-8859-1"), null)
+            } finally {
+                if (null != inputStream) {
+                    try {
+                        inputStream.close()
+                    } catch (e: IOException) {
+                        // ignore
+                    }
+                }
+            }
+        }
+
+        /**
+         * Parses a catalog and makes it the current list, replacing any previously loaded one.
+         * The reader is closed once the catalog has been read.
+         *
+         * @param listener if not `null`, is given the movies of each category as soon as that
+         * category has been parsed.
+         */
+        @Throws(IOException::class)
+        fun updateMovies(input: Reader, listener: OnCategoryParsedListener?): List<Movie> {
+            // Ids restart so that a refreshed catalog assigns the same ids to the same entries.
+            count = 0
+            val movies = Collections.unmodifiableList(parseCatalog(input, listener))
+            setList(movies)
+            return movies
+        }
+
+        /**
+         * Parses the catalog with a pull parser, building [Movie] objects as the videos are read.
+         * Neither the raw document nor a JSON tree is kept in memory; at most one category's worth of
+         * video entries is buffered, because a category's URL prefixes may follow its videos.
+         */
+        @Throws(IOException::class)
+        internal fun parseCatalog(input: Reader, listener: OnCategoryParsedListener?): MutableList<Movie> {
+            val movies: MutableList<Movie> = ArrayList()
+            JsonReader(input).use { reader ->
+                trace("MovieList.parseCatalog") {
+                    reader.beginObject()
+                    while (reader.hasNext()) {
+                        if (TAG_CATEGORIES == reader.nextName()) {
+                            reader.beginArray()
+                            while (reader.hasNext()) {
+                                readCategory(reader, movies, listener)
                             }
-                            val imageUrl = urlPrefixMap[TAG_IMAGES].toString() + video.getString(TAG_THUMB)
-                            val bigImageUrl = urlPrefixMap[TAG_IMAGES].toString() + video
-                                    .getString(TAG_IMG_780_1200)
-                            val title = video.getString(TAG_TITLE)
-                            val studio = video.getString(TAG_STUDIO)
-                            val duration = (video.getInt(TAG_DURATION) * 1000).toLong()
-                            list?.add(buildMovieInfo(
-                                    title, subTitle, studio, videoUrl, imageUrl, bigImageUrl))
+                            reader.endArray()
+                        } else {
+                            reader.skipValue()
                         }
                     }
+                    reader.endObject()
                 }
             }
-            return list
+            return movies
+        }
+
+        private fun readCategory(
+                reader: JsonReader,
+                movies: MutableList<Movie>,
+                listener: OnCategoryParsedListener?) {
+            var categoryName: String? = null
+            val urlPrefixMap: MutableMap<String, String?> = HashMap()
+            val videos: MutableList<VideoEntry> = ArrayList()
+            reader.beginObject()
+            while (reader.hasNext()) {
+                when (val name = reader.nextName()) {
+                    TAG_HLS, TAG_DASH, TAG_MP4, TAG_IMAGES -> urlPrefixMap[name] = nextString(reader)
+                    TAG_NAME -> categoryName = nextString(reader)
+                    TAG_VIDEOS -> {
+                        reader.beginArray()
+                        while (reader.hasNext()) {
+                            readVideo(reader)?.let { videos.add(it) }
+                        }
+                        reader.endArray()
+                    }
+                    else -> reader.skipValue()
+                }
+            }
+            reader.endObject()
+
+            val first = movies.size
+            val videoPrefix = urlPrefixMap[TARGET_FORMAT].toString()
+            val imagePrefix = urlPrefixMap[TAG_IMAGES].toString()
+            for (video in videos) {
+                movies.add(buildMovieInfo(
+                        video.title,
+                        video.subtitle,
+                        video.studio,
+                        videoPrefix + video.videoUrl,
+                        imagePrefix + video.thumb,
+                        imagePrefix + video.bigImage,
+                        video.seekThumbnails?.let { imagePrefix + it },
+                        video.duration))
+            }
+            if (listener != null && movies.size > first) {
+                // A copy, since the parser keeps appending to the catalog list.
+                listener.onCategoryParsed(categoryName, ArrayList(movies.subList(first, movies.size)))
+            }
+        }
+
+        /** Returns the video entry, or `null` if it has no source in [TARGET_FORMAT]. */
+        private fun readVideo(reader: JsonReader): VideoEntry? {
+            val video = VideoEntry()
+            reader.beginObject()
+            while (reader.hasNext()) {
+                when (reader.nextName()) {
+                    TAG_SUBTITLE -> video.subtitle = nextString(reader)
+                    TAG_SOURCES -> {
+                        reader.beginArray()
+                        while (reader.hasNext()) {
+                            readSource(reader, video)
+                        }
+                        reader.endArray()
+                    }
+                    TAG_THUMB -> video.thumb = nextString(reader)
+                    TAG_IMG_780_1200 -> video.bigImage = nextString(reader)
+                    TAG_SEEK_THUMBNAILS -> video.seekThumbnails = nextString(reader)
+                    TAG_TITLE -> video.title = nextString(reader)
+                    TAG_STUDIO -> video.studio = nextString(reader)
+                    TAG_DURATION -> video.duration = reader.nextInt() * 1000L
+                    else -> reader.skipValue()
+                }
+            }
+            reader.endObject()
+            return if (video.videoUrl != null) video else null
+        }
+
+        private fun readSource(reader: JsonReader, video: VideoEntry) {
+            var type: String? = null
+            var url: String? = null
+            var mime: String? = null
+            reader.beginObject()
+            while (reader.hasNext()) {
+                when (reader.nextName()) {
+                    TAG_VIDEO_TYPE -> type = nextString(reader)
+                    TAG_VIDEO_URL -> url = nextString(reader)
+                    TAG_VIDEO_MIME -> mime = nextString(reader)
+                    else -> reader.skipValue()
+                }
+            }
+            reader.endObject()
+            if (TARGET_FORMAT == type) {
+                video.videoUrl = url
+                video.mimeType = mime
+            }
+        }
+
+        private fun nextString(reader: JsonReader): String? {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull()
+                return null
+            }
+            return reader.nextString()
         }
 
         private fun buildMovieInfo(
-                title: String,
-                description: String,
-                studio: String,
+                title: String?,
+                description: String?,
+                studio: String?,
                 videoUrl: String,
                 cardImageUrl: String,
-                backgroundImageUrl: String): Movie {
+                backgroundImageUrl: String,
+                seekThumbnailsUrl: String?,
+                duration: Long): Movie {
             val movie = Movie()
             movie.id = count++
             movie.title = title
@@ -156,7 +276,9 @@ class MovieList {
             movie.cardImageUrl = cardImageUrl
             movie.backgroundImageUrl = backgroundImageUrl
             movie.videoUrl = videoUrl
+            movie.seekThumbnailsUrl = seekThumbnailsUrl
+            movie.duration = duration
             return movie
         }
     }
-}
\ No newline at end of file
+}
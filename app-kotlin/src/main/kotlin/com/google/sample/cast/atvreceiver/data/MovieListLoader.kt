@@ -17,16 +17,103 @@ package com.google.sample.cast.atvreceiver.data
 
 import android.content.AsyncTaskLoader
 import android.content.Context
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
 import android.util.Log
+import java.io.IOException
 import java.lang.Exception
+import com.google.sample.cast.atvreceiver.DebugLog
+
+/**
+ * Loads the catalog, delivering the copy stored by [CatalogCache] first when there is one
+ * and then revalidating it against the network in a second load. The stored copy is read from
+ * its snapshot when possible, so a warm start does not parse any JSON.
+ */
+class MovieListLoader(context: Context, private val mUrl: String) : AsyncTaskLoader<List<Movie>?>(context) {
+    private val mCache = CatalogCache(context)
+    private val mHandler = Handler(Looper.getMainLooper())
+    private var mOnCategoryParsedListener: MovieList.OnCategoryParsedListener? = null
+    private var mRevalidated = false
 
-class MovieListLoader(context: Context?, private val mUrl: String) : AsyncTaskLoader<List<Movie>?>(context) {
     override fun loadInBackground(): List<Movie>? {
+        if (MovieList.getList() == null && mCache.has(mUrl)) {
+            try {
+                val start = SystemClock.elapsedRealtime()
+                val movies = mCache.readSnapshot()
+                if (movies != null) {
+                    MovieList.setList(movies)
+                    if (DebugLog.ENABLED) {
+                        Log.d(TAG, "Mapped catalog snapshot in "
+                                + (SystemClock.elapsedRealtime() - start) + " ms")
+                    }
+                    return movies
+                }
+                return parseCatalog()
+            } catch (e: Exception) {
+                Log.w(TAG, "Discarding unreadable cached catalog", e)
+                mCache.clear()
+            }
+        }
         return try {
-            MovieList.Companion.setupMovies(mUrl)
+            if (!mRevalidated) {
+                mRevalidated = true
+                // Only a catalog that nothing has been shown for yet is published by category.
+                val listener = if (MovieList.getList() == null) mainThreadListener() else null
+                val movies = mCache.revalidate(mUrl) { MovieList.updateMovies(it, listener) }
+                if (movies != null) {
+                    writeSnapshot(movies)
+                    return movies
+                }
+                if (MovieList.getList() == null) {
+                    return parseCatalog()
+                }
+            }
+            // Returning the list that was already delivered does not trigger another
+            // onLoadFinished().
+            MovieList.getList()
         } catch (e: Exception) {
             Log.e(TAG, "Failed to fetch media data", e)
-            null
+            MovieList.getList()
+        }
+    }
+
+    /**
+     * Sets a listener that is called on the main thread with the movies of each category while
+     * the catalog is parsed, before the complete list is delivered. It is only called for the
+     * first catalog this loader delivers.
+     */
+    fun setOnCategoryParsedListener(listener: MovieList.OnCategoryParsedListener?) {
+        mOnCategoryParsedListener = listener
+    }
+
+    private fun mainThreadListener(): MovieList.OnCategoryParsedListener? {
+        val listener = mOnCategoryParsedListener ?: return null
+        return MovieList.OnCategoryParsedListener { name, movies ->
+            mHandler.post { listener.onCategoryParsed(name, movies) }
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun parseCatalog(): List<Movie> {
+        val movies = MovieList.updateMovies(mCache.open(), mainThreadListener())
+        writeSnapshot(movies)
+        return movies
+    }
+
+    private fun writeSnapshot(movies: List<Movie>) {
+        try {
+            mCache.writeSnapshot(movies)
+        } catch (e: IOException) {
+            Log.w(TAG, "Failed to write the catalog snapshot", e)
+        }
+    }
+
+    override fun deliverResult(data: List<Movie>?) {
+        super.deliverResult(data)
+        if (!mRevalidated && isStarted) {
+            // The stored catalog is on screen; check whether the server has a newer one.
+            forceLoad()
         }
     }
 
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.upstream.BandwidthMeter
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter
+import com.google.android.exoplayer2.util.NetworkTypeObserver
+import com.google.sample.cast.atvreceiver.DebugLog
+
+/**
+ * Remembers the bandwidth measured on each type of network across sessions, so that a new player
+ * picks its first variant from the real link rather than from a country-wide default.
+ */
+class BandwidthEstimates(context: Context) {
+    private val mContext: Context = context.applicationContext
+    private val mPrefs: SharedPreferences =
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    private val mHandler = Handler(Looper.getMainLooper())
+    private val mSampleListener: BandwidthMeter.EventListener = SampleListener()
+    // The network type of the last transfer the current meter measured, if any.
+    private var mSampledNetworkType = C.NETWORK_TYPE_UNKNOWN
+
+    /** Returns a bandwidth meter that starts from the estimates saved for each network type.  */
+    fun buildBandwidthMeter(): DefaultBandwidthMeter {
+        val builder = DefaultBandwidthMeter.Builder(mContext)
+        for (networkType in NETWORK_TYPES) {
+            val bitrateEstimate = mPrefs.getLong(getKey(networkType), 0)
+            if (bitrateEstimate > 0) {
+                builder.setInitialBitrateEstimate(networkType, bitrateEstimate)
+            }
+        }
+        val bandwidthMeter = builder.build()
+        mSampledNetworkType = C.NETWORK_TYPE_UNKNOWN
+        bandwidthMeter.addEventListener(mHandler, mSampleListener)
+        return bandwidthMeter
+    }
+
+    /**
+     * Saves the current estimate of `bandwidthMeter`, the last meter built, for the type of
+     * network the device is on. The meter starts over whenever the network type changes, so its
+     * estimate is always about the current one. Nothing is saved unless the meter has measured a
+     * transfer on that network, as its estimate would only be the one it started from.
+     */
+    fun save(bandwidthMeter: BandwidthMeter) {
+        val networkType = NetworkTypeObserver.getInstance(mContext).networkType
+        if (networkType == C.NETWORK_TYPE_UNKNOWN
+                || networkType == C.NETWORK_TYPE_OFFLINE
+                || networkType != mSampledNetworkType) {
+            return
+        }
+        val bitrateEstimate = bandwidthMeter.bitrateEstimate
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Bitrate estimate for network type $networkType: $bitrateEstimate")
+        }
+        mPrefs.edit().putLong(getKey(networkType), bitrateEstimate).apply()
+    }
+
+    private inner class SampleListener : BandwidthMeter.EventListener {
+        override fun onBandwidthSample(
+                elapsedMs: Int, bytesTransferred: Long, bitrateEstimate: Long) {
+            // The meter also reports a changed estimate without a transfer when it starts over.
+            if (bytesTransferred > 0) {
+                mSampledNetworkType = NetworkTypeObserver.getInstance(mContext).networkType
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "BandwidthEstimates"
+
+        private const val PREFS_NAME = "bandwidth_estimates"
+        private const val KEY_PREFIX = "network_type_"
+
+        private val NETWORK_TYPES = intArrayOf(
+                C.NETWORK_TYPE_ETHERNET,
+                C.NETWORK_TYPE_WIFI,
+                C.NETWORK_TYPE_2G,
+                C.NETWORK_TYPE_3G,
+                C.NETWORK_TYPE_4G,
+                C.NETWORK_TYPE_5G_NSA,
+                C.NETWORK_TYPE_5G_SA,
+                C.NETWORK_TYPE_OTHER)
+
+        private fun getKey(networkType: Int): String {
+            return KEY_PREFIX + networkType
+        }
+    }
+}
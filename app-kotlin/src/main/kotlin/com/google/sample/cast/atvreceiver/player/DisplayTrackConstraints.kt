@@ -0,0 +1,160 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import android.content.Context
+import android.hardware.display.DisplayManager
+import android.media.MediaCodecInfo.VideoCapabilities
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+import android.view.Display
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector
+import com.google.android.exoplayer2.util.MimeTypes
+import kotlin.math.floor
+import kotlin.math.min
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import kotlin.math.roundToInt
+
+/**
+ * Keeps the video tracks that the player may select within what the display and the decoder can
+ * actually show: no larger than the current display mode or the largest size the decoder
+ * supports, and no faster than the display's refresh rate. The limits are applied again whenever
+ * the display mode changes.
+ *
+ * The decoder is queried once per process, on a background thread. Until its answer is in, only
+ * the display limits the tracks.
+ */
+class DisplayTrackConstraints(
+        context: Context,
+        private val mTrackSelector: DefaultTrackSelector) : DisplayManager.DisplayListener {
+    private val mHandler = Handler(Looper.getMainLooper())
+    private val mOnDecoderQueried = Runnable {
+        if (mStarted) {
+            update()
+        }
+    }
+    private val mDisplayManager =
+            context.getSystemService(Context.DISPLAY_SERVICE) as DisplayManager
+    private var mStarted = false
+
+    /** The largest width of the video tracks that may be selected.  */
+    var maxWidth = Int.MAX_VALUE
+        private set
+
+    /** The largest height of the video tracks that may be selected.  */
+    var maxHeight = Int.MAX_VALUE
+        private set
+
+    /** The highest frame rate of the video tracks that may be selected.  */
+    var maxFrameRate = Int.MAX_VALUE
+        private set
+
+    /** Applies the limits of the current display mode and follows its changes.  */
+    fun start() {
+        mStarted = true
+        mDisplayManager.registerDisplayListener(this, mHandler)
+        update()
+        if (!sDecoderQueried) {
+            sExecutor.execute {
+                if (!sDecoderQueried) {
+                    sDecoderCapabilities = queryDecoderCapabilities()
+                    sDecoderQueried = true
+                }
+                mHandler.post(mOnDecoderQueried)
+            }
+        }
+    }
+
+    fun release() {
+        mStarted = false
+        mHandler.removeCallbacks(mOnDecoderQueried)
+        mDisplayManager.unregisterDisplayListener(this)
+    }
+
+    override fun onDisplayChanged(displayId: Int) {
+        if (displayId == Display.DEFAULT_DISPLAY) {
+            update()
+        }
+    }
+
+    override fun onDisplayAdded(displayId: Int) {}
+
+    override fun onDisplayRemoved(displayId: Int) {}
+
+    private fun update() {
+        val display = mDisplayManager.getDisplay(Display.DEFAULT_DISPLAY) ?: return
+        val mode = display.mode
+        var width = mode.physicalWidth
+        var height = mode.physicalHeight
+        // A frame rate above the refresh rate can only be shown by dropping frames.
+        var frameRate = mode.refreshRate.roundToInt()
+
+        val capabilities = sDecoderCapabilities
+        if (capabilities != null) {
+            width = min(width, capabilities.supportedWidths.upper)
+            height = min(height, capabilities.supportedHeights.upper)
+            if (capabilities.isSizeSupported(width, height)) {
+                frameRate = min(frameRate, floor(
+                        capabilities.getSupportedFrameRatesFor(width, height).upper).toInt())
+            }
+        }
+        if (width == maxWidth && height == maxHeight && frameRate == maxFrameRate) {
+            return
+        }
+        maxWidth = width
+        maxHeight = height
+        maxFrameRate = frameRate
+        // Rare enough to log in every build: once per player, and on display mode changes.
+        Log.i(TAG, "Video tracks limited to $this")
+        mTrackSelector.setParameters(mTrackSelector.buildUponParameters()
+                .setMaxVideoSize(width, height)
+                .setMaxVideoFrameRate(frameRate))
+    }
+
+    /** Returns the limits currently applied, for diagnostics.  */
+    override fun toString(): String {
+        return "${maxWidth}x$maxHeight at $maxFrameRate fps"
+    }
+
+    companion object {
+        private const val TAG = "DisplayTrackConstraints"
+
+        // The codec of the catalog's streams, whose decoder limits the size and frame rate.
+        private const val VIDEO_MIME_TYPE = MimeTypes.VIDEO_H264
+
+        // A single thread, so that the decoder is only ever queried once.
+        private val sExecutor: Executor = Executors.newSingleThreadExecutor()
+        @Volatile
+        private var sDecoderQueried = false
+        @Volatile
+        private var sDecoderCapabilities: VideoCapabilities? = null
+
+        /** Returns the capabilities of the decoder the player would use, if there is one.  */
+        private fun queryDecoderCapabilities(): VideoCapabilities? {
+            return try {
+                MediaCodecUtil.getDecoderInfo(
+                        VIDEO_MIME_TYPE, /* secure= */ false, /* tunneling= */ false)
+                        ?.capabilities?.videoCapabilities
+            } catch (e: MediaCodecUtil.DecoderQueryException) {
+                Log.w(TAG, "Cannot query the $VIDEO_MIME_TYPE decoder", e)
+                null
+            }
+        }
+    }
+}
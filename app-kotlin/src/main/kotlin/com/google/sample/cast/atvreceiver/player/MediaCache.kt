@@ -0,0 +1,275 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import android.content.Context
+import android.os.StatFs
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.MediaItem
+import com.google.android.exoplayer2.database.StandaloneDatabaseProvider
+import com.google.android.exoplayer2.drm.DrmSessionManagerProvider
+import com.google.android.exoplayer2.source.DefaultMediaSourceFactory
+import com.google.android.exoplayer2.source.MediaSource
+import com.google.android.exoplayer2.source.hls.HlsDataSourceFactory
+import com.google.android.exoplayer2.source.hls.HlsMediaSource
+import com.google.android.exoplayer2.upstream.DataSource
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.DefaultDataSource
+import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy
+import com.google.android.exoplayer2.upstream.TransferListener
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor
+import com.google.android.exoplayer2.upstream.cache.SimpleCache
+import com.google.android.exoplayer2.util.Util
+import java.io.File
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Process-wide cache of HLS media segments, shared by the player and [NextItemPreloader].
+ * Only segments go through the cache: playlists are always fetched from the network, so live
+ * playlists keep refreshing.
+ *
+ * By default the cache only lives as long as the process, which is enough for preloading. When
+ * [configured][configure] as persistent, it keeps segments across launches, so that titles that
+ * are watched again or resumed play from disk. Either way the least recently used segments are
+ * evicted once the cache is full.
+ *
+ * The cache is only opened, which reads its index from disk, when the first data source that
+ * reads through it is created. That happens on the player's loading thread or on the preloader's,
+ * so neither startup nor building the player waits for it.
+ */
+object MediaCache {
+    private const val DIRECTORY = "media"
+    private const val SESSION_DIRECTORY = "media-session"
+
+    /** Size of the cache unless configured otherwise.  */
+    const val DEFAULT_MAX_BYTES = 32L * 1024 * 1024
+
+    // Configured size that stands for getMaxBytesForStorage(), worked out when the cache opens.
+    private const val MAX_BYTES_FOR_STORAGE = C.LENGTH_UNSET.toLong()
+
+    private const val GIGABYTE = 1024L * 1024 * 1024
+
+    // Share of the free storage that the cache may take at most.
+    private const val FREE_STORAGE_DIVISOR = 4
+
+    private var sPersistent = false
+    private var sMaxBytes = DEFAULT_MAX_BYTES
+    private var sCache: SimpleCache? = null
+
+    private val sHitBytes = AtomicLong()
+    private val sMissBytes = AtomicLong()
+    private val sCacheEventListener = object : CacheDataSource.EventListener {
+        override fun onCachedBytesRead(cacheSizeBytes: Long, cachedBytesRead: Long) {
+            sHitBytes.addAndGet(cachedBytesRead)
+        }
+
+        override fun onCacheIgnored(reason: Int) {}
+    }
+    private val sMissListener = object : TransferListener {
+        override fun onTransferInitializing(
+                source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+
+        override fun onTransferStart(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+
+        override fun onBytesTransferred(
+                source: DataSource, dataSpec: DataSpec, isNetwork: Boolean, bytesTransferred: Int) {
+            if (isNetwork) {
+                sMissBytes.addAndGet(bytesTransferred.toLong())
+            }
+        }
+
+        override fun onTransferEnd(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+    }
+
+    /**
+     * Sets up the cache, sized with [getMaxBytesForStorage] once it opens. This must be called
+     * before the cache is first used, typically from [android.app.Application.onCreate].
+     *
+     * @param persistent whether segments are kept across launches of the app.
+     */
+    fun configure(persistent: Boolean) {
+        configure(persistent, MAX_BYTES_FOR_STORAGE)
+    }
+
+    /**
+     * Sets up the cache. This must be called before the cache is first used, typically from
+     * [android.app.Application.onCreate].
+     *
+     * @param persistent whether segments are kept across launches of the app.
+     * @param maxBytes the size above which the least recently used segments are evicted.
+     */
+    @Synchronized
+    fun configure(persistent: Boolean, maxBytes: Long) {
+        check(sCache == null) { "The media cache is already in use" }
+        sPersistent = persistent
+        sMaxBytes = maxBytes
+    }
+
+    /**
+     * Returns a cache size suited to the device's storage: larger on devices with more storage,
+     * and never more than a quarter of the storage that is free. This queries the file system, so
+     * call it off the UI thread.
+     */
+    fun getMaxBytesForStorage(context: Context): Long {
+        val stat = StatFs(context.cacheDir.path)
+        val totalBytes = stat.totalBytes
+        val maxBytes = when {
+            totalBytes <= 8 * GIGABYTE -> 128L * 1024 * 1024
+            totalBytes <= 32 * GIGABYTE -> 512L * 1024 * 1024
+            else -> GIGABYTE
+        }
+        return Math.min(maxBytes, stat.availableBytes / FREE_STORAGE_DIVISOR)
+    }
+
+    /** Returns the number of segment bytes the player has read from the cache.  */
+    fun getHitBytes(): Long {
+        return sHitBytes.get()
+    }
+
+    /** Returns the number of segment bytes the player had to fetch from the network.  */
+    fun getMissBytes(): Long {
+        return sMissBytes.get()
+    }
+
+    /** Returns the share of segment bytes read from the cache, or 0 if nothing has been read.  */
+    fun getHitRatio(): Float {
+        val hitBytes = sHitBytes.get()
+        val totalBytes = hitBytes + sMissBytes.get()
+        return if (totalBytes == 0L) 0f else hitBytes.toFloat() / totalBytes
+    }
+
+    @Synchronized
+    private fun getCache(context: Context): SimpleCache {
+        if (sCache == null) {
+            val appContext = context.applicationContext
+            val databaseProvider = StandaloneDatabaseProvider(appContext)
+            val directory: File
+            if (sPersistent) {
+                directory = File(appContext.cacheDir, DIRECTORY)
+            } else {
+                // Drop whatever the previous process left behind, including the segments kept by
+                // a build that was configured with a persistent cache.
+                directory = File(appContext.cacheDir, SESSION_DIRECTORY)
+                SimpleCache.delete(directory, databaseProvider)
+                SimpleCache.delete(File(appContext.cacheDir, DIRECTORY), databaseProvider)
+            }
+            val maxBytes = if (sMaxBytes == MAX_BYTES_FOR_STORAGE) {
+                getMaxBytesForStorage(appContext)
+            } else {
+                sMaxBytes
+            }
+            sCache = SimpleCache(
+                    directory, LeastRecentlyUsedCacheEvictor(maxBytes), databaseProvider)
+        }
+        return sCache!!
+    }
+
+    /** Returns a factory of data sources that fetch from the network.  */
+    fun newUpstreamDataSourceFactory(context: Context): DataSource.Factory {
+        return DefaultDataSource.Factory(context.applicationContext)
+    }
+
+    /** Returns a factory of data sources that read through the segment cache.  */
+    fun newCacheDataSourceFactory(context: Context): SegmentDataSourceFactory {
+        return SegmentDataSourceFactory(
+                context, newUpstreamDataSourceFactory(context), /* eventListener= */ null)
+    }
+
+    /**
+     * Returns a media source factory for the player that reads HLS segments through the cache and
+     * counts cache hits and misses.
+     */
+    fun newMediaSourceFactory(context: Context): MediaSource.Factory {
+        val segmentFactory = SegmentDataSourceFactory(
+                context,
+                DefaultDataSource.Factory(context.applicationContext)
+                        .setTransferListener(sMissListener),
+                sCacheEventListener)
+        return CachingMediaSourceFactory(
+                HlsMediaSource.Factory(SegmentCachingHlsDataSourceFactory(
+                        newUpstreamDataSourceFactory(context), segmentFactory)),
+                DefaultMediaSourceFactory(context))
+    }
+
+    /**
+     * Factory of data sources that read through the segment cache, which it opens when it creates
+     * its first data source.
+     */
+    class SegmentDataSourceFactory internal constructor(
+            context: Context,
+            private val mUpstreamFactory: DataSource.Factory,
+            private val mEventListener: CacheDataSource.EventListener?) : DataSource.Factory {
+        private val mContext = context.applicationContext
+        private var mFactory: CacheDataSource.Factory? = null
+
+        /** Returns a new data source, opening the cache first if needed. Does disk I/O.  */
+        @Synchronized
+        override fun createDataSource(): CacheDataSource {
+            val factory = mFactory ?: CacheDataSource.Factory()
+                    .setCache(getCache(mContext))
+                    .setUpstreamDataSourceFactory(mUpstreamFactory)
+                    .setEventListener(mEventListener)
+                    .also { mFactory = it }
+            return factory.createDataSource()
+        }
+    }
+
+    private class SegmentCachingHlsDataSourceFactory(
+            private val mPlaylistFactory: DataSource.Factory,
+            private val mSegmentFactory: DataSource.Factory) : HlsDataSourceFactory {
+        override fun createDataSource(dataType: Int): DataSource {
+            return if (dataType == C.DATA_TYPE_MANIFEST) {
+                mPlaylistFactory.createDataSource()
+            } else {
+                mSegmentFactory.createDataSource()
+            }
+        }
+    }
+
+    /** Creates HLS media sources with the caching factory and every other source as usual.  */
+    private class CachingMediaSourceFactory(
+            private val mHlsFactory: MediaSource.Factory,
+            private val mDefaultFactory: MediaSource.Factory) : MediaSource.Factory {
+        override fun setDrmSessionManagerProvider(
+                drmSessionManagerProvider: DrmSessionManagerProvider?): MediaSource.Factory {
+            mHlsFactory.setDrmSessionManagerProvider(drmSessionManagerProvider)
+            mDefaultFactory.setDrmSessionManagerProvider(drmSessionManagerProvider)
+            return this
+        }
+
+        override fun setLoadErrorHandlingPolicy(
+                loadErrorHandlingPolicy: LoadErrorHandlingPolicy?): MediaSource.Factory {
+            mHlsFactory.setLoadErrorHandlingPolicy(loadErrorHandlingPolicy)
+            mDefaultFactory.setLoadErrorHandlingPolicy(loadErrorHandlingPolicy)
+            return this
+        }
+
+        override fun getSupportedTypes(): IntArray {
+            return mDefaultFactory.supportedTypes
+        }
+
+        override fun createMediaSource(mediaItem: MediaItem): MediaSource {
+            val configuration = mediaItem.localConfiguration
+            if (configuration != null
+                    && Util.inferContentTypeForUriAndMimeType(
+                            configuration.uri, configuration.mimeType) == C.CONTENT_TYPE_HLS) {
+                return mHlsFactory.createMediaSource(mediaItem)
+            }
+            return mDefaultFactory.createMediaSource(mediaItem)
+        }
+    }
+}
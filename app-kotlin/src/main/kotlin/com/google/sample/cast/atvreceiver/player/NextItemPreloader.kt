@@ -0,0 +1,252 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import android.net.Uri
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.ExoPlayer
+import com.google.android.exoplayer2.Format
+import com.google.android.exoplayer2.MediaItem
+import com.google.android.exoplayer2.Player
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist
+import com.google.android.exoplayer2.source.hls.playlist.HlsMultivariantPlaylist
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylist
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser
+import com.google.android.exoplayer2.upstream.DataSource
+import com.google.android.exoplayer2.upstream.DataSourceInputStream
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.cache.CacheWriter
+import com.google.android.exoplayer2.util.UriUtil
+import com.google.android.exoplayer2.util.Util
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import com.google.sample.cast.atvreceiver.DebugLog
+
+/**
+ * Preloads the start of the next item of the player's playlist, so that moving on to it, on its
+ * own or through next, does not start with fetching its first segments.
+ *
+ * Once the current item has played past a configurable position, the next item's HLS
+ * playlists are resolved and its first seconds are written into the [MediaCache], up to a
+ * byte budget. The player reads segments through the same cache, which hands the preloaded data
+ * over when the transition happens.
+ */
+class NextItemPreloader(
+        private val mPlayer: ExoPlayer,
+        private val mPlaylistDataSourceFactory: DataSource.Factory,
+        private val mSegmentDataSourceFactory: MediaCache.SegmentDataSourceFactory,
+        private val mPreloadPositionMs: Long,
+        private val mMaxPreloadBytes: Long) : Player.Listener {
+    private val mHandler = Handler(Looper.getMainLooper())
+    private val mExecutor: ExecutorService = Executors.newSingleThreadExecutor()
+    private val mCheckPosition: Runnable = object : Runnable {
+        override fun run() {
+            maybePreloadNextItem()
+            mHandler.postDelayed(this, POSITION_CHECK_INTERVAL_MS)
+        }
+    }
+    private var mTask: PreloadTask? = null
+
+    init {
+        mPlayer.addListener(this)
+    }
+
+    /** Stops preloading. The preloader cannot be used afterwards.  */
+    fun release() {
+        mPlayer.removeListener(this)
+        mHandler.removeCallbacks(mCheckPosition)
+        cancelTask()
+        mExecutor.shutdown()
+    }
+
+    override fun onIsPlayingChanged(isPlaying: Boolean) {
+        mHandler.removeCallbacks(mCheckPosition)
+        if (isPlaying) {
+            mHandler.post(mCheckPosition)
+        }
+    }
+
+    override fun onMediaItemTransition(mediaItem: MediaItem?, reason: Int) {
+        // The player now reads the new item itself, taking whatever has been preloaded.
+        cancelTask()
+    }
+
+    private fun maybePreloadNextItem() {
+        if (mPlayer.currentPosition < mPreloadPositionMs) {
+            return
+        }
+        val nextIndex = mPlayer.nextMediaItemIndex
+        if (nextIndex == C.INDEX_UNSET) {
+            return
+        }
+        val next = mPlayer.getMediaItemAt(nextIndex).localConfiguration
+        if (next == null
+                || Util.inferContentTypeForUriAndMimeType(next.uri, next.mimeType)
+                != C.CONTENT_TYPE_HLS
+                || mTask?.mUri == next.uri) {
+            return
+        }
+        cancelTask()
+        val format = mPlayer.videoFormat
+        val task = PreloadTask(next.uri, format?.bitrate ?: Format.NO_VALUE)
+        mTask = task
+        mExecutor.execute(task)
+    }
+
+    private fun cancelTask() {
+        mTask?.cancel()
+        mTask = null
+    }
+
+    private inner class PreloadTask(val mUri: Uri, private val mBitrate: Int) : Runnable {
+        @Volatile
+        private var mCanceled = false
+
+        @Volatile
+        private var mWriter: CacheWriter? = null
+        private var mBytesCached = 0L
+
+        fun cancel() {
+            mCanceled = true
+            mWriter?.cancel()
+        }
+
+        override fun run() {
+            if (mCanceled) {
+                return
+            }
+            try {
+                var playlist = readPlaylist(mUri)
+                if (playlist is HlsMultivariantPlaylist) {
+                    val variant = selectVariant(playlist)
+                    if (variant == null || mCanceled) {
+                        return
+                    }
+                    playlist = readPlaylist(variant.url)
+                }
+                preloadSegments(playlist as HlsMediaPlaylist)
+                if (DebugLog.ENABLED) {
+                    Log.d(TAG, "Preloaded $mBytesCached bytes of $mUri")
+                }
+            } catch (e: InterruptedIOException) {
+                if (DebugLog.ENABLED) {
+                    Log.d(TAG, "Stopped preloading $mUri after $mBytesCached bytes")
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "Failed to preload $mUri", e)
+            } catch (e: RuntimeException) {
+                Log.w(TAG, "Failed to preload $mUri", e)
+            }
+        }
+
+        private fun readPlaylist(uri: Uri): HlsPlaylist {
+            val input = DataSourceInputStream(
+                    mPlaylistDataSourceFactory.createDataSource(), DataSpec(uri))
+            try {
+                return HlsPlaylistParser().parse(uri, input)
+            } finally {
+                Util.closeQuietly(input)
+            }
+        }
+
+        /**
+         * Returns the variant with the highest bitrate not above the one currently playing, which
+         * is the variant the player is most likely to start the next item with.
+         */
+        private fun selectVariant(playlist: HlsMultivariantPlaylist): HlsMultivariantPlaylist.Variant? {
+            if (playlist.variants.isEmpty()) {
+                return null
+            }
+            if (mBitrate == Format.NO_VALUE) {
+                // Nothing is playing yet, so the player starts with the first variant listed.
+                return playlist.variants[0]
+            }
+            var selected: HlsMultivariantPlaylist.Variant? = null
+            var lowest: HlsMultivariantPlaylist.Variant? = null
+            for (variant in playlist.variants) {
+                val bitrate = variant.format.bitrate
+                if (lowest == null || bitrate < lowest.format.bitrate) {
+                    lowest = variant
+                }
+                if (bitrate <= mBitrate && (selected == null || bitrate > selected.format.bitrate)) {
+                    selected = variant
+                }
+            }
+            return selected ?: lowest
+        }
+
+        private fun preloadSegments(playlist: HlsMediaPlaylist) {
+            var initializationSegment: HlsMediaPlaylist.Segment? = null
+            for (segment in playlist.segments) {
+                if (mCanceled
+                        || segment.relativeStartTimeUs >= PRELOAD_DURATION_US
+                        || mBytesCached >= mMaxPreloadBytes) {
+                    return
+                }
+                val segmentInitialization = segment.initializationSegment
+                if (segmentInitialization != null
+                        && segmentInitialization !== initializationSegment) {
+                    initializationSegment = segmentInitialization
+                    preloadSegment(playlist, segmentInitialization)
+                }
+                preloadSegment(playlist, segment)
+            }
+        }
+
+        private fun preloadSegment(playlist: HlsMediaPlaylist, segment: HlsMediaPlaylist.Segment) {
+            val dataSpec = DataSpec.Builder()
+                    .setUri(UriUtil.resolveToUri(playlist.baseUri, segment.url))
+                    .setPosition(segment.byteRangeOffset)
+                    .setLength(segment.byteRangeLength)
+                    .build()
+            val writer = CacheWriter(
+                    mSegmentDataSourceFactory.createDataSource(),
+                    dataSpec,
+                    /* temporaryBuffer= */ null
+            ) { _, _, newBytesCached ->
+                mBytesCached += newBytesCached
+                if (mBytesCached >= mMaxPreloadBytes) {
+                    // Over budget: stop here and leave the rest to the player.
+                    cancel()
+                }
+            }
+            mWriter = writer
+            if (mCanceled) {
+                return
+            }
+            writer.cache()
+        }
+    }
+
+    companion object {
+        private const val TAG = "NextItemPreloader"
+
+        /** Default position in the current item after which the next item is preloaded.  */
+        const val DEFAULT_PRELOAD_POSITION_MS = 10_000L
+
+        /** Default number of bytes that may be preloaded for an item.  */
+        const val DEFAULT_MAX_PRELOAD_BYTES = 8L * 1024 * 1024
+
+        // Media time of the next item to preload.
+        private const val PRELOAD_DURATION_US = 6_000_000L
+        private const val POSITION_CHECK_INTERVAL_MS = 1_000L
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import android.os.SystemClock
+import android.util.Log
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.MediaItem
+import com.google.android.exoplayer2.Player
+import com.google.android.exoplayer2.analytics.AnalyticsListener
+import com.google.android.exoplayer2.analytics.AnalyticsListener.EventTime
+import com.google.sample.cast.atvreceiver.DebugLog
+
+/**
+ * Collects playback metrics from the player's analytics events.
+ *
+ * The stall of a transition is the time from the player moving to another item, on its own or
+ * through a seek such as next or previous, until that item is playing. Transitions while playback
+ * is paused are not counted.
+ *
+ * The latency of a LOAD is the time from the receiver getting a Cast LOAD request, or the
+ * playback screen being asked to play a title chosen in the app, until the first frame of the
+ * loaded media is rendered.
+ *
+ * A rebuffer is the player running out of data while playing an item it had already started,
+ * as opposed to buffering after a LOAD, a transition or a seek. Every metric is reported together
+ * with the [BufferProfile] of the player, so that the profiles can be compared.
+ *
+ * @property bufferProfile the buffer profile of the player that these metrics are about.
+ */
+class PlaybackMetrics(val bufferProfile: BufferProfile) : AnalyticsListener {
+    private var mTransitionStartMs = C.TIME_UNSET
+    private var mTotalTransitionStallMs = 0L
+    private var mLoadStartMs = C.TIME_UNSET
+    private var mTotalLoadToFirstFrameMs = 0L
+    // Whether the current item has been ready since it was loaded, reached or seeked to.
+    private var mReady = false
+
+    /** The video track limits of the latest player, or `null` if there was none.  */
+    var trackConstraints: DisplayTrackConstraints? = null
+        internal set
+
+    /** The number of transitions measured so far.  */
+    var transitionCount = 0
+        private set
+
+    /** The longest transition stall measured so far.  */
+    var maxTransitionStallMs = 0L
+        private set
+
+    /** The average transition stall, or 0 if no transition has been measured.  */
+    val averageTransitionStallMs: Long
+        get() = if (transitionCount == 0) 0 else mTotalTransitionStallMs / transitionCount
+
+    /** The number of LOADs measured so far.  */
+    var loadCount = 0
+        private set
+
+    /** The average LOAD to first frame latency, or 0 if no LOAD has been measured.  */
+    val averageLoadToFirstFrameMs: Long
+        get() = if (loadCount == 0) 0 else mTotalLoadToFirstFrameMs / loadCount
+
+    /** The number of rebuffers counted so far.  */
+    var rebufferCount = 0
+        private set
+
+    /**
+     * Starts measuring a LOAD received at `realtimeMs`, as given by
+     * [SystemClock.elapsedRealtime].
+     */
+    fun onLoadStarted(realtimeMs: Long) {
+        mLoadStartMs = realtimeMs
+        mReady = false
+    }
+
+    /**
+     * Forgets what was being measured on a player that has been released. A LOAD that has started
+     * stays measured, on the next player that these metrics are attached to.
+     */
+    fun onPlayerReleased() {
+        mTransitionStartMs = C.TIME_UNSET
+        mReady = false
+    }
+
+    override fun onPlaybackStateChanged(eventTime: EventTime, state: Int) {
+        if (state == Player.STATE_READY) {
+            mReady = true
+        } else if (state == Player.STATE_BUFFERING && mReady) {
+            mReady = false
+            rebufferCount++
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "[$bufferProfile] Rebuffer $rebufferCount")
+            }
+        } else {
+            mReady = false
+        }
+    }
+
+    override fun onPositionDiscontinuity(
+            eventTime: EventTime,
+            oldPosition: Player.PositionInfo,
+            newPosition: Player.PositionInfo,
+            reason: Int) {
+        if (reason == Player.DISCONTINUITY_REASON_SEEK
+                || reason == Player.DISCONTINUITY_REASON_SEEK_ADJUSTMENT) {
+            mReady = false
+        }
+    }
+
+    override fun onRenderedFirstFrame(eventTime: EventTime, output: Any, renderTimeMs: Long) {
+        if (mLoadStartMs == C.TIME_UNSET) {
+            return
+        }
+        val latencyMs = eventTime.realtimeMs - mLoadStartMs
+        mLoadStartMs = C.TIME_UNSET
+        loadCount++
+        mTotalLoadToFirstFrameMs += latencyMs
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "[$bufferProfile] LOAD to first frame: " + latencyMs + " ms, average "
+                    + averageLoadToFirstFrameMs + " ms over " + loadCount)
+        }
+    }
+
+    override fun onMediaItemTransition(eventTime: EventTime, mediaItem: MediaItem?, reason: Int) {
+        mReady = false
+        mTransitionStartMs = if (mediaItem != null
+                && (reason == Player.MEDIA_ITEM_TRANSITION_REASON_AUTO
+                        || reason == Player.MEDIA_ITEM_TRANSITION_REASON_SEEK)) {
+            eventTime.realtimeMs
+        } else {
+            C.TIME_UNSET
+        }
+    }
+
+    override fun onEvents(player: Player, events: AnalyticsListener.Events) {
+        if (mTransitionStartMs == C.TIME_UNSET) {
+            return
+        }
+        if (!player.playWhenReady) {
+            mTransitionStartMs = C.TIME_UNSET
+        } else if (player.isPlaying) {
+            val stallMs = SystemClock.elapsedRealtime() - mTransitionStartMs
+            mTransitionStartMs = C.TIME_UNSET
+            transitionCount++
+            mTotalTransitionStallMs += stallMs
+            maxTransitionStallMs = Math.max(maxTransitionStallMs, stallMs)
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "[$bufferProfile] Transition stall: " + stallMs + " ms, average "
+                        + averageTransitionStallMs + " ms over " + transitionCount)
+            }
+        }
+    }
+
+    /** Returns a one-line summary of the metrics, for logging.  */
+    override fun toString(): String {
+        return ("$bufferProfile: $loadCount LOADs, $averageLoadToFirstFrameMs ms average to "
+                + "first frame, $rebufferCount rebuffers, $averageTransitionStallMs ms average "
+                + "transition stall, video tracks limited to $trackConstraints")
+    }
+
+    companion object {
+        private const val TAG = "PlaybackMetrics"
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import android.content.ComponentCallbacks2
+import android.content.Context
+import android.content.res.Configuration
+import android.os.Handler
+import android.os.Looper
+import android.support.v4.media.session.MediaSessionCompat
+import android.util.Log
+import com.google.android.exoplayer2.ExoPlayer
+import com.google.android.exoplayer2.SimpleExoPlayer
+import com.google.android.exoplayer2.ext.mediasession.MediaSessionConnector
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter
+import com.google.sample.cast.atvreceiver.DebugLog
+import java.util.EnumMap
+
+/**
+ * Owns the player and the media session for the whole process, so that a playback screen that
+ * is recreated, for example for every Cast LOAD, reuses a warm player instead of setting up
+ * codecs and renderers again.
+ *
+ * A screen [acquires][acquirePlayer] the player while it is started and
+ * [returns][returnPlayer] it when it stops. A returned player is kept idle in foreground mode,
+ * holding on to its codecs, and is only released on memory pressure or once it has been idle for
+ * [IDLE_TIMEOUT_MS]. Must be used on the main thread.
+ */
+class PlayerHolder private constructor(private val mContext: Context) : ComponentCallbacks2 {
+    private val mHandler = Handler(Looper.getMainLooper())
+    private val mReleaseIdlePlayer = Runnable {
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Releasing the player after $IDLE_TIMEOUT_MS ms idle")
+        }
+        releasePlayer()
+    }
+    private val mBandwidthEstimates = BandwidthEstimates(mContext)
+    private var mPlayer: SimpleExoPlayer? = null
+    private var mBandwidthMeter: DefaultBandwidthMeter? = null
+    private var mDisplayTrackConstraints: DisplayTrackConstraints? = null
+    private var mNextItemPreloader: NextItemPreloader? = null
+    private var mInUse = false
+    private var mBufferProfile: BufferProfile? = null
+    // One per buffer profile, kept across players, so that a LOAD can be measured from before its
+    // player is built and each profile keeps adding up over the life of the process.
+    private val mPlaybackMetrics =
+            EnumMap<BufferProfile, PlaybackMetrics>(BufferProfile::class.java)
+    // The metrics of the current player, if there is one.
+    private var mPlayerMetrics: PlaybackMetrics? = null
+
+    var mediaSession: MediaSessionCompat? = null
+        private set
+    var mediaSessionConnector: MediaSessionConnector? = null
+        private set
+    var playlistWindow: PlaylistWindow? = null
+        private set
+
+    /**
+     * The metrics of the current player or, if there is none, of the player that the next
+     * [acquirePlayer] builds.
+     */
+    val playbackMetrics: PlaybackMetrics
+        get() = mPlayerMetrics ?: getPlaybackMetrics(bufferProfile)
+
+    private val bufferProfile: BufferProfile
+        get() = mBufferProfile ?: BufferProfile.forDevice(mContext)
+
+    /**
+     * Returns the player, building it and the media session only if there is no idle one, and
+     * keeps it until [returnPlayer].
+     */
+    fun acquirePlayer(): ExoPlayer {
+        mHandler.removeCallbacks(mReleaseIdlePlayer)
+        mInUse = true
+        var player = mPlayer
+        if (player == null) {
+            val bufferProfile = bufferProfile
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "Building the player with buffer profile $bufferProfile")
+            }
+            val bandwidthMeter = mBandwidthEstimates.buildBandwidthMeter()
+            mBandwidthMeter = bandwidthMeter
+            val trackSelector = DefaultTrackSelector(mContext)
+            val displayTrackConstraints = DisplayTrackConstraints(mContext, trackSelector)
+            displayTrackConstraints.start()
+            mDisplayTrackConstraints = displayTrackConstraints
+            player = SimpleExoPlayer.Builder(mContext)
+                    .setMediaSourceFactory(MediaCache.newMediaSourceFactory(mContext))
+                    .setLoadControl(bufferProfile.buildLoadControl())
+                    .setBandwidthMeter(bandwidthMeter)
+                    .setTrackSelector(trackSelector)
+                    .build()
+            val metrics = getPlaybackMetrics(bufferProfile)
+            metrics.trackConstraints = displayTrackConstraints
+            player.addAnalyticsListener(metrics)
+            mPlayerMetrics = metrics
+            mNextItemPreloader = NextItemPreloader(
+                    player,
+                    MediaCache.newUpstreamDataSourceFactory(mContext),
+                    MediaCache.newCacheDataSourceFactory(mContext),
+                    NextItemPreloader.DEFAULT_PRELOAD_POSITION_MS,
+                    NextItemPreloader.DEFAULT_MAX_PRELOAD_BYTES)
+            playlistWindow = PlaylistWindow(player)
+            val session = MediaSessionCompat(mContext, TAG)
+            mediaSession = session
+            mediaSessionConnector = MediaSessionConnector(session)
+            mPlayer = player
+        } else if (DebugLog.ENABLED) {
+            Log.d(TAG, "Reusing the idle player")
+        }
+        return player
+    }
+
+    /**
+     * Takes the player back once a screen no longer shows it. The player is stopped but is put in
+     * foreground mode, so that it keeps its renderers and their codecs, and the next
+     * [acquirePlayer] can start playing right away.
+     */
+    fun returnPlayer() {
+        if (!mInUse) {
+            return
+        }
+        mInUse = false
+        mediaSessionConnector!!.setPlayer(null)
+        mediaSession!!.isActive = false
+        // Without foreground mode, stopping the player releases its codecs.
+        mPlayer!!.setForegroundMode(true)
+        mPlayer!!.stop()
+        mPlayer!!.clearMediaItems()
+        mBandwidthEstimates.save(mBandwidthMeter!!)
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Segment cache hit ratio: " + MediaCache.getHitRatio())
+            Log.d(TAG, "Playback metrics: $mPlayerMetrics")
+        }
+        mHandler.postDelayed(mReleaseIdlePlayer, IDLE_TIMEOUT_MS)
+    }
+
+    /**
+     * Sets the buffer profile of the player, or `null` to pick one from the device's memory
+     * class. Takes effect the next time the player is built.
+     */
+    fun setBufferProfile(bufferProfile: BufferProfile?) {
+        mBufferProfile = bufferProfile
+    }
+
+    private fun getPlaybackMetrics(bufferProfile: BufferProfile): PlaybackMetrics =
+            mPlaybackMetrics.getOrPut(bufferProfile) { PlaybackMetrics(bufferProfile) }
+
+    private fun releasePlayer() {
+        mHandler.removeCallbacks(mReleaseIdlePlayer)
+        if (mInUse || mPlayer == null) {
+            return
+        }
+        mNextItemPreloader!!.release()
+        mDisplayTrackConstraints!!.release()
+        mPlayer!!.setForegroundMode(false)
+        mPlayer!!.release()
+        mPlayerMetrics!!.onPlayerReleased()
+        mediaSession!!.release()
+        mPlayer = null
+        mBandwidthMeter = null
+        mDisplayTrackConstraints = null
+        mediaSession = null
+        mediaSessionConnector = null
+        playlistWindow = null
+        mNextItemPreloader = null
+        mPlayerMetrics = null
+    }
+
+    override fun onTrimMemory(level: Int) {
+        // An idle player is not worth keeping once the system runs short of memory. UI_HIDDEN
+        // alone is not a reason: a Cast LOAD may bring the app back at any time.
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "onTrimMemory($level)")
+            }
+            releasePlayer()
+        }
+    }
+
+    override fun onLowMemory() {
+        releasePlayer()
+    }
+
+    override fun onConfigurationChanged(newConfig: Configuration) {}
+
+    companion object {
+        private const val TAG = "PlayerHolder"
+        private const val IDLE_TIMEOUT_MS = 2 * 60 * 1000L
+
+        private var sInstance: PlayerHolder? = null
+
+        fun getInstance(context: Context): PlayerHolder {
+            var instance = sInstance
+            if (instance == null) {
+                val appContext = context.applicationContext
+                instance = PlayerHolder(appContext)
+                appContext.registerComponentCallbacks(instance)
+                sInstance = instance
+            }
+            return instance
+        }
+    }
+}
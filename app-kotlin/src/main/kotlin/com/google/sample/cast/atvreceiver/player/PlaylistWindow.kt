@@ -0,0 +1,128 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import android.net.Uri
+import com.google.android.exoplayer2.MediaItem
+import com.google.android.exoplayer2.MediaMetadata
+import com.google.android.exoplayer2.Player
+import com.google.sample.cast.atvreceiver.data.Movie
+import java.util.ArrayList
+
+/**
+ * Plays a playlist of a movie followed by the whole catalog while keeping only the current item
+ * and a few of its neighbours in the player's timeline. The window slides along the playlist as
+ * the player moves from one item to the next, so starting playback costs the same however large
+ * the catalog is, and previous and next still reach every entry of the playlist.
+ */
+class PlaylistWindow(private val mPlayer: Player) : Player.Listener {
+    private var mFirstMovie: Movie? = null
+    private var mCatalog: List<Movie?> = emptyList()
+
+    // Playlist position of the player's first media item.
+    private var mWindowStart = 0
+
+    init {
+        mPlayer.addListener(this)
+    }
+
+    /**
+     * Replaces the player's media items with the start of the playlist made of
+     * `firstMovie` followed by `catalog`.
+     */
+    fun setPlaylist(firstMovie: Movie?, catalog: List<Movie?>?) {
+        setPlaylist(Playlist(firstMovie, catalog))
+    }
+
+    /** Replaces the player's media items with the start of `playlist`.  */
+    fun setPlaylist(playlist: Playlist) {
+        mFirstMovie = playlist.mFirstMovie
+        mCatalog = playlist.mCatalog
+        mWindowStart = 0
+        mPlayer.setMediaItems(playlist.mInitialItems)
+    }
+
+    /** Returns the number of items in the playlist, most of which are not in the timeline.  */
+    fun size(): Int {
+        return if (mFirstMovie == null) 0 else 1 + mCatalog.size
+    }
+
+    override fun onMediaItemTransition(mediaItem: MediaItem?, reason: Int) {
+        if (mediaItem == null || mFirstMovie == null) {
+            return
+        }
+        val current = mWindowStart + mPlayer.currentMediaItemIndex
+        val start = Math.max(0, current - ITEMS_BEHIND)
+        val end = Math.min(size(), current + ITEMS_AHEAD + 1)
+        var windowEnd = mWindowStart + mPlayer.mediaItemCount
+
+        // Removing items other than the current one does not interrupt playback.
+        if (windowEnd > end) {
+            mPlayer.removeMediaItems(end - mWindowStart, windowEnd - mWindowStart)
+            windowEnd = end
+        }
+        if (start > mWindowStart) {
+            mPlayer.removeMediaItems(0, start - mWindowStart)
+            mWindowStart = start
+        }
+        if (end > windowEnd) {
+            mPlayer.addMediaItems(buildMediaItems(mFirstMovie, mCatalog, windowEnd, end))
+        }
+        if (start < mWindowStart) {
+            mPlayer.addMediaItems(0, buildMediaItems(mFirstMovie, mCatalog, start, mWindowStart))
+            mWindowStart = start
+        }
+    }
+
+    /**
+     * A playlist of a movie followed by the catalog, with the media items of its initial window
+     * already built. Can be created on any thread, so that a load does not build media items on
+     * the main thread.
+     */
+    class Playlist(firstMovie: Movie?, catalog: List<Movie?>?) {
+        internal val mFirstMovie = firstMovie
+        internal val mCatalog: List<Movie?> = catalog ?: emptyList()
+        internal val mInitialItems = buildMediaItems(
+                mFirstMovie, mCatalog, 0, Math.min(1 + mCatalog.size, ITEMS_AHEAD + 1))
+    }
+
+    companion object {
+        private const val ITEMS_BEHIND = 2
+        private const val ITEMS_AHEAD = 3
+
+        private fun buildMediaItems(
+                firstMovie: Movie?, catalog: List<Movie?>, start: Int, end: Int): List<MediaItem> {
+            val mediaItems: MutableList<MediaItem> = ArrayList(end - start)
+            for (i in start until end) {
+                mediaItems.add(buildMediaItem((if (i == 0) firstMovie else catalog[i - 1])!!))
+            }
+            return mediaItems
+        }
+
+        private fun buildMediaItem(movie: Movie): MediaItem {
+            return MediaItem.Builder()
+                    .setUri(movie.videoUrl)
+                    .setTag(movie)
+                    .setMediaMetadata(
+                            MediaMetadata.Builder()
+                                    .setArtworkUri(movie.cardImageUrl?.let { Uri.parse(it) })
+                                    .setTitle(movie.title)
+                                    .setSubtitle(movie.description)
+                                    .build()
+                    ).build()
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import android.os.Handler
+import android.os.Looper
+import com.google.android.exoplayer2.Player
+import com.google.android.exoplayer2.ext.leanback.LeanbackPlayerAdapter
+
+/**
+ * Adapts how often the transport controls are told about the playback position.
+ *
+ * The [LeanbackPlayerAdapter] is built with the slow [HIDDEN_UPDATE_MS] period, which is all
+ * that hidden controls need. While the controls are visible and the player is playing, this adds
+ * updates every [VISIBLE_UPDATE_MS] so that the progress bar moves smoothly. While the player is
+ * paused, which it also is while the user scrubs, the position only moves on seeks, so it is only
+ * updated then.
+ *
+ * The scheduler is the only one to turn the adapter's own updates on and off, which it does as
+ * playback starts and stops; [VideoPlayerGlue] leaves them alone as its host starts and stops. A
+ * scheduler lives as long as its glue is attached to the host.
+ */
+class ProgressUpdateScheduler(
+        private val mPlayerAdapter: LeanbackPlayerAdapter,
+        private val mPlayer: Player) : Runnable, Player.Listener {
+    private val mHandler = Handler(Looper.getMainLooper())
+    private var mControlsVisible = false
+
+    init {
+        mPlayer.addListener(this)
+        mPlayerAdapter.setProgressUpdatingEnabled(mPlayer.isPlaying)
+    }
+
+    /** Tells the scheduler whether the transport controls are showing.  */
+    fun setControlsVisible(visible: Boolean) {
+        mControlsVisible = visible
+        reschedule()
+    }
+
+    fun release() {
+        mPlayer.removeListener(this)
+        mHandler.removeCallbacks(this)
+        mPlayerAdapter.setProgressUpdatingEnabled(false)
+    }
+
+    override fun onIsPlayingChanged(isPlaying: Boolean) {
+        // The adapter itself reports the position at which playback stopped.
+        mPlayerAdapter.setProgressUpdatingEnabled(isPlaying)
+        reschedule()
+    }
+
+    override fun onPositionDiscontinuity(
+            oldPosition: Player.PositionInfo, newPosition: Player.PositionInfo, reason: Int) {
+        if (mControlsVisible && !mPlayer.isPlaying) {
+            update()
+        }
+    }
+
+    override fun run() {
+        update()
+        mHandler.postDelayed(this, VISIBLE_UPDATE_MS.toLong())
+    }
+
+    private fun update() {
+        mPlayerAdapter.callback?.let {
+            it.onCurrentPositionChanged(mPlayerAdapter)
+            it.onBufferedPositionChanged(mPlayerAdapter)
+        }
+    }
+
+    private fun reschedule() {
+        mHandler.removeCallbacks(this)
+        if (mControlsVisible && mPlayer.isPlaying) {
+            mHandler.post(this)
+        }
+    }
+
+    companion object {
+        /** The update period of the adapter, and so the one while the controls are hidden.  */
+        const val HIDDEN_UPDATE_MS = 1000
+        private const val VISIBLE_UPDATE_MS = 16
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.BitmapRegionDecoder
+import android.graphics.Rect
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+import android.util.LruCache
+import androidx.leanback.widget.PlaybackSeekDataProvider
+import java.io.BufferedReader
+import java.io.IOException
+import java.io.InputStream
+import java.net.HttpURLConnection
+import java.net.URL
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import kotlin.math.roundToLong
+
+/**
+ * Serves seek preview thumbnails from a WebVTT thumbnail track, whose cues point at images or at
+ * `#xywh=x,y,w,h` tiles of sprite sheets.
+ *
+ * The track, the sheets and the tiles are all fetched and decoded on a background thread.
+ * Decoded tiles are kept in an LRU cache bounded by [MAX_CACHE_BYTES], and the tiles next to a
+ * requested one are decoded ahead of time, so that scrubbing through them does not wait on the
+ * decoder. While a provider is installed on the glue, the player only seeks to the position at
+ * which the user stops scrubbing; without a track, the provider still has that effect but
+ * provides neither seek positions nor thumbnails.
+ *
+ * @param trackUrl the thumbnail track, which starts loading right away, or `null` for a provider
+ *     without thumbnails.
+ */
+class SeekThumbnailProvider(trackUrl: String?) : PlaybackSeekDataProvider() {
+    private val mHandler = Handler(Looper.getMainLooper())
+    private val mTiles = object : LruCache<Int, Bitmap>(MAX_CACHE_BYTES) {
+        override fun sizeOf(index: Int, tile: Bitmap): Int {
+            return tile.byteCount
+        }
+    }
+    // Only used on the background thread.
+    private val mSheetDecoders =
+            object : LruCache<String, BitmapRegionDecoder>(MAX_SHEET_DECODERS) {
+                override fun entryRemoved(evicted: Boolean, url: String,
+                        oldValue: BitmapRegionDecoder, newValue: BitmapRegionDecoder?) {
+                    oldValue.recycle()
+                }
+            }
+
+    @Volatile
+    private var mCues: List<Cue>? = null
+    @Volatile
+    private var mReleased = false
+
+    init {
+        if (trackUrl != null) {
+            sExecutor.execute {
+                if (!mReleased) {
+                    try {
+                        mCues = readTrack(trackUrl)
+                    } catch (e: IOException) {
+                        Log.w(TAG, "Cannot read the thumbnail track $trackUrl", e)
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns the start of every cue, or `null` while the track is not loaded.  */
+    override fun getSeekPositions(): LongArray? {
+        val cues = mCues
+        if (cues.isNullOrEmpty()) {
+            return null
+        }
+        return LongArray(cues.size) { cues[it].mStartMs }
+    }
+
+    override fun getThumbnail(index: Int, callback: ResultCallback) {
+        val cached = mTiles.get(index)
+        if (cached != null) {
+            callback.onThumbnailLoaded(cached, index)
+            return
+        }
+        sExecutor.execute {
+            val tile = loadTile(index) ?: return@execute
+            mHandler.post {
+                if (!mReleased) {
+                    callback.onThumbnailLoaded(tile, index)
+                }
+            }
+            for (i in 1..PREFETCH_COUNT) {
+                loadTile(index + i)
+                loadTile(index - i)
+            }
+        }
+    }
+
+    /** Drops every decoded thumbnail. The provider must not be used afterwards.  */
+    fun release() {
+        mReleased = true
+        mHandler.removeCallbacksAndMessages(null)
+        mTiles.evictAll()
+        sExecutor.execute { mSheetDecoders.evictAll() }
+    }
+
+    /** Returns the tile of cue `index`, decoding it if it is not cached.  */
+    private fun loadTile(index: Int): Bitmap? {
+        val cues = mCues
+        if (mReleased || cues == null || index < 0 || index >= cues.size) {
+            return null
+        }
+        mTiles.get(index)?.let { return it }
+        val cue = cues[index]
+        val tile = try {
+            var decoder = mSheetDecoders.get(cue.mImageUrl)
+            if (decoder == null) {
+                val sheet = fetch(cue.mImageUrl)
+                decoder = BitmapRegionDecoder.newInstance(sheet, 0, sheet.size, false)!!
+                mSheetDecoders.put(cue.mImageUrl, decoder)
+            }
+            val region = cue.mRegion ?: Rect(0, 0, decoder.width, decoder.height)
+            val options = BitmapFactory.Options()
+            options.inPreferredConfig = Bitmap.Config.RGB_565
+            decoder.decodeRegion(region, options)
+        } catch (e: IOException) {
+            Log.w(TAG, "Cannot decode the thumbnail " + cue.mImageUrl, e)
+            return null
+        } catch (e: IllegalArgumentException) {
+            Log.w(TAG, "Cannot decode the thumbnail " + cue.mImageUrl, e)
+            return null
+        }
+        if (tile != null) {
+            mTiles.put(index, tile)
+        }
+        return tile
+    }
+
+    /** A thumbnail cue: the image, or tile of a sprite sheet, shown from `mStartMs` on.  */
+    internal class Cue(val mStartMs: Long, val mImageUrl: String, val mRegion: Rect?)
+
+    companion object {
+        private const val TAG = "SeekThumbnailProvider"
+
+        private const val MAX_CACHE_BYTES = 8 * 1024 * 1024
+        // Sprite sheets are large, so only the ones scrubbed through last keep a decoder.
+        private const val MAX_SHEET_DECODERS = 2
+        private const val PREFETCH_COUNT = 3
+        private const val TIMEOUT_MS = 15000
+        private const val CUE_ARROW = "-->"
+        private const val TILE_FRAGMENT = "#xywh="
+
+        private val sExecutor: ExecutorService = Executors.newSingleThreadExecutor()
+
+        @Throws(IOException::class)
+        private fun readTrack(trackUrl: String): List<Cue> {
+            return open(trackUrl).bufferedReader(Charsets.UTF_8).use { reader ->
+                parseTrack(URL(trackUrl), reader)
+            }
+        }
+
+        /**
+         * Parses the cues of a WebVTT thumbnail track, resolving their images against `base`.
+         * Cues with a malformed start time, without an image or with a malformed tile are skipped.
+         */
+        @Throws(IOException::class)
+        internal fun parseTrack(base: URL, reader: BufferedReader): List<Cue> {
+            val cues = ArrayList<Cue>()
+            while (true) {
+                val line = reader.readLine() ?: break
+                val arrow = line.indexOf(CUE_ARROW)
+                if (arrow < 0) {
+                    continue
+                }
+                val startMs = parseTimestamp(line.substring(0, arrow).trim())
+                val image = reader.readLine()?.trim()
+                if (startMs < 0 || image.isNullOrEmpty()) {
+                    continue
+                }
+                parseCue(base, startMs, image)?.let { cues.add(it) }
+            }
+            return cues
+        }
+
+        /** Returns the cue of `image`, or null if its tile is malformed.  */
+        @Throws(IOException::class)
+        private fun parseCue(base: URL, startMs: Long, image: String): Cue? {
+            var region: Rect? = null
+            var imageUrl = image
+            val fragment = image.indexOf(TILE_FRAGMENT)
+            if (fragment >= 0) {
+                val xywh = image.substring(fragment + TILE_FRAGMENT.length).split(",")
+                if (xywh.size != 4) {
+                    return null
+                }
+                try {
+                    val x = xywh[0].trim().toInt()
+                    val y = xywh[1].trim().toInt()
+                    region = Rect(x, y, x + xywh[2].trim().toInt(), y + xywh[3].trim().toInt())
+                } catch (e: NumberFormatException) {
+                    return null
+                }
+                imageUrl = image.substring(0, fragment)
+            }
+            return Cue(startMs, URL(base, imageUrl).toString(), region)
+        }
+
+        /** Parses a `[hh:]mm:ss.ttt` timestamp, returning -1 if it is malformed.  */
+        private fun parseTimestamp(timestamp: String): Long {
+            return try {
+                val parts = timestamp.split(":")
+                val ms = (parts[parts.size - 1].toDouble() * 1000).roundToLong()
+                var minutes = 0L
+                for (i in 0 until parts.size - 1) {
+                    minutes = minutes * 60 + parts[i].toLong()
+                }
+                minutes * 60 * 1000 + ms
+            } catch (e: NumberFormatException) {
+                -1
+            }
+        }
+
+        @Throws(IOException::class)
+        private fun fetch(url: String): ByteArray {
+            return open(url).use { it.readBytes() }
+        }
+
+        @Throws(IOException::class)
+        private fun open(url: String): InputStream {
+            val connection = URL(url).openConnection() as HttpURLConnection
+            connection.connectTimeout = TIMEOUT_MS
+            connection.readTimeout = TIMEOUT_MS
+            return connection.inputStream
+        }
+    }
+}
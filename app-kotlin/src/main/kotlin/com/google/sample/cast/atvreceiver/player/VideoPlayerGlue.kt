@@ -16,6 +16,14 @@
 package com.google.sample.cast.atvreceiver.player
 
 import android.content.Context
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import android.view.KeyEvent
+import android.view.View
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.ExoPlayer
+import com.google.android.exoplayer2.SeekParameters
 import com.google.android.exoplayer2.ext.leanback.LeanbackPlayerAdapter
 import androidx.leanback.media.PlaybackTransportControlGlue
 import androidx.leanback.widget.Action
@@ -29,6 +37,7 @@ import java.util.concurrent.TimeUnit
 class VideoPlayerGlue(
         context: Context?,
         playerAdapter: LeanbackPlayerAdapter?,
+        private val mPlayer: ExoPlayer,
         private val mActionListener: OnActionClickedListener) : PlaybackTransportControlGlue<LeanbackPlayerAdapter?>(context, playerAdapter) {
     /** Listens for when skip to next and previous actions have been dispatched.  */
     interface OnActionClickedListener {
@@ -43,6 +52,16 @@ class VideoPlayerGlue(
     private val mSkipNextAction: SkipNextAction
     private val mFastForwardAction: FastForwardAction
     private val mRewindAction: RewindAction
+    private val mHandler = Handler(Looper.getMainLooper())
+    private val mFinishScrub = Runnable { finishScrub() }
+    private var mScrubStartMs = C.TIME_UNSET
+    private var mLastScrubStepMs = 0L
+    private var mScrubPositionMs = 0L
+
+    /** How many times the controls have been told about the playback position.  */
+    var progressUpdateCount = 0
+        private set
+
     override fun onCreatePrimaryActions(primaryActionsAdapter: ArrayObjectAdapter) {
         super.onCreatePrimaryActions(primaryActionsAdapter)
         primaryActionsAdapter.add(mSkipPreviousAction)
@@ -61,6 +80,44 @@ class VideoPlayerGlue(
         }
     }
 
+    override fun onKey(v: View?, keyCode: Int, event: KeyEvent): Boolean {
+        if (keyCode != KeyEvent.KEYCODE_MEDIA_FAST_FORWARD
+                && keyCode != KeyEvent.KEYCODE_MEDIA_REWIND) {
+            return super.onKey(v, keyCode, event)
+        }
+        if (event.action == KeyEvent.ACTION_UP) {
+            finishScrub()
+        } else if (event.action == KeyEvent.ACTION_DOWN
+                && (event.repeatCount == 0
+                        || event.eventTime - mLastScrubStepMs >= SCRUB_REPEAT_INTERVAL_MS)) {
+            scrub(keyCode == KeyEvent.KEYCODE_MEDIA_FAST_FORWARD)
+        }
+        return true
+    }
+
+    override fun onDetachedFromHost() {
+        mHandler.removeCallbacks(mFinishScrub)
+        if (mScrubStartMs != C.TIME_UNSET) {
+            mScrubStartMs = C.TIME_UNSET
+            mPlayer.setSeekParameters(SeekParameters.DEFAULT)
+        }
+        super.onDetachedFromHost()
+    }
+
+    override fun onHostStart() {
+        // Unlike the base class, this leaves the adapter's progress updates to the
+        // ProgressUpdateScheduler, which only turns them on while the player is playing.
+    }
+
+    override fun onHostStop() {
+        // The ProgressUpdateScheduler turns the updates off when it is released with the player.
+    }
+
+    override fun onUpdateProgress() {
+        progressUpdateCount++
+        super.onUpdateProgress()
+    }
+
     override fun next() {
         mActionListener.onNext()
     }
@@ -69,24 +126,71 @@ class VideoPlayerGlue(
         mActionListener.onPrevious()
     }
 
-    /** Skips backwards 10 seconds.  */
+    /** Skips backwards 10 seconds, or further if the user keeps rewinding.  */
     fun rewind() {
-        var newPosition = currentPosition - TEN_SECONDS
-        newPosition = if (newPosition < 0) 0 else newPosition
-        playerAdapter!!.seekTo(newPosition)
+        scrub(false)
     }
 
-    /** Skips forward 10 seconds.  */
+    /** Skips forward 10 seconds, or further if the user keeps fast forwarding.  */
     fun fastForward() {
         if (duration > -1) {
-            var newPosition = currentPosition + TEN_SECONDS
+            scrub(true)
+        }
+    }
+
+    /**
+     * Takes one step of a scrub. The steps get longer the longer the scrub goes on, and only seek
+     * to the nearest keyframe, which the player can show without decoding up to the exact
+     * position.
+     */
+    private fun scrub(forward: Boolean) {
+        val now = SystemClock.uptimeMillis()
+        if (mScrubStartMs == C.TIME_UNSET) {
+            mScrubStartMs = now
+            mScrubPositionMs = currentPosition
+            mPlayer.setSeekParameters(SeekParameters.CLOSEST_SYNC)
+        }
+        mLastScrubStepMs = now
+        val level = Math.min(
+                (now - mScrubStartMs) / SCRUB_ACCELERATION_MS, SCRUB_STEPS_MS.size - 1L).toInt()
+        val step = SCRUB_STEPS_MS[level]
+        var newPosition = mScrubPositionMs + if (forward) step else -step
+        newPosition = if (newPosition < 0) 0 else newPosition
+        if (duration > -1) {
             newPosition = if (newPosition > duration) duration else newPosition
-            playerAdapter!!.seekTo(newPosition)
         }
+        mScrubPositionMs = newPosition
+        playerAdapter!!.seekTo(newPosition)
+        mHandler.removeCallbacks(mFinishScrub)
+        mHandler.postDelayed(mFinishScrub, SCRUB_SETTLE_MS)
+    }
+
+    /** Ends a scrub with an exact seek to the position it got to.  */
+    private fun finishScrub() {
+        mHandler.removeCallbacks(mFinishScrub)
+        if (mScrubStartMs == C.TIME_UNSET) {
+            return
+        }
+        mScrubStartMs = C.TIME_UNSET
+        mPlayer.setSeekParameters(SeekParameters.DEFAULT)
+        playerAdapter!!.seekTo(mScrubPositionMs)
     }
 
     companion object {
         private val TEN_SECONDS = TimeUnit.SECONDS.toMillis(10)
+        // The step of a scrub grows to the next of these every SCRUB_ACCELERATION_MS.
+        private val SCRUB_STEPS_MS = longArrayOf(
+                TEN_SECONDS,
+                TimeUnit.SECONDS.toMillis(30),
+                TimeUnit.MINUTES.toMillis(1),
+                TimeUnit.MINUTES.toMillis(2))
+        private const val SCRUB_ACCELERATION_MS = 2000L
+        // A held key repeats faster than the player can show keyframes, so repeats are thinned
+        // out.
+        private const val SCRUB_REPEAT_INTERVAL_MS = 200L
+        // Without a key release, as for the rewind and fast forward buttons, a scrub ends once no
+        // further step is asked for within this time.
+        private const val SCRUB_SETTLE_MS = 600L
     }
 
     init {
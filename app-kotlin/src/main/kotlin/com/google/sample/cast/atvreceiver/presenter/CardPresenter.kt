@@ -15,34 +15,96 @@
  */
 package com.google.sample.cast.atvreceiver.presenter
 
+import android.content.Context
 import android.graphics.drawable.Drawable
+import android.os.Handler
+import android.os.Looper
 import android.util.Log
 import android.view.View
 import androidx.leanback.widget.Presenter
 import android.view.ViewGroup
 import androidx.core.content.ContextCompat
+import androidx.core.os.trace
+import com.google.sample.cast.atvreceiver.DebugLog
 import com.google.sample.cast.atvreceiver.R
 import androidx.leanback.widget.ImageCardView
 import com.bumptech.glide.Glide
+import com.bumptech.glide.RequestBuilder
+import com.bumptech.glide.RequestManager
 import com.google.sample.cast.atvreceiver.data.Movie
+import java.util.ArrayDeque
 
 /**
  * A CardPresenter is used to generate Views and bind Objects to them on demand.
  * It contains an Image CardView
  */
 class CardPresenter : Presenter() {
+    private val mHandler = Handler(Looper.getMainLooper())
+    // Cards inflated ahead of time by prewarm(), handed out by onCreateViewHolder().
+    private val mPrewarmedCards = ArrayDeque<ImageCardView>()
+    private var mPrewarmTask: PrewarmTask? = null
+    private var mSelectedBackgroundColor = 0
+    private var mDefaultBackgroundColor = 0
     private var mDefaultCardImage: Drawable? = null
+
+    /**
+     * Inflates `count` cards on the main thread, one per message so that frames keep being drawn
+     * in between. The rows shown once the catalog has loaded then take their first cards from
+     * these instead of inflating them. `context` must be the one that the rows inflate their views
+     * with, which gives the cards their style; cards prewarmed with another context are dropped.
+     */
+    fun prewarm(context: Context, count: Int) {
+        cancelPrewarm()
+        resolveResources(context)
+        val task = PrewarmTask(context, count)
+        mPrewarmTask = task
+        mHandler.post(task)
+    }
+
+    /** Stops prewarming and drops the prewarmed cards that have not been handed out.  */
+    fun cancelPrewarm() {
+        mPrewarmTask?.let { mHandler.removeCallbacks(it) }
+        mPrewarmTask = null
+        mPrewarmedCards.clear()
+    }
+
     override fun onCreateViewHolder(parent: ViewGroup): ViewHolder {
-        Log.d(TAG, "onCreateViewHolder")
-        sDefaultBackgroundColor = ContextCompat.getColor(parent.context, R.color.default_background)
-        sSelectedBackgroundColor = ContextCompat.getColor(parent.context, R.color.selected_background)
+        val cardView = pollPrewarmedCard(parent.context) ?: run {
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "onCreateViewHolder")
+            }
+            resolveResources(parent.context)
+            createCardView(parent.context)
+        }
+        return ViewHolder(cardView)
+    }
+
+    private fun pollPrewarmedCard(context: Context): ImageCardView? {
+        val cardView = mPrewarmedCards.poll()
+        if (cardView != null && cardView.context !== context) {
+            Log.w(TAG, "Dropping the cards prewarmed with another context than the rows'")
+            cancelPrewarm()
+            return null
+        }
+        return cardView
+    }
+
+    private fun resolveResources(context: Context) {
+        if (mDefaultCardImage != null) {
+            return
+        }
+        mDefaultBackgroundColor = ContextCompat.getColor(context, R.color.default_background)
+        mSelectedBackgroundColor = ContextCompat.getColor(context, R.color.selected_background)
         /*
          * This template uses a default image in res/drawable, but the general case for Android TV
          * will require your resources in xhdpi. For more information, see
          * https://developer.android.com/training/tv/start/layouts.html#density-resources
          */
-        mDefaultCardImage = ContextCompat.getDrawable(parent.context, R.drawable.movie)
-        val cardView: ImageCardView = object : ImageCardView(parent.context) {
+        mDefaultCardImage = ContextCompat.getDrawable(context, R.drawable.movie)
+    }
+
+    private fun createCardView(context: Context): ImageCardView {
+        val cardView: ImageCardView = object : ImageCardView(context) {
             override fun setSelected(selected: Boolean) {
                 updateCardBackgroundColor(this, selected)
                 super.setSelected(selected)
@@ -51,45 +113,86 @@ class CardPresenter : Presenter() {
         cardView.isFocusable = true
         cardView.isFocusableInTouchMode = true
         updateCardBackgroundColor(cardView, false)
-        return ViewHolder(cardView)
+        return cardView
+    }
+
+    private fun updateCardBackgroundColor(view: ImageCardView, selected: Boolean) {
+        val color = if (selected) mSelectedBackgroundColor else mDefaultBackgroundColor
+        // Both background colors should be set because the view's background is temporarily visible
+        // during animations.
+        view.setBackgroundColor(color)
+        view.findViewById<View>(R.id.info_field).setBackgroundColor(color)
     }
 
-    override fun onBindViewHolder(viewHolder: ViewHolder, item: Any) {
-        val movie = item as Movie
+    override fun onBindViewHolder(viewHolder: ViewHolder, item: Any?) {
         val cardView = viewHolder.view as ImageCardView
-        Log.d(TAG, "onBindViewHolder")
-        if (movie.cardImageUrl != null) {
-            cardView.titleText = movie.title
-            cardView.contentText = movie.studio
-            cardView.setMainImageDimensions(CARD_WIDTH, CARD_HEIGHT)
-            Glide.with(viewHolder.view.context)
-                    .load(movie.cardImageUrl)
-                    .centerCrop()
-                    .error(mDefaultCardImage)
-                    .into(cardView.mainImageView)
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "onBindViewHolder")
+        }
+        trace("CardPresenter.onBindViewHolder") {
+            if (item !is Movie) {
+                // A placeholder for an item that is still being loaded.
+                Glide.with(viewHolder.view.context).clear(cardView.mainImageView)
+                cardView.titleText = null
+                cardView.contentText = null
+                cardView.setMainImageDimensions(CARD_WIDTH, CARD_HEIGHT)
+                cardView.mainImage = mDefaultCardImage
+                return
+            }
+            val movie = item
+            if (movie.cardImageUrl != null) {
+                cardView.titleText = movie.title
+                cardView.contentText = movie.studio
+                cardView.setMainImageDimensions(CARD_WIDTH, CARD_HEIGHT)
+                // An image in the memory cache is set within this section; others are decoded on
+                // Glide's threads, where they show up in their own sections of the trace.
+                trace("CardPresenter.loadImage") {
+                    loadCardImage(Glide.with(viewHolder.view.context), movie.cardImageUrl)
+                            .error(mDefaultCardImage)
+                            .into(cardView.mainImageView)
+                }
+            }
         }
     }
 
     override fun onUnbindViewHolder(viewHolder: ViewHolder) {
-        Log.d(TAG, "onUnbindViewHolder")
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "onUnbindViewHolder")
+        }
         val cardView = viewHolder.view as ImageCardView
         // Remove references to images so that the garbage collector can free up memory
         cardView.badgeImage = null
         cardView.mainImage = null
     }
 
+    private inner class PrewarmTask(private val mContext: Context, private var mRemaining: Int) :
+            Runnable {
+        override fun run() {
+            if (mRemaining <= 0) {
+                return
+            }
+            mPrewarmedCards.add(createCardView(mContext))
+            if (--mRemaining > 0) {
+                mHandler.post(this)
+            } else {
+                if (DebugLog.ENABLED) {
+                    Log.d(TAG, "Prewarmed " + mPrewarmedCards.size + " cards")
+                }
+                mPrewarmTask = null
+            }
+        }
+    }
+
     companion object {
         private const val TAG = "CardPresenter"
-        private const val CARD_WIDTH = 313
-        private const val CARD_HEIGHT = 176
-        private var sSelectedBackgroundColor = 0
-        private var sDefaultBackgroundColor = 0
-        private fun updateCardBackgroundColor(view: ImageCardView, selected: Boolean) {
-            val color = if (selected) sSelectedBackgroundColor else sDefaultBackgroundColor
-            // Both background colors should be set because the view's background is temporarily visible
-            // during animations.
-            view.setBackgroundColor(color)
-            view.findViewById<View>(R.id.info_field).setBackgroundColor(color)
+        const val CARD_WIDTH = 313
+        const val CARD_HEIGHT = 176
+        /**
+         * Returns the request for the image of a card. Binding and prefetching both use it, so
+         * that a prefetched image is found under the same cache key when its card is bound.
+         */
+        fun loadCardImage(requests: RequestManager, url: String?): RequestBuilder<Drawable> {
+            return requests.load(url).override(CARD_WIDTH, CARD_HEIGHT).centerCrop()
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,199 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.ui
+
+import android.graphics.Bitmap
+import android.graphics.drawable.Drawable
+import android.os.Handler
+import android.os.Looper
+import android.util.DisplayMetrics
+import androidx.core.os.trace
+import androidx.leanback.app.BackgroundManager
+import androidx.leanback.widget.ObjectAdapter
+import com.bumptech.glide.RequestBuilder
+import com.bumptech.glide.RequestManager
+import com.bumptech.glide.request.target.CustomTarget
+import com.bumptech.glide.request.target.Target
+import com.bumptech.glide.request.transition.Transition
+import com.google.sample.cast.atvreceiver.data.Movie
+
+/**
+ * Shows the background art of the selected card in a [BackgroundManager].
+ *
+ * Selections are debounced on the main looper, so that scrolling through a row only loads the
+ * background of the card it stops on. The backgrounds of the cards next to the selected one are
+ * prefetched at the size they are shown at, and a background that has been crossfaded away from
+ * hands its bitmap back to Glide's pool, where the next background of the same size is decoded
+ * into it.
+ */
+internal class BackgroundArtController(
+        private val mRequests: RequestManager,
+        private val mBackgroundManager: BackgroundManager,
+        private val mDefaultBackground: Drawable?,
+        metrics: DisplayMetrics) {
+    private val mHandler = Handler(Looper.getMainLooper())
+    private val mWidth: Int
+    private val mHeight: Int
+    private val mUpdateRunnable = Runnable { updateBackground() }
+    // Prefetches in flight, by image URL.
+    private val mPrefetches = HashMap<String, Target<Bitmap>>()
+    // Backgrounds that have been replaced and are waiting for their crossfade to end.
+    private val mReplaced = ArrayList<BackgroundTarget>()
+    private var mPendingUri: String? = null
+    private var mLoading: BackgroundTarget? = null
+    private var mShown: BackgroundTarget? = null
+
+    init {
+        val scale = Math.min(1f, MAX_BACKGROUND_HEIGHT.toFloat() / metrics.heightPixels)
+        mWidth = Math.round(metrics.widthPixels * scale)
+        mHeight = Math.round(metrics.heightPixels * scale)
+    }
+
+    /**
+     * Shows the background of the card at `position` of `items` once the selection has settled,
+     * and prefetches the backgrounds of its neighbours.
+     */
+    fun onItemSelected(items: ObjectAdapter, position: Int) {
+        val urls = LinkedHashSet<String>()
+        for (i in 1..PREFETCH_NEIGHBOURS) {
+            addBackgroundUrl(items, position + i, urls)
+            addBackgroundUrl(items, position - i, urls)
+        }
+        prefetch(urls)
+        if (position >= 0 && position < items.size()) {
+            val movie = items.get(position) as? Movie ?: return
+            setBackgroundUri(movie.backgroundImageUrl)
+        }
+    }
+
+    /** Shows the background at `uri` once no other one is requested for a while.  */
+    fun setBackgroundUri(uri: String?) {
+        mPendingUri = uri
+        mHandler.removeCallbacks(mUpdateRunnable)
+        mHandler.postDelayed(mUpdateRunnable, UPDATE_DELAY_MS.toLong())
+    }
+
+    /** Cancels the pending update and every load in flight.  */
+    fun release() {
+        mHandler.removeCallbacksAndMessages(null)
+        for (prefetch in mPrefetches.values) {
+            mRequests.clear(prefetch)
+        }
+        mPrefetches.clear()
+        mLoading?.let { mRequests.clear(it) }
+        mLoading = null
+        // The shown background stays up; its request is cleared along with the activity's.
+        for (target in mReplaced) {
+            mRequests.clear(target)
+        }
+        mReplaced.clear()
+    }
+
+    private fun updateBackground() {
+        val loading = mLoading
+        if (loading != null) {
+            if (loading.mUri == mPendingUri) {
+                return
+            }
+            mRequests.clear(loading)
+            mLoading = null
+        }
+        val shown = mShown
+        if (shown != null && shown.mUri == mPendingUri) {
+            return
+        }
+        val target = BackgroundTarget(mPendingUri)
+        mLoading = target
+        trace("BackgroundArtController.loadImage") { load(mPendingUri).into(target) }
+    }
+
+    private fun prefetch(urls: Set<String>) {
+        val prefetches = mPrefetches.entries.iterator()
+        while (prefetches.hasNext()) {
+            val prefetch = prefetches.next()
+            if (prefetch.key !in urls) {
+                mRequests.clear(prefetch.value)
+                prefetches.remove()
+            }
+        }
+        for (url in urls) {
+            if (url !in mPrefetches) {
+                mPrefetches[url] = load(url).preload(mWidth, mHeight)
+            }
+        }
+    }
+
+    // Hardware bitmaps cannot be pooled, so backgrounds are always decoded into software ones.
+    private fun load(uri: String?): RequestBuilder<Bitmap> =
+            mRequests.asBitmap()
+                    .load(uri)
+                    .centerCrop()
+                    .disallowHardwareConfig()
+
+    /** Crossfades to `bitmap`, or to the default background if it is `null`.  */
+    private fun show(target: BackgroundTarget, bitmap: Bitmap?) {
+        mLoading = null
+        if (bitmap != null) {
+            mBackgroundManager.setBitmap(bitmap)
+        } else {
+            mBackgroundManager.drawable = mDefaultBackground
+        }
+        mShown?.let { replaced ->
+            mReplaced.add(replaced)
+            mHandler.postDelayed({
+                mReplaced.remove(replaced)
+                mRequests.clear(replaced)
+            }, RELEASE_DELAY_MS.toLong())
+        }
+        mShown = target
+    }
+
+    private inner class BackgroundTarget(val mUri: String?) :
+            CustomTarget<Bitmap>(mWidth, mHeight) {
+        override fun onResourceReady(resource: Bitmap, transition: Transition<in Bitmap>?) {
+            show(this, resource)
+        }
+
+        override fun onLoadFailed(errorDrawable: Drawable?) {
+            show(this, null)
+        }
+
+        override fun onLoadCleared(placeholder: Drawable?) {
+            // Only cleared once the bitmap is no longer drawn.
+        }
+    }
+
+    companion object {
+        private const val UPDATE_DELAY_MS = 300
+        // BackgroundManager keeps drawing the previous background while it crossfades to the next
+        // one, so its bitmap is only returned to the pool once the crossfade is over.
+        private const val RELEASE_DELAY_MS = 1000
+        private const val PREFETCH_NEIGHBOURS = 1
+        // Backgrounds sit dimmed behind the rows, so they are not decoded beyond full HD even on
+        // 4K panels.
+        private const val MAX_BACKGROUND_HEIGHT = 1080
+
+        private fun addBackgroundUrl(
+                items: ObjectAdapter, position: Int, urls: MutableSet<String>) {
+            if (position < 0 || position >= items.size()) {
+                return
+            }
+            // Items of a paged row that are not loaded yet have no background to prefetch.
+            val url = (items.get(position) as? Movie)?.backgroundImageUrl ?: return
+            urls.add(url)
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.ui
+
+import android.graphics.drawable.Drawable
+import androidx.leanback.widget.ListRow
+import androidx.leanback.widget.ObjectAdapter
+import com.bumptech.glide.RequestManager
+import com.bumptech.glide.request.target.Target
+import com.google.sample.cast.atvreceiver.data.Movie
+import com.google.sample.cast.atvreceiver.presenter.CardPresenter
+
+/**
+ * Warms the image caches with the cards that are about to scroll into view, so that fast D-pad
+ * scrolling does not leave a trail of blank cards.
+ *
+ * On every selection it prefetches the next [PREFETCH_COUNT] cards in the direction focus is
+ * moving, and the first [ADJACENT_ROW_COUNT] cards of the rows above and below. Prefetches that
+ * are no longer among those, such as the ones ahead of a focus that turned around, are canceled.
+ */
+internal class CardImagePrefetcher(private val mRequests: RequestManager) {
+    // Prefetches in flight, by image URL.
+    private val mPrefetches = HashMap<String, Target<Drawable>>()
+    private var mLastRow: ObjectAdapter? = null
+    private var mLastPosition = 0
+    private var mDirection = 1
+
+    /**
+     * Prefetches for the card at `position` of `row` having been selected.
+     *
+     * @param rows the adapter of all rows.
+     * @param rowIndex the position of `row` in `rows`.
+     */
+    fun onItemSelected(rows: ObjectAdapter, rowIndex: Int, row: ListRow, position: Int) {
+        val items = row.adapter
+        if (items === mLastRow && position != mLastPosition) {
+            mDirection = if (position > mLastPosition) 1 else -1
+        }
+        mLastRow = items
+        mLastPosition = position
+
+        val urls = LinkedHashSet<String>()
+        for (i in 1..PREFETCH_COUNT) {
+            addImageUrl(items, position + i * mDirection, urls)
+        }
+        addFirstImageUrls(rows, rowIndex - 1, urls)
+        addFirstImageUrls(rows, rowIndex + 1, urls)
+
+        val prefetches = mPrefetches.entries.iterator()
+        while (prefetches.hasNext()) {
+            val prefetch = prefetches.next()
+            if (prefetch.key !in urls) {
+                mRequests.clear(prefetch.value)
+                prefetches.remove()
+            }
+        }
+        for (url in urls) {
+            if (url !in mPrefetches) {
+                mPrefetches[url] = CardPresenter.loadCardImage(mRequests, url)
+                        .preload(CardPresenter.CARD_WIDTH, CardPresenter.CARD_HEIGHT)
+            }
+        }
+    }
+
+    /** Cancels every prefetch in flight.  */
+    fun cancel() {
+        for (prefetch in mPrefetches.values) {
+            mRequests.clear(prefetch)
+        }
+        mPrefetches.clear()
+        mLastRow = null
+    }
+
+    companion object {
+        private const val PREFETCH_COUNT = 6
+        private const val ADJACENT_ROW_COUNT = 3
+
+        private fun addFirstImageUrls(
+                rows: ObjectAdapter, rowIndex: Int, urls: MutableSet<String>) {
+            if (rowIndex < 0 || rowIndex >= rows.size()) {
+                return
+            }
+            val items = (rows.get(rowIndex) as? ListRow)?.adapter ?: return
+            for (i in 0 until ADJACENT_ROW_COUNT) {
+                addImageUrl(items, i, urls)
+            }
+        }
+
+        private fun addImageUrl(items: ObjectAdapter, position: Int, urls: MutableSet<String>) {
+            if (position < 0 || position >= items.size()) {
+                return
+            }
+            // Items of a paged row that are not loaded yet have no image to prefetch.
+            val url = (items.get(position) as? Movie)?.cardImageUrl ?: return
+            urls.add(url)
+        }
+    }
+}
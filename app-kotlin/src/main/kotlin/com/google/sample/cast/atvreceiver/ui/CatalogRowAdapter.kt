@@ -0,0 +1,62 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.ui
+
+import androidx.leanback.widget.ObjectAdapter
+import androidx.leanback.widget.Presenter
+import com.google.sample.cast.atvreceiver.data.Movie
+import java.util.Random
+
+/**
+ * Row adapter that is a view over the shared catalog rather than a copy of it. A row shows the
+ * catalog either in order or through an index permutation, so building a row allocates at most
+ * one `Int` per movie and never touches the catalog itself.
+ *
+ * @param mOrder catalog positions in the order the row shows them, or `null` to show the
+ * catalog in order.
+ */
+open class CatalogRowAdapter(
+        presenter: Presenter,
+        private val mCatalog: List<Movie?>,
+        private val mOrder: IntArray?) : ObjectAdapter(presenter) {
+
+    /** Returns the catalog position of the item at `position`.  */
+    fun getCatalogPosition(position: Int): Int {
+        return mOrder?.get(position) ?: position
+    }
+
+    override fun size(): Int {
+        return mOrder?.size ?: mCatalog.size
+    }
+
+    override fun get(position: Int): Any? {
+        return mCatalog[getCatalogPosition(position)]
+    }
+
+    companion object {
+        /** Returns a random permutation of the positions of a catalog of `size` movies.  */
+        fun shuffledOrder(size: Int, random: Random): IntArray {
+            val order = IntArray(size) { it }
+            for (i in size - 1 downTo 1) {
+                val j = random.nextInt(i + 1)
+                val tmp = order[i]
+                order[i] = order[j]
+                order[j] = tmp
+            }
+            return order
+        }
+    }
+}
@@ -21,37 +21,52 @@ import android.util.DisplayMetrics
 import androidx.leanback.app.BackgroundManager
 import android.os.Bundle
 import androidx.core.content.ContextCompat
+import androidx.core.os.trace
+import com.google.sample.cast.atvreceiver.DebugLog
+import com.google.sample.cast.atvreceiver.ImagePipelineModule
 import com.google.sample.cast.atvreceiver.R
 import android.widget.Toast
 import com.bumptech.glide.Glide
-import com.bumptech.glide.request.target.SimpleTarget
 import com.google.sample.cast.atvreceiver.data.MovieListLoader
 import com.google.sample.cast.atvreceiver.presenter.CardPresenter
 import com.google.sample.cast.atvreceiver.data.MovieList
 import android.content.Intent
 import android.content.Loader
 import android.graphics.drawable.Drawable
-import android.os.Handler
 import android.util.Log
 import androidx.leanback.widget.*
-import com.bumptech.glide.request.transition.Transition
 import com.google.sample.cast.atvreceiver.data.Movie
 import java.util.*
 
 class MainFragment : BrowseFragment(), LoaderManager.LoaderCallbacks<List<Movie?>> {
-    private val mHandler = Handler()
     private var mDefaultBackground: Drawable? = null
     private var mMetrics: DisplayMetrics? = null
-    private var mBackgroundTimer: Timer? = null
-    private var mBackgroundUri: String? = null
     private var mBackgroundManager: BackgroundManager? = null
+    private var mBackgroundArtController: BackgroundArtController? = null
     private var mCategoryRowAdapter: ArrayObjectAdapter? = null
+    private val mCardPresenter = CardPresenter()
+    // The first row while it is being filled in from a catalog that is still being parsed.
+    private var mPartialRowAdapter: ArrayObjectAdapter? = null
+    // The focused card of the partial row, kept when the row is swapped for the full one.
+    private var mPartialRowSelectedPosition = 0
+    private var mCardImagePrefetcher: CardImagePrefetcher? = null
     override fun onActivityCreated(savedInstanceState: Bundle?) {
-        Log.i(TAG, "onCreate")
+        if (DebugLog.ENABLED) {
+            Log.i(TAG, "onCreate")
+        }
         super.onActivityCreated(savedInstanceState)
         prepareBackgroundManager()
         setupUIElements()
-        mCategoryRowAdapter = ArrayObjectAdapter(ListRowPresenter())
+        // The rows of a BrowseFragment already share one pool of recycled views. It holds a
+        // screen's worth of cards, so that a row scrolling into view reuses the cards of the
+        // one that scrolled out, and the cards of the first screen are inflated while the catalog
+        // loads, with the context of the fragment's views that the rows inflate theirs with.
+        val cardsOnScreen = ROWS_ON_SCREEN * (mMetrics!!.widthPixels / CardPresenter.CARD_WIDTH + 2)
+        val rowPresenter = ListRowPresenter()
+        rowPresenter.setRecycledPoolSize(mCardPresenter, cardsOnScreen)
+        mCardPresenter.prewarm(view!!.context, cardsOnScreen)
+        mCategoryRowAdapter = ArrayObjectAdapter(rowPresenter)
+        mCardImagePrefetcher = CardImagePrefetcher(Glide.with(this))
         adapter = mCategoryRowAdapter
         setupEventListeners()
         var loaderBundle : Bundle =  Bundle()
@@ -62,10 +77,12 @@ class MainFragment : BrowseFragment(), LoaderManager.LoaderCallbacks<List<Movie?
 
     override fun onDestroy() {
         super.onDestroy()
-        if (null != mBackgroundTimer) {
-            Log.d(TAG, "onDestroy: " + mBackgroundTimer.toString())
-            mBackgroundTimer!!.cancel()
+        mCardPresenter.cancelPrewarm()
+        mCardImagePrefetcher?.cancel()
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Image memory cache: " + ImagePipelineModule.memoryCacheStats)
         }
+        mBackgroundArtController?.release()
     }
 
     private fun prepareBackgroundManager() {
@@ -74,6 +91,8 @@ class MainFragment : BrowseFragment(), LoaderManager.LoaderCallbacks<List<Movie?
         mDefaultBackground = ContextCompat.getDrawable(activity, R.drawable.default_background)
         mMetrics = DisplayMetrics()
         activity.windowManager.defaultDisplay.getMetrics(mMetrics)
+        mBackgroundArtController = BackgroundArtController(Glide.with(activity),
+                mBackgroundManager!!, mDefaultBackground, mMetrics!!)
     }
 
     private fun setupUIElements() {
@@ -96,60 +115,106 @@ class MainFragment : BrowseFragment(), LoaderManager.LoaderCallbacks<List<Movie?
         onItemViewSelectedListener = ItemViewSelectedListener()
     }
 
-    private fun updateBackground(uri: String?) {
-        val width = mMetrics!!.widthPixels
-        val height = mMetrics!!.heightPixels
-        Glide.with(activity)
-                .load(uri)
-                .centerCrop()
-                .error(mDefaultBackground)
-                .into(object : SimpleTarget<Drawable?>(width, height) {
-                    override fun onResourceReady(resource: Drawable, transition: Transition<in Drawable?>?) {
-                        mBackgroundManager!!.drawable = resource
-                    }
-                })
-        mBackgroundTimer!!.cancel()
+    override fun onCreateLoader(id: Int, args: Bundle): Loader<List<Movie?>> {
+        val loader = MovieListLoader(activity!!, getString(R.string.catalog_url))
+        loader.setOnCategoryParsedListener(CategoryParsedListener())
+        return loader as Loader<List<Movie?>>
     }
 
-    private fun startBackgroundTimer() {
-        if (null != mBackgroundTimer) {
-            mBackgroundTimer!!.cancel()
+    override fun onLoadFinished(loader: Loader<List<Movie?>>, data: List<Movie?>?) {
+        if (data == null) {
+            return
+        }
+        var firstNewRow = 0
+        if (mPartialRowAdapter != null) {
+            // The first row already shows the whole catalog in order; only its adapter changes.
+            replacePartialRow(data)
+            firstNewRow = 1
+        } else {
+            // A refreshed catalog replaces the rows built from the cached one.
+            mCategoryRowAdapter!!.clear()
+        }
+        val random = Random()
+        trace("MainFragment.buildRows") {
+            var i: Int
+            i = firstNewRow
+            while (i < MovieList.MOVIE_CATEGORY.size) {
+                // Every row is a view over the shared catalog: the first one in catalog order, the
+                // others shuffled.
+                val order = if (i == 0) null else CatalogRowAdapter.shuffledOrder(data.size, random)
+                val listRowAdapter = newRowAdapter(data, order)
+                val header = HeaderItem(i.toLong(), MovieList.MOVIE_CATEGORY[i])
+                mCategoryRowAdapter!!.add(ListRow(header, listRowAdapter))
+                i++
+            }
         }
-        mBackgroundTimer = Timer()
-        mBackgroundTimer!!.schedule(UpdateBackgroundTask(), BACKGROUND_UPDATE_DELAY.toLong())
     }
 
-    override fun onCreateLoader(id: Int, args: Bundle): Loader<List<Movie?>> {
-        return MovieListLoader(activity!!, getString(R.string.catalog_url)) as Loader<List<Movie?>>
+    /**
+     * Returns a row over [data]. Only large catalogs are paged: a paged row shows placeholders
+     * until its pages have been loaded, which is not worth it for a catalog that fits in a few
+     * pages.
+     */
+    private fun newRowAdapter(data: List<Movie?>, order: IntArray?): CatalogRowAdapter {
+        return if (data.size <= MAX_UNPAGED_ROW_SIZE) {
+            CatalogRowAdapter(mCardPresenter, data, order)
+        } else {
+            PagedRowAdapter(mCardPresenter, data, order)
+        }
     }
 
-    override fun onLoadFinished(loader: Loader<List<Movie?>>, data: List<Movie?>) {
-        val cardPresenter = CardPresenter()
-        var i: Int
-        i = 0
-        while (i < MovieList.MOVIE_CATEGORY.size) {
-            if (i != 0) {
-                Collections.shuffle(data)
-            }
-            val listRowAdapter = ArrayObjectAdapter(cardPresenter)
-            for (j in data.indices) {
-                listRowAdapter.add(data[j])
-            }
-            val header = HeaderItem(i.toLong(), MovieList.MOVIE_CATEGORY[i])
-            mCategoryRowAdapter!!.add(ListRow(header, listRowAdapter))
-            i++
+    /**
+     * Swaps the partial first row for a view over the parsed catalog, keeping the card in focus,
+     * so that a paged row only holds the pages around that card like the other rows.
+     */
+    private fun replacePartialRow(data: List<Movie?>) {
+        val listRowAdapter = newRowAdapter(data, null)
+        if (listRowAdapter is PagedRowAdapter) {
+            listRowAdapter.setSelectedPosition(mPartialRowSelectedPosition)
+        }
+        val header = HeaderItem(0, MovieList.MOVIE_CATEGORY[0])
+        mCategoryRowAdapter!!.replace(0, ListRow(header, listRowAdapter))
+        mPartialRowAdapter = null
+        if (selectedPosition == 0) {
+            // Rebinding the row to another adapter moves its focus back to the first card.
+            val selectItem = ListRowPresenter.SelectItemViewHolderTask(mPartialRowSelectedPosition)
+            selectItem.isSmoothScroll = false
+            setSelectedPosition(0, false, selectItem)
         }
     }
 
     override fun onLoaderReset(loader: Loader<List<Movie?>>) {
+        mPartialRowAdapter = null
         mCategoryRowAdapter!!.clear()
     }
 
+    /**
+     * Shows the first row as soon as the first category of a downloading catalog is parsed and
+     * appends each further category to it, instead of waiting for the complete catalog.
+     */
+    private inner class CategoryParsedListener : MovieList.OnCategoryParsedListener {
+        override fun onCategoryParsed(name: String?, movies: List<Movie>) {
+            trace("MainFragment.appendCategory") {
+                val partialRowAdapter = mPartialRowAdapter
+                        ?: ArrayObjectAdapter(mCardPresenter).also {
+                            mCategoryRowAdapter!!.clear()
+                            mPartialRowSelectedPosition = 0
+                            val header = HeaderItem(0, MovieList.MOVIE_CATEGORY[0])
+                            mCategoryRowAdapter!!.add(ListRow(header, it))
+                            mPartialRowAdapter = it
+                        }
+                partialRowAdapter.addAll(partialRowAdapter.size(), movies)
+            }
+        }
+    }
+
     private inner class ItemViewClickedListener : OnItemViewClickedListener {
         override fun onItemClicked(itemViewHolder: Presenter.ViewHolder, item: Any,
                                    rowViewHolder: RowPresenter.ViewHolder, row: Row) {
             if (item is Movie) {
-                Log.d(TAG, "Item: $item")
+                if (DebugLog.ENABLED) {
+                    Log.d(TAG, "Item: $item")
+                }
                 val intent = Intent(activity, PlaybackActivity::class.java)
                 intent.putExtra(MainActivity.MOVIE, item)
                 startActivity(intent)
@@ -163,21 +228,26 @@ class MainFragment : BrowseFragment(), LoaderManager.LoaderCallbacks<List<Movie?
                 item: Any?,
                 rowViewHolder: RowPresenter.ViewHolder?,
                 row: Row?) {
-            if (item is Movie) {
-                mBackgroundUri = item.backgroundImageUrl
-                startBackgroundTimer()
+            if (row is ListRow) {
+                val position = (rowViewHolder as ListRowPresenter.ViewHolder).selectedPosition
+                val adapter = row.adapter
+                if (adapter is PagedRowAdapter) {
+                    adapter.setSelectedPosition(position)
+                } else if (adapter === mPartialRowAdapter) {
+                    mPartialRowSelectedPosition = position
+                }
+                // BrowseFragment has already moved its selected row to the one holding the item.
+                mCardImagePrefetcher!!.onItemSelected(
+                        mCategoryRowAdapter!!, selectedPosition, row, position)
+                mBackgroundArtController!!.onItemSelected(row.adapter, position)
             }
         }
     }
 
-    private inner class UpdateBackgroundTask : TimerTask() {
-        override fun run() {
-            mHandler.post { updateBackground(mBackgroundUri) }
-        }
-    }
-
     companion object {
         private const val TAG = "MainFragment"
-        private const val BACKGROUND_UPDATE_DELAY = 300
+        private const val ROWS_ON_SCREEN = 3
+        // Rows of up to this many cards are bound straight from the catalog rather than paged.
+        private const val MAX_UNPAGED_ROW_SIZE = 4 * PagedRowAdapter.PAGE_SIZE
     }
 }
\ No newline at end of file
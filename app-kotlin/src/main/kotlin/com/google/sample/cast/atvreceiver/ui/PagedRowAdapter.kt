@@ -0,0 +1,145 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.ui
+
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+import android.util.SparseArray
+import android.util.SparseBooleanArray
+import androidx.leanback.widget.Presenter
+import com.google.sample.cast.atvreceiver.data.Movie
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
+/**
+ * Row adapter for very large rows. Only the pages around the focused position are held in memory
+ * and they are read from the catalog on a background thread, so neither building a row nor
+ * scrolling through it decodes movies on the UI thread. Items of pages that have not been loaded
+ * yet are `null`, which the presenter shows as placeholders.
+ *
+ * The row grows a page at a time as focus approaches its end, using
+ * [notifyItemRangeInserted] rather than rebuilding the row.
+ */
+class PagedRowAdapter internal constructor(
+        presenter: Presenter,
+        catalog: List<Movie?>,
+        order: IntArray?,
+        private val mExecutor: Executor) : CatalogRowAdapter(presenter, catalog, order) {
+    private val mHandler = Handler(Looper.getMainLooper())
+    private val mPages = SparseArray<Array<Movie?>>()
+    private val mPendingPages = SparseBooleanArray()
+    private var mRevealed: Int
+    private var mFocusedPage = 0
+
+    init {
+        mRevealed = Math.min((1 + PREFETCH_PAGES) * PAGE_SIZE, super.size())
+        requestPages(0)
+    }
+
+    /** Loads pages on the thread shared by all rows.  */
+    constructor(presenter: Presenter, catalog: List<Movie?>, order: IntArray?)
+            : this(presenter, catalog, order, sExecutor)
+
+    override fun size(): Int {
+        return mRevealed
+    }
+
+    /** Returns the movie at `position`, or `null` while its page is being loaded.  */
+    override fun get(position: Int): Any? {
+        val page = position / PAGE_SIZE
+        val movies = mPages[page]
+        if (movies == null) {
+            requestPage(page)
+            return null
+        }
+        return movies[position % PAGE_SIZE]
+    }
+
+    /**
+     * Moves the window of loaded pages to the one holding `position`, revealing the next
+     * page of the row if focus has come close to its end.
+     */
+    fun setSelectedPosition(position: Int) {
+        mFocusedPage = position / PAGE_SIZE
+        val revealed = Math.min((mFocusedPage + 1 + PREFETCH_PAGES) * PAGE_SIZE, super.size())
+        if (revealed > mRevealed) {
+            val start = mRevealed
+            mRevealed = revealed
+            notifyItemRangeInserted(start, revealed - start)
+        }
+        for (i in mPages.size() - 1 downTo 0) {
+            if (Math.abs(mPages.keyAt(i) - mFocusedPage) > RETAINED_PAGES) {
+                mPages.removeAt(i)
+            }
+        }
+        requestPages(mFocusedPage)
+    }
+
+    private fun requestPages(focusedPage: Int) {
+        requestPage(focusedPage)
+        for (i in 1..PREFETCH_PAGES) {
+            requestPage(focusedPage + i)
+            requestPage(focusedPage - i)
+        }
+    }
+
+    private fun requestPage(page: Int) {
+        val start = page * PAGE_SIZE
+        if (page < 0 || start >= mRevealed || mPages[page] != null || mPendingPages[page]) {
+            return
+        }
+        mPendingPages.put(page, true)
+        val count = Math.min(PAGE_SIZE, super.size() - start)
+        mExecutor.execute {
+            val movies = try {
+                Array(count) { loadItem(start + it) }
+            } catch (e: RuntimeException) {
+                Log.e(TAG, "Failed to load page $page", e)
+                null
+            }
+            mHandler.post { onPageLoaded(page, movies) }
+        }
+    }
+
+    private fun loadItem(position: Int): Movie? {
+        return super.get(position) as Movie?
+    }
+
+    private fun onPageLoaded(page: Int, movies: Array<Movie?>?) {
+        mPendingPages.delete(page)
+        if (movies == null || Math.abs(page - mFocusedPage) > RETAINED_PAGES) {
+            // Focus has moved on; the page is loaded again if it comes back into view.
+            return
+        }
+        mPages.put(page, movies)
+        notifyItemRangeChanged(page * PAGE_SIZE, movies.size)
+    }
+
+    companion object {
+        private const val TAG = "PagedRowAdapter"
+        internal const val PAGE_SIZE = 50
+
+        // Pages loaded on either side of the focused one.
+        private const val PREFETCH_PAGES = 1
+
+        // Pages further than this from the focused one are dropped.
+        private const val RETAINED_PAGES = 3
+
+        // A single thread, shared by all rows, so that loading pages never competes with itself.
+        private val sExecutor: Executor = Executors.newSingleThreadExecutor()
+    }
+}
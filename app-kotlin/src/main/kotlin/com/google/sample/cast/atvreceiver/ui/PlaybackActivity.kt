@@ -18,6 +18,7 @@ package com.google.sample.cast.atvreceiver.ui
 import android.R
 import androidx.fragment.app.FragmentActivity
 import android.os.Bundle
+import android.os.SystemClock
 import android.content.Intent
 import com.google.android.gms.cast.tv.CastReceiverContext
 
@@ -27,18 +28,36 @@ import com.google.android.gms.cast.tv.CastReceiverContext
 class PlaybackActivity : FragmentActivity() {
     private var playbackVideoFragment: PlaybackVideoFragment? = null
     public override fun onCreate(savedInstanceState: Bundle?) {
+        // Taken first, so that the reported LOAD latency includes starting the activity.
+        val createdRealtimeMs = SystemClock.elapsedRealtime()
         super.onCreate(savedInstanceState)
-        playbackVideoFragment = PlaybackVideoFragment()
         if (savedInstanceState == null) {
+            val fragment = PlaybackVideoFragment()
+            fragment.setIntentRealtimeMs(createdRealtimeMs)
+            playbackVideoFragment = fragment
+            // Committed right away rather than on the next frame, so that the fragment handles
+            // the intent and starts preparing the media from within this onCreate().
             supportFragmentManager
                     .beginTransaction()
-                    .replace(R.id.content, playbackVideoFragment!!)
-                    .commit()
+                    .replace(R.id.content, fragment)
+                    .commitNow()
+        } else {
+            playbackVideoFragment =
+                    supportFragmentManager.findFragmentById(R.id.content) as PlaybackVideoFragment?
         }
     }
 
     override fun onNewIntent(intent: Intent) {
         super.onNewIntent(intent)
+        // A fragment that starts its session again in onStart() handles the activity's intent,
+        // which must then be this one rather than the one the activity was created with.
+        setIntent(intent)
+        val fragment = playbackVideoFragment!!
+        fragment.setIntentRealtimeMs(SystemClock.elapsedRealtime())
+        if (!fragment.isSessionStarted) {
+            // The activity is stopped and the fragment has handed back its player.
+            return
+        }
         val mediaManager = CastReceiverContext.getInstance().mediaManager
         if (mediaManager.onNewIntent(intent)) {
             // If the SDK recognizes the intent, you should early return.
@@ -47,6 +66,6 @@ class PlaybackActivity : FragmentActivity() {
 
         // If the SDK doesn’t recognize the intent, you can handle the intent with
         // your own logic.
-        playbackVideoFragment!!.processIntent(intent)
+        fragment.processIntent(intent)
     }
 }
\ No newline at end of file
@@ -16,8 +16,12 @@
 package com.google.sample.cast.atvreceiver.ui
 
 import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
 import android.content.Intent
 import android.net.Uri
+import androidx.core.os.trace
 import com.google.android.gms.cast.tv.media.MediaManager
 import com.google.android.gms.cast.tv.CastReceiverContext
 import androidx.leanback.app.VideoSupportFragment
@@ -25,6 +29,11 @@ import android.support.v4.media.session.MediaSessionCompat
 import com.google.android.exoplayer2.ext.mediasession.MediaSessionConnector
 import com.google.android.exoplayer2.Player
 import com.google.android.exoplayer2.ext.leanback.LeanbackPlayerAdapter
+import com.google.sample.cast.atvreceiver.DebugLog
+import com.google.sample.cast.atvreceiver.player.PlayerHolder
+import com.google.sample.cast.atvreceiver.player.PlaylistWindow
+import com.google.sample.cast.atvreceiver.player.ProgressUpdateScheduler
+import com.google.sample.cast.atvreceiver.player.SeekThumbnailProvider
 import com.google.sample.cast.atvreceiver.player.VideoPlayerGlue
 import com.google.android.gms.cast.tv.media.MediaManager.MediaStatusInterceptor
 import org.json.JSONObject
@@ -33,12 +42,11 @@ import com.google.android.exoplayer2.ext.mediasession.TimelineQueueNavigator
 import android.support.v4.media.MediaDescriptionCompat
 import android.util.Log
 import androidx.leanback.app.VideoSupportFragmentGlueHost
-import com.google.android.exoplayer2.SimpleExoPlayer
 import androidx.leanback.widget.PlaybackControlsRow
 import com.google.sample.cast.atvreceiver.data.MovieList
 import android.widget.Toast
+import com.google.android.exoplayer2.C
 import com.google.android.exoplayer2.MediaItem
-import com.google.android.exoplayer2.MediaMetadata
 import com.google.android.gms.cast.tv.media.MediaInfoWriter
 import com.google.android.gms.common.images.WebImage
 import com.google.android.gms.cast.tv.media.MediaLoadCommandCallback
@@ -48,32 +56,89 @@ import com.google.android.gms.cast.tv.media.MediaException
 import com.google.android.gms.cast.MediaError
 import com.google.android.gms.cast.MediaError.DetailedErrorCode
 import com.google.android.gms.tasks.Task
+import com.google.android.gms.tasks.TaskCompletionSource
+import com.google.android.gms.tasks.TaskExecutors
 import com.google.sample.cast.atvreceiver.data.Movie
-import java.util.ArrayList
-import java.util.function.Consumer
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
 
 /**
  * Handles video playback with media controls.
  */
 class PlaybackVideoFragment : VideoSupportFragment() {
+    private var mPlayerHolder: PlayerHolder? = null
     private var mMediaSession: MediaSessionCompat? = null
     private var mMediaSessionConnector: MediaSessionConnector? = null
     private var mPlayer: Player? = null
     private var mPlayerAdapter: LeanbackPlayerAdapter? = null
     private var mPlayerGlue: VideoPlayerGlue? = null
+    private var mProgressUpdateScheduler: ProgressUpdateScheduler? = null
+    private var mSeekThumbnailProvider: SeekThumbnailProvider? = null
     private var mPlaylistActionListener: PlaylistActionListener? = null
+    private var mPlaylistWindow: PlaylistWindow? = null
+    private val mPlayerListener: Player.Listener = object : Player.Listener {
+        override fun onMediaItemTransition(mediaItem: MediaItem?, reason: Int) {
+            var title: CharSequence? = ""
+            var subtitle: CharSequence? = ""
+            var seekThumbnailsUrl: String? = null
+            if (mediaItem != null) {
+                // mediaIem is null if player has been stopped or
+                // all media items have been removed from the playlist
+                title = mediaItem.mediaMetadata.title
+                subtitle = mediaItem.mediaMetadata.subtitle
+                seekThumbnailsUrl = (mediaItem.localConfiguration?.tag as? Movie)?.seekThumbnailsUrl
+            }
+            mMediaManager!!.mediaStatusModifier.clear()
+            mPlayerGlue!!.title = title
+            mPlayerGlue!!.subtitle = subtitle
+            setSeekThumbnailProvider(SeekThumbnailProvider(seekThumbnailsUrl))
+        }
+    }
     private var mMediaManager: MediaManager? = null
+    private var mIntentRealtimeMs = C.TIME_UNSET
+    private var mCurrentLoad: LoadOperation? = null
+    private var mLastLoadRealtimeMs = C.TIME_UNSET
+    private val mHandler = Handler(Looper.getMainLooper())
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
-        Log.d(LOG_TAG, "onCreate")
-        mMediaSession = MediaSessionCompat(requireContext(), LOG_TAG)
-        mMediaSessionConnector = MediaSessionConnector(mMediaSession!!)
-        initializePlayer()
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onCreate")
+        }
+        mPlayerHolder = PlayerHolder.getInstance(requireContext())
+        // Started here rather than in onStart(), so that the media is already being prepared
+        // while the activity inflates the views.
+        startSession()
     }
 
     override fun onStart() {
         super.onStart()
-        Log.d(LOG_TAG, "onStart")
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onStart")
+        }
+        if (mPlayer == null) {
+            // The player was handed back when the fragment stopped.
+            startSession()
+        }
+    }
+
+    /**
+     * Records when the activity received the intent about to be handled, as given by
+     * [SystemClock.elapsedRealtime]. Used to report the latency of loads, whether they come from
+     * Cast LOAD requests or from titles chosen in the app.
+     */
+    fun setIntentRealtimeMs(realtimeMs: Long) {
+        mIntentRealtimeMs = realtimeMs
+    }
+
+    /**
+     * Whether the fragment holds the player and handles intents itself. If it does not, it
+     * handles the activity's intent once it is started again.
+     */
+    val isSessionStarted: Boolean
+        get() = mPlayer != null
+
+    private fun startSession() {
+        initializePlayer()
         mMediaManager = CastReceiverContext.getInstance().mediaManager
         mMediaManager?.setSessionCompatToken(mMediaSession!!.sessionToken)
         mMediaManager?.setMediaLoadCommandCallback(MyMediaLoadCommandCallback())
@@ -84,7 +149,6 @@ class PlaybackVideoFragment : VideoSupportFragment() {
                 e.printStackTrace()
             }
         })
-        initializePlayer()
         mMediaSessionConnector!!.setPlayer(mPlayer)
         val timelineQueueNavigator: TimelineQueueNavigator = object : TimelineQueueNavigator(mMediaSession!!) {
             override fun getMediaDescription(player: Player, windowIndex: Int): MediaDescriptionCompat {
@@ -111,12 +175,16 @@ class PlaybackVideoFragment : VideoSupportFragment() {
 
     override fun onResume() {
         super.onResume()
-        Log.d(LOG_TAG, "onResume")
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onResume")
+        }
     }
 
     override fun onPause() {
         super.onPause()
-        Log.d(LOG_TAG, "onPause")
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onPause")
+        }
         if (mPlayerGlue != null && mPlayerGlue!!.isPlaying) {
             mPlayerGlue!!.pause()
         }
@@ -124,25 +192,44 @@ class PlaybackVideoFragment : VideoSupportFragment() {
 
     override fun onStop() {
         super.onStop()
-        Log.d(LOG_TAG, "onStop")
-        mMediaSessionConnector!!.setPlayer(null)
-        mMediaSession!!.isActive = false
-        mMediaSession!!.release()
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onStop")
+        }
         mMediaManager!!.setSessionCompatToken(null)
+        mCurrentLoad?.cancel()
+        mCurrentLoad = null
         releasePlayer()
     }
 
+    override fun showControlsOverlay(runAnimation: Boolean) {
+        super.showControlsOverlay(runAnimation)
+        mProgressUpdateScheduler?.setControlsVisible(true)
+    }
+
+    override fun hideControlsOverlay(runAnimation: Boolean) {
+        super.hideControlsOverlay(runAnimation)
+        mProgressUpdateScheduler?.setControlsVisible(false)
+    }
+
     public override fun onError(errorCode: Int, errorMessage: CharSequence) {
-        Log.d(LOG_TAG, "onError")
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "onError")
+        }
         logAndDisplay(errorMessage.toString())
         requireActivity().finish()
     }
 
     fun processIntent(intent: Intent) {
-        Log.d(LOG_TAG, "processIntent()")
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "processIntent()")
+        }
         if (intent.hasExtra(MainActivity.MOVIE)) {
             // Intent came from MainActivity (User chose an item inside ATV app).
             val movie = intent.getSerializableExtra(MainActivity.MOVIE) as Movie?
+            mPlayerHolder!!.playbackMetrics.onLoadStarted(
+                    if (mIntentRealtimeMs != C.TIME_UNSET) mIntentRealtimeMs
+                    else SystemClock.elapsedRealtime())
+            mIntentRealtimeMs = C.TIME_UNSET
             startPlayback(movie, 0)
         } else {
             logAndDisplay("Null or unrecognized intent action")
@@ -152,75 +239,87 @@ class PlaybackVideoFragment : VideoSupportFragment() {
 
     private fun initializePlayer() {
         if (mPlayer == null) {
-            Log.d(LOG_TAG, "initializePlayer")
+            if (DebugLog.ENABLED) {
+                Log.d(LOG_TAG, "initializePlayer")
+            }
             val glueHost = VideoSupportFragmentGlueHost(this@PlaybackVideoFragment)
-            mPlayer = SimpleExoPlayer.Builder(requireContext()).build()
-            mPlayerAdapter = LeanbackPlayerAdapter(requireContext(), mPlayer!!, UPDATE_DELAY)
+            val holder = mPlayerHolder!!
+            val player = holder.acquirePlayer()
+            mPlayer = player
+            mMediaSession = holder.mediaSession
+            mMediaSessionConnector = holder.mediaSessionConnector
+            mPlaylistWindow = holder.playlistWindow
+            mPlayerAdapter = LeanbackPlayerAdapter(
+                    requireContext(), mPlayer!!, ProgressUpdateScheduler.HIDDEN_UPDATE_MS)
             mPlayerAdapter!!.setRepeatAction(PlaybackControlsRow.RepeatAction.INDEX_NONE)
             mPlaylistActionListener = PlaylistActionListener()
-            mPlayerGlue = VideoPlayerGlue(context, mPlayerAdapter, mPlaylistActionListener!!)
+            mPlayerGlue = VideoPlayerGlue(
+                    context, mPlayerAdapter, player, mPlaylistActionListener!!)
             mPlayerGlue!!.host = glueHost
             mPlayerGlue!!.isSeekEnabled = true
-            mPlayer?.addListener(object : Player.Listener {
-                override fun onMediaItemTransition(mediaItem: MediaItem?, reason: Int) {
-                    var title: CharSequence? = ""
-                    var subtitle: CharSequence? = ""
-                    if (mediaItem != null) {
-                        // mediaIem is null if player has been stopped or
-                        // all media items have been removed from the playlist
-                        title = mediaItem.mediaMetadata.title
-                        subtitle = mediaItem.mediaMetadata.subtitle
-                    }
-                    mMediaManager!!.mediaStatusModifier.clear()
-                    mPlayerGlue!!.title = title
-                    mPlayerGlue!!.subtitle = subtitle
-                }
-            })
+            mProgressUpdateScheduler = ProgressUpdateScheduler(mPlayerAdapter!!, mPlayer!!)
+            mProgressUpdateScheduler!!.setControlsVisible(isControlsOverlayVisible)
+            setSeekThumbnailProvider(SeekThumbnailProvider(null))
+            mPlayer!!.addListener(mPlayerListener)
         }
     }
 
     private fun releasePlayer() {
         if (mPlayer != null) {
-            Log.d(LOG_TAG, "releasePlayer")
-            mPlayer!!.release()
+            if (DebugLog.ENABLED) {
+                Log.d(LOG_TAG, "releasePlayer")
+            }
+            // The player outlives this fragment, so nothing of the fragment may stay attached.
+            mPlayer!!.removeListener(mPlayerListener)
+            mProgressUpdateScheduler!!.release()
+            setSeekThumbnailProvider(null)
+            if (DebugLog.ENABLED) {
+                Log.d(LOG_TAG, "Progress updates: " + mPlayerGlue!!.progressUpdateCount)
+            }
+            mPlayerGlue!!.host = null
+            mPlayerHolder!!.returnPlayer()
             mPlayer = null
             mPlayerAdapter = null
+            mPlayerGlue = null
+            mProgressUpdateScheduler = null
+            mPlaylistWindow = null
+            mMediaSession = null
+            mMediaSessionConnector = null
         }
     }
 
+    /**
+     * Makes `provider` serve the seek previews of the current item, which also makes the player
+     * only seek once the user stops scrubbing, and releases the previous one.
+     */
+    private fun setSeekThumbnailProvider(provider: SeekThumbnailProvider?) {
+        mSeekThumbnailProvider?.release()
+        mSeekThumbnailProvider = provider
+        mPlayerGlue!!.seekProvider = provider
+    }
+
     private fun startPlayback(movie: Movie?, startPosition: Long) {
-        val mediaItems: MutableList<MediaItem> = ArrayList()
-        val firstMediaItem = MediaItem.Builder()
-                .setUri(movie!!.videoUrl)
-                .setMediaMetadata(
-                        MediaMetadata.Builder()
-                                .setArtworkUri(Uri.parse(movie.cardImageUrl))
-                                .setTitle(movie.title)
-                                .setSubtitle(movie.description)
-                                .build()
-                ).build()
-        mediaItems.add(firstMediaItem)
-        MovieList.getList()!!.forEach(Consumer { movieItem: Movie ->
-            mediaItems.add(MediaItem.Builder()
-                    .setUri(movieItem.videoUrl)
-                    .setMediaMetadata(
-                            MediaMetadata.Builder()
-                                    .setArtworkUri(Uri.parse(movieItem.cardImageUrl))
-                                    .setTitle(movieItem.title)
-                                    .setSubtitle(movieItem.description)
-                                    .build()
-                    ).build()
-            )
-        })
-        mPlayer!!.setMediaItems(mediaItems)
-        mPlayer!!.prepare()
-        mPlayerGlue!!.playWhenPrepared()
-        mPlayerGlue!!.seekTo(startPosition)
-        mMediaManager!!.mediaStatusModifier.clear()
+        startPlayback(PlaylistWindow.Playlist(movie, MovieList.getList()), startPosition)
+    }
+
+    private fun startPlayback(playlist: PlaylistWindow.Playlist, startPosition: Long) {
+        trace("PlaybackVideoFragment.startPlayback") {
+            mPlaylistWindow!!.setPlaylist(playlist)
+            mPlayer!!.prepare()
+            mPlayerGlue!!.playWhenPrepared()
+            mPlayerGlue!!.seekTo(startPosition)
+            mMediaManager!!.mediaStatusModifier.clear()
+        }
+    }
+
+    private fun delay(delayMs: Long): Task<Void?> {
+        val source = TaskCompletionSource<Void?>()
+        mHandler.postDelayed({ source.trySetResult(null) }, delayMs)
+        return source.task
     }
 
     private fun logAndDisplay(error: String) {
-        Log.d(LOG_TAG, error)
+        Log.w(LOG_TAG, error)
         Toast.makeText(activity, error, Toast.LENGTH_SHORT).show()
     }
 
@@ -234,67 +333,164 @@ class PlaybackVideoFragment : VideoSupportFragment() {
         }
     }
 
+    @Throws(MediaException::class)
     private fun myFillMediaInfo(mediaInfoWriter: MediaInfoWriter) {
         val mediaInfo = mediaInfoWriter.mediaInfo
-        Log.d(LOG_TAG, "***Type:" + mediaInfo.contentType)
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "***Type:" + mediaInfo.contentType)
+        }
         if (mediaInfo.contentUrl == null && mediaInfo.entity != null) {
             // Load By Entity
             val entity = mediaInfo.entity
             val movieMetadata = com.google.android.gms.cast.MediaMetadata(com.google.android.gms.cast.MediaMetadata.MEDIA_TYPE_MOVIE)
-            val movie = entity?.let { convertEntityToMovie(it) }
-            if(movie!=null) {
-                movie.title?.let {
-                    movieMetadata.putString(com.google.android.gms.cast.MediaMetadata.KEY_TITLE, it)
-                }
-                movie.description?.let {
-                    movieMetadata.putString(com.google.android.gms.cast.MediaMetadata.KEY_SUBTITLE, it)
-                }
-                movie.studio?.let {
-                    movieMetadata.putString(com.google.android.gms.cast.MediaMetadata.KEY_STUDIO, it)
-                }
-                movie.cardImageUrl?.let {
-                    movieMetadata.addImage(WebImage(Uri.parse(it)))
-                }
-                movie.backgroundImageUrl?.let {
-                    movieMetadata.addImage(WebImage(Uri.parse(it)))
-                }
-                movie.videoUrl?.let {
-                    mediaInfoWriter.setContentUrl(it).setMetadata(movieMetadata)
-                }
+            val movie = convertEntityToMovie(entity)
+            movie.title?.let {
+                movieMetadata.putString(com.google.android.gms.cast.MediaMetadata.KEY_TITLE, it)
+            }
+            movie.description?.let {
+                movieMetadata.putString(com.google.android.gms.cast.MediaMetadata.KEY_SUBTITLE, it)
+            }
+            movie.studio?.let {
+                movieMetadata.putString(com.google.android.gms.cast.MediaMetadata.KEY_STUDIO, it)
+            }
+            movie.cardImageUrl?.let {
+                movieMetadata.addImage(WebImage(Uri.parse(it)))
+            }
+            movie.backgroundImageUrl?.let {
+                movieMetadata.addImage(WebImage(Uri.parse(it)))
+            }
+            movie.videoUrl?.let {
+                mediaInfoWriter.setContentUrl(it).setMetadata(movieMetadata)
             }
         }
     }
 
     internal inner class MyMediaLoadCommandCallback : MediaLoadCommandCallback() {
-        override fun onLoad(senderId: String?, loadRequestData: MediaLoadRequestData): Task<MediaLoadRequestData> {
-            Toast.makeText(activity, "onLoad()", Toast.LENGTH_SHORT).show()
-            return if (loadRequestData == null) {
+        override fun onLoad(senderId: String?, loadRequestData: MediaLoadRequestData?): Task<MediaLoadRequestData> {
+            if (DebugLog.ENABLED) {
+                Log.d(LOG_TAG, "onLoad()")
+            }
+            if (loadRequestData == null) {
                 // Throw MediaException to indicate load failure.
-                Tasks.forException(MediaException(
-                        MediaError.Builder()
-                                .setDetailedErrorCode(DetailedErrorCode.LOAD_FAILED)
-                                .setReason(MediaError.ERROR_REASON_INVALID_REQUEST)
-                                .build()))
-            } else Tasks.call {
+                return Tasks.forException(newLoadFailedException(MediaError.ERROR_REASON_INVALID_REQUEST))
+            }
+            val now = SystemClock.elapsedRealtime()
+            mPlayerHolder!!.playbackMetrics.onLoadStarted(
+                    if (mIntentRealtimeMs != C.TIME_UNSET) mIntentRealtimeMs else now)
+            mIntentRealtimeMs = C.TIME_UNSET
+
+            // A newer LOAD replaces whatever an older one has not finished yet. Within a burst of
+            // LOADs, the media of the older one is also stopped, and the newer one waits for the
+            // burst to settle, so that only the last of them is prepared and broadcast.
+            val inBurst = mLastLoadRealtimeMs != C.TIME_UNSET
+                    && now - mLastLoadRealtimeMs < LOAD_COALESCING_WINDOW_MS
+            mLastLoadRealtimeMs = now
+            mCurrentLoad?.cancel()
+            if (inBurst) {
+                mPlayer?.stop()
+            }
+            val load = LoadOperation(loadRequestData)
+            mCurrentLoad = load
+            val catalog = MovieList.getList()
 
-                // Resolve the entity into your data structure and load media.
-                myFillMediaInfo(MediaInfoWriter(loadRequestData!!.mediaInfo!!))
-                startPlayback(convertLoadRequestToMovie(loadRequestData), 0)
+            val settled: Task<Void?> =
+                    if (inBurst) delay(LOAD_COALESCING_WINDOW_MS) else Tasks.forResult(null)
+            settled.onSuccessTask(sLoadExecutor) {
+                if (load.isCanceled) {
+                    return@onSuccessTask Tasks.forResult<PlaylistWindow.Playlist?>(null)
+                }
+                // Resolve the entity into your data structure and build the media items.
+                myFillMediaInfo(MediaInfoWriter(loadRequestData.mediaInfo!!))
+                Tasks.forResult<PlaylistWindow.Playlist?>(PlaylistWindow.Playlist(
+                        convertLoadRequestToMovie(loadRequestData), catalog))
+            }.addOnCompleteListener(TaskExecutors.MAIN_THREAD) { task ->
+                // Only the final handoff to the player and the media manager is on the main
+                // thread.
+                if (load.isCanceled) {
+                    return@addOnCompleteListener
+                }
+                if (mCurrentLoad === load) {
+                    mCurrentLoad = null
+                }
+                if (!task.isSuccessful) {
+                    load.fail(task.exception!!)
+                    return@addOnCompleteListener
+                }
+                if (mPlayer == null) {
+                    // The fragment stopped while the load was being resolved.
+                    load.cancel()
+                    return@addOnCompleteListener
+                }
+                startPlayback(task.result!!, 0)
 
                 // Update media metadata and state (this clears all previous status
                 // overrides).
                 mMediaManager!!.setDataFromLoad(loadRequestData)
                 mMediaManager!!.broadcastMediaStatus()
-                loadRequestData
+                load.succeed()
             }
+            return load.task
+        }
+    }
+
+    /**
+     * A LOAD being resolved in the background. A newer LOAD cancels it, which answers it as
+     * interrupted right away and makes the pipeline drop it at its next step.
+     */
+    private class LoadOperation(private val mRequest: MediaLoadRequestData) {
+        private val mResult = TaskCompletionSource<MediaLoadRequestData>()
+
+        @Volatile
+        var isCanceled = false
+            private set
+
+        val task: Task<MediaLoadRequestData>
+            get() = mResult.task
+
+        fun cancel() {
+            isCanceled = true
+            mResult.trySetException(newLoadInterruptedException(mRequest.requestId))
+        }
+
+        fun fail(e: Exception) {
+            mResult.trySetException(e)
+        }
+
+        fun succeed() {
+            mResult.trySetResult(mRequest)
         }
     }
 
     companion object {
         private const val LOG_TAG = "PlaybackVideoFragment"
-        private const val UPDATE_DELAY = 16
-        private fun convertEntityToMovie(entity: String): Movie {
-            return MovieList.getList()!![0]
+
+        // Resolves LOADs one at a time, so that a burst of them does not contend for the catalog.
+        private val sLoadExecutor: Executor = Executors.newSingleThreadExecutor()
+
+        // LOADs closer together than this are a burst, of which only the last is played.
+        private const val LOAD_COALESCING_WINDOW_MS = 500L
+
+        @Throws(MediaException::class)
+        private fun convertEntityToMovie(entity: String?): Movie {
+            return MovieList.getIndex()?.find(entity)
+                    ?: throw newLoadFailedException(MediaError.ERROR_REASON_INVALID_PARAMS)
+        }
+
+        private fun newLoadFailedException(reason: String): MediaException {
+            return MediaException(
+                    MediaError.Builder()
+                            .setDetailedErrorCode(DetailedErrorCode.LOAD_FAILED)
+                            .setReason(reason)
+                            .build())
+        }
+
+        private fun newLoadInterruptedException(requestId: Long): MediaException {
+            return MediaException(
+                    MediaError.Builder()
+                            .setType(MediaError.ERROR_TYPE_LOAD_CANCELLED)
+                            .setDetailedErrorCode(DetailedErrorCode.LOAD_INTERRUPTED)
+                            .setRequestId(requestId)
+                            .build())
         }
 
         private fun convertLoadRequestToMovie(loadRequestData: MediaLoadRequestData?): Movie? {
@@ -306,13 +502,28 @@ class PlaybackVideoFragment : VideoSupportFragment() {
             if (mediaInfo.contentUrl != null) {
                 videoUrl = mediaInfo.contentUrl!!
             }
+
+            // A catalog movie carries more than the request does, such as its seek thumbnails.
+            val index = MovieList.getIndex()
+            if (index != null) {
+                val movie = index.find(mediaInfo.entity) ?: index.find(videoUrl)
+                if (movie != null) {
+                    return movie
+                }
+            }
+
             val metadata = mediaInfo.metadata
             val movie = Movie()
+            // Not a catalog id, so that the movie is not equal to any catalog movie.
+            movie.id = -1
             movie.videoUrl = videoUrl
             if (metadata != null) {
                 movie.title = metadata.getString(com.google.android.gms.cast.MediaMetadata.KEY_TITLE)
                 movie.description = metadata.getString(com.google.android.gms.cast.MediaMetadata.KEY_SUBTITLE)
-                movie.cardImageUrl = metadata.images[0].url.toString()
+                val images = metadata.images
+                if (images.isNotEmpty()) {
+                    movie.cardImageUrl = images[0].url.toString()
+                }
             }
             return movie
         }
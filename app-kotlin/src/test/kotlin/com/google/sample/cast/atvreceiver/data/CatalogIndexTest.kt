@@ -0,0 +1,92 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class CatalogIndexTest {
+    @get:Rule
+    val mFolder = TemporaryFolder()
+
+    private val mMovies = listOf(
+            newMovie(10, "https://example.com/a.mp4"),
+            newMovie(20, "https://example.com/b.mp4"),
+            newMovie(30, null))
+
+    @Test
+    fun indexOf_findsMoviesByIdAndByVideoUrl() {
+        val index = CatalogIndex(mMovies)
+
+        assertEquals(0, index.indexOf("10"))
+        assertEquals(1, index.indexOf("https://example.com/b.mp4"))
+        assertEquals(2, index.indexOf("30"))
+    }
+
+    @Test
+    fun indexOf_returnsMinusOneForUnknownEntities() {
+        val index = CatalogIndex(mMovies)
+
+        assertEquals(-1, index.indexOf("40"))
+        assertEquals(-1, index.indexOf("https://example.com/c.mp4"))
+        assertEquals(-1, index.indexOf(null))
+    }
+
+    @Test
+    fun indexOf_keepsTheFirstMovieOfASharedVideoUrl() {
+        val index = CatalogIndex(listOf(
+                newMovie(1, "https://example.com/a.mp4"),
+                newMovie(2, "https://example.com/a.mp4")))
+
+        assertEquals(0, index.indexOf("https://example.com/a.mp4"))
+        assertEquals(1, index.indexOf("2"))
+    }
+
+    @Test
+    fun find_returnsTheMovieAtTheIndexedPosition() {
+        val index = CatalogIndex(mMovies)
+
+        assertSame(mMovies[1], index.find("20"))
+        assertNull(index.find("40"))
+    }
+
+    @Test
+    fun indexOf_readsASnapshotWithoutChangingPositions() {
+        val file = mFolder.newFile()
+        CatalogSnapshot.write(file, mMovies)
+
+        val index = CatalogIndex(CatalogSnapshot.read(file)!!)
+
+        assertEquals(0, index.indexOf("https://example.com/a.mp4"))
+        assertEquals(1, index.indexOf("20"))
+        assertEquals(2, index.indexOf("30"))
+        assertEquals(20, index.find("https://example.com/b.mp4")!!.id)
+    }
+
+    private fun newMovie(id: Int, videoUrl: String?): Movie {
+        val movie = Movie()
+        movie.id = id
+        movie.videoUrl = videoUrl
+        return movie
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.io.DataOutputStream
+import java.io.FileOutputStream
+
+@RunWith(RobolectricTestRunner::class)
+class CatalogSnapshotTest {
+    @get:Rule
+    val mFolder = TemporaryFolder()
+
+    @Test
+    fun read_returnsTheMoviesThatWereWritten() {
+        val first = newMovie(1, "Big Buck Bunny", "Blender Foundation")
+        first.seekThumbnailsUrl = "https://example.com/bunny/thumbnails.vtt"
+        val second = newMovie(2, "Sintel été", "Blender Foundation")
+        val file = mFolder.newFile()
+
+        CatalogSnapshot.write(file, listOf(first, second))
+        val movies = CatalogSnapshot.read(file)!!
+
+        assertEquals(2, movies.size)
+        assertMovieEquals(first, movies[0])
+        assertMovieEquals(second, movies[1])
+    }
+
+    @Test
+    fun read_keepsMissingStringsNull() {
+        val movie = Movie()
+        movie.id = 7
+        val file = mFolder.newFile()
+
+        CatalogSnapshot.write(file, listOf(movie))
+        val read = CatalogSnapshot.read(file)!![0]
+
+        assertEquals(7, read.id)
+        assertNull(read.title)
+        assertNull(read.videoUrl)
+        assertNull(read.seekThumbnailsUrl)
+    }
+
+    @Test
+    fun read_emptyCatalog() {
+        val file = mFolder.newFile()
+
+        CatalogSnapshot.write(file, emptyList())
+
+        assertEquals(0, CatalogSnapshot.read(file)!!.size)
+    }
+
+    @Test
+    fun read_returnsNullForAnotherVersion() {
+        val file = mFolder.newFile()
+        DataOutputStream(FileOutputStream(file)).use { out ->
+            out.writeInt(0x43415453)
+            out.writeInt(1)
+            out.writeInt(0)
+            out.writeInt(0)
+        }
+
+        assertNull(CatalogSnapshot.read(file))
+    }
+
+    @Test
+    fun get_returnsTheSameInstanceUntilEvicted() {
+        val file = mFolder.newFile()
+        CatalogSnapshot.write(file, listOf(newMovie(1, "A", "S"), newMovie(2, "B", "S")))
+
+        val movies = CatalogSnapshot.read(file)!!
+
+        assertSame(movies[1], movies[1])
+    }
+
+    @Test
+    fun get_returnsAnEqualMovieOnceEvicted() {
+        val file = mFolder.newFile()
+        CatalogSnapshot.write(file, List(1000) { newMovie(it, "Movie $it", "S") })
+
+        val movies = CatalogSnapshot.read(file)!!
+        val first = movies[0]
+        for (movie in movies) {
+            assertEquals(movie.id, movie.hashCode())
+        }
+
+        assertNotSame(first, movies[0])
+        assertEquals(first, movies[0])
+        assertNotEquals(first, movies[1])
+    }
+
+    @Test
+    fun movieTable_readsSingleFieldsWithoutDecoding() {
+        val file = mFolder.newFile()
+        CatalogSnapshot.write(file, listOf(newMovie(1, "A", "S"), newMovie(42, "B", "S")))
+
+        val movies = CatalogSnapshot.read(file) as CatalogSnapshot.MovieTable
+
+        assertEquals(42, movies.getId(1))
+        assertEquals("https://example.com/42.mp4", movies.getVideoUrl(1))
+    }
+
+    @Test(expected = IndexOutOfBoundsException::class)
+    fun get_outOfBounds() {
+        val file = mFolder.newFile()
+        CatalogSnapshot.write(file, listOf(newMovie(1, "A", "S")))
+
+        CatalogSnapshot.read(file)!![1]
+    }
+
+    private fun newMovie(id: Int, title: String, studio: String): Movie {
+        val movie = Movie()
+        movie.id = id
+        movie.title = title
+        movie.description = "About $title"
+        movie.studio = studio
+        movie.videoUrl = "https://example.com/$id.mp4"
+        movie.cardImageUrl = "https://example.com/$id/card.jpg"
+        movie.backgroundImageUrl = "https://example.com/$id/background.jpg"
+        movie.duration = id * 60_000L
+        return movie
+    }
+
+    private fun assertMovieEquals(expected: Movie, actual: Movie) {
+        assertEquals(expected.id, actual.id)
+        assertEquals(expected.title, actual.title)
+        assertEquals(expected.description, actual.description)
+        assertEquals(expected.studio, actual.studio)
+        assertEquals(expected.videoUrl, actual.videoUrl)
+        assertEquals(expected.cardImageUrl, actual.cardImageUrl)
+        assertEquals(expected.backgroundImageUrl, actual.backgroundImageUrl)
+        assertEquals(expected.duration, actual.duration)
+        assertEquals(expected.seekThumbnailsUrl, actual.seekThumbnailsUrl)
+    }
+}
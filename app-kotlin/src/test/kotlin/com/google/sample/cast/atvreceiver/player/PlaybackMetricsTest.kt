@@ -0,0 +1,189 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import android.os.SystemClock
+import android.util.SparseArray
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.MediaItem
+import com.google.android.exoplayer2.Player
+import com.google.android.exoplayer2.Timeline
+import com.google.android.exoplayer2.analytics.AnalyticsListener.EventTime
+import com.google.android.exoplayer2.analytics.AnalyticsListener.Events
+import com.google.android.exoplayer2.util.FlagSet
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.shadows.ShadowSystemClock
+import java.time.Duration
+
+@RunWith(RobolectricTestRunner::class)
+class PlaybackMetricsTest {
+    private val mMetrics = PlaybackMetrics(BufferProfile.BALANCED)
+    private val mPlayer = mock(Player::class.java)
+    private val mEvents = Events(FlagSet.Builder().build(), SparseArray())
+
+    @Test
+    fun newMetrics_areEmpty() {
+        assertSame(BufferProfile.BALANCED, mMetrics.bufferProfile)
+        assertEquals(0, mMetrics.loadCount)
+        assertEquals(0, mMetrics.averageLoadToFirstFrameMs)
+        assertEquals(0, mMetrics.transitionCount)
+        assertEquals(0, mMetrics.averageTransitionStallMs)
+        assertEquals(0, mMetrics.rebufferCount)
+    }
+
+    @Test
+    fun onRenderedFirstFrame_measuresTheLoad() {
+        mMetrics.onLoadStarted(1000)
+        mMetrics.onRenderedFirstFrame(eventTime(1600), OUTPUT, 0)
+        mMetrics.onLoadStarted(5000)
+        mMetrics.onRenderedFirstFrame(eventTime(5200), OUTPUT, 0)
+
+        assertEquals(2, mMetrics.loadCount)
+        assertEquals(400, mMetrics.averageLoadToFirstFrameMs)
+    }
+
+    @Test
+    fun onRenderedFirstFrame_countsOnlyTheFirstFrameOfALoad() {
+        mMetrics.onLoadStarted(1000)
+        mMetrics.onRenderedFirstFrame(eventTime(1600), OUTPUT, 0)
+        mMetrics.onRenderedFirstFrame(eventTime(9000), OUTPUT, 0)
+
+        assertEquals(1, mMetrics.loadCount)
+        assertEquals(600, mMetrics.averageLoadToFirstFrameMs)
+    }
+
+    @Test
+    fun onPlayerReleased_keepsMeasuringAStartedLoad() {
+        mMetrics.onLoadStarted(1000)
+        mMetrics.onPlayerReleased()
+        mMetrics.onRenderedFirstFrame(eventTime(1300), OUTPUT, 0)
+
+        assertEquals(1, mMetrics.loadCount)
+        assertEquals(300, mMetrics.averageLoadToFirstFrameMs)
+    }
+
+    @Test
+    fun onPlaybackStateChanged_countsBufferingOnceReady() {
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING)
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_READY)
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING)
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING)
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_READY)
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING)
+
+        assertEquals(2, mMetrics.rebufferCount)
+    }
+
+    @Test
+    fun onPlaybackStateChanged_doesNotCountBufferingAfterASeek() {
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_READY)
+        mMetrics.onPositionDiscontinuity(
+                eventTime(0), POSITION, POSITION, Player.DISCONTINUITY_REASON_SEEK)
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING)
+
+        assertEquals(0, mMetrics.rebufferCount)
+    }
+
+    @Test
+    fun onPlaybackStateChanged_doesNotCountBufferingAfterATransition() {
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_READY)
+        mMetrics.onMediaItemTransition(
+                eventTime(0), MEDIA_ITEM, Player.MEDIA_ITEM_TRANSITION_REASON_AUTO)
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING)
+
+        assertEquals(0, mMetrics.rebufferCount)
+    }
+
+    @Test
+    fun onPlaybackStateChanged_doesNotCountBufferingAfterALoad() {
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_READY)
+        mMetrics.onLoadStarted(SystemClock.elapsedRealtime())
+        mMetrics.onPlaybackStateChanged(eventTime(0), Player.STATE_BUFFERING)
+
+        assertEquals(0, mMetrics.rebufferCount)
+    }
+
+    @Test
+    fun onEvents_measuresTheTransitionStallUntilPlaying() {
+        startTransition(Player.MEDIA_ITEM_TRANSITION_REASON_AUTO)
+        ShadowSystemClock.advanceBy(Duration.ofMillis(300))
+        onEvents(playWhenReady = true, isPlaying = false)
+        ShadowSystemClock.advanceBy(Duration.ofMillis(200))
+        onEvents(playWhenReady = true, isPlaying = true)
+
+        startTransition(Player.MEDIA_ITEM_TRANSITION_REASON_SEEK)
+        ShadowSystemClock.advanceBy(Duration.ofMillis(100))
+        onEvents(playWhenReady = true, isPlaying = true)
+
+        assertEquals(2, mMetrics.transitionCount)
+        assertEquals(300, mMetrics.averageTransitionStallMs)
+        assertEquals(500, mMetrics.maxTransitionStallMs)
+    }
+
+    @Test
+    fun onEvents_doesNotMeasureTransitionsWhilePaused() {
+        startTransition(Player.MEDIA_ITEM_TRANSITION_REASON_AUTO)
+        onEvents(playWhenReady = false, isPlaying = false)
+        onEvents(playWhenReady = true, isPlaying = true)
+
+        assertEquals(0, mMetrics.transitionCount)
+    }
+
+    @Test
+    fun onEvents_doesNotMeasurePlaylistChanges() {
+        startTransition(Player.MEDIA_ITEM_TRANSITION_REASON_PLAYLIST_CHANGED)
+        onEvents(playWhenReady = true, isPlaying = true)
+
+        assertEquals(0, mMetrics.transitionCount)
+    }
+
+    @Test
+    fun onPlayerReleased_dropsAPendingTransition() {
+        startTransition(Player.MEDIA_ITEM_TRANSITION_REASON_AUTO)
+        mMetrics.onPlayerReleased()
+        onEvents(playWhenReady = true, isPlaying = true)
+
+        assertEquals(0, mMetrics.transitionCount)
+    }
+
+    private fun startTransition(reason: Int) {
+        mMetrics.onMediaItemTransition(eventTime(SystemClock.elapsedRealtime()), MEDIA_ITEM, reason)
+    }
+
+    private fun onEvents(playWhenReady: Boolean, isPlaying: Boolean) {
+        `when`(mPlayer.playWhenReady).thenReturn(playWhenReady)
+        `when`(mPlayer.isPlaying).thenReturn(isPlaying)
+        mMetrics.onEvents(mPlayer, mEvents)
+    }
+
+    private fun eventTime(realtimeMs: Long): EventTime {
+        return EventTime(realtimeMs, Timeline.EMPTY, 0, null, 0, Timeline.EMPTY, 0, null, 0, 0)
+    }
+
+    companion object {
+        private val MEDIA_ITEM = MediaItem.fromUri("https://example.com/1.mp4")
+        private val POSITION = Player.PositionInfo(
+                null, 0, MEDIA_ITEM, null, 0, 0, 0, C.INDEX_UNSET, C.INDEX_UNSET)
+        // The surface that a first frame was rendered to, which the metrics do not look at.
+        private val OUTPUT = Any()
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import com.google.android.exoplayer2.MediaItem
+import com.google.android.exoplayer2.Player
+import com.google.sample.cast.atvreceiver.data.Movie
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.anyList
+import org.mockito.Mockito.doAnswer
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class PlaylistWindowTest {
+    // The player's timeline, kept by the mocked player.
+    private val mItems = ArrayList<MediaItem>()
+    private var mCurrentIndex = 0
+
+    private lateinit var mWindow: PlaylistWindow
+
+    @Before
+    fun setUp() {
+        val player = mock(Player::class.java)
+        doAnswer { invocation ->
+            mItems.clear()
+            mItems.addAll(invocation.getArgument<List<MediaItem>>(0))
+            mCurrentIndex = 0
+            null
+        }.`when`(player).setMediaItems(anyList())
+        doAnswer { invocation ->
+            mItems.addAll(invocation.getArgument<List<MediaItem>>(0))
+            null
+        }.`when`(player).addMediaItems(anyList())
+        doAnswer { invocation ->
+            val index = invocation.getArgument<Int>(0)
+            val items = invocation.getArgument<List<MediaItem>>(1)
+            mItems.addAll(index, items)
+            if (index <= mCurrentIndex) {
+                mCurrentIndex += items.size
+            }
+            null
+        }.`when`(player).addMediaItems(anyInt(), anyList())
+        doAnswer { invocation ->
+            val from = invocation.getArgument<Int>(0)
+            val to = invocation.getArgument<Int>(1)
+            mItems.subList(from, to).clear()
+            if (to <= mCurrentIndex) {
+                mCurrentIndex -= to - from
+            }
+            null
+        }.`when`(player).removeMediaItems(anyInt(), anyInt())
+        `when`(player.mediaItemCount).thenAnswer { mItems.size }
+        `when`(player.currentMediaItemIndex).thenAnswer { mCurrentIndex }
+        mWindow = PlaylistWindow(player)
+    }
+
+    @Test
+    fun setPlaylist_putsOnlyTheStartOfThePlaylistInTheTimeline() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(10))
+
+        assertEquals(11, mWindow.size())
+        assertEquals(listOf(0, 1, 2, 3), timeline())
+    }
+
+    @Test
+    fun setPlaylist_shortPlaylist() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(1))
+
+        assertEquals(2, mWindow.size())
+        assertEquals(listOf(0, 1), timeline())
+    }
+
+    @Test
+    fun setPlaylist_withoutCatalog() {
+        mWindow.setPlaylist(PlaylistWindow.Playlist(newMovie(0), null))
+
+        assertEquals(1, mWindow.size())
+        assertEquals(listOf(0), timeline())
+    }
+
+    @Test
+    fun onMediaItemTransition_addsItemsAhead() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(10))
+
+        playPosition(1)
+
+        assertEquals(listOf(0, 1, 2, 3, 4), timeline())
+    }
+
+    @Test
+    fun onMediaItemTransition_dropsItemsFarBehind() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(10))
+        playPosition(1)
+
+        playPosition(3)
+
+        assertEquals(listOf(1, 2, 3, 4, 5, 6), timeline())
+        assertEquals(3, current())
+    }
+
+    @Test
+    fun onMediaItemTransition_slidesBackOnPrevious() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(10))
+        playPosition(1)
+        playPosition(3)
+        playPosition(5)
+
+        playPosition(4)
+
+        assertEquals(listOf(2, 3, 4, 5, 6, 7), timeline())
+        assertEquals(4, current())
+
+        playPosition(3)
+        playPosition(2)
+        playPosition(1)
+
+        assertEquals(listOf(0, 1, 2, 3, 4), timeline())
+        assertEquals(1, current())
+    }
+
+    @Test
+    fun onMediaItemTransition_stopsAtTheEndOfThePlaylist() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(4))
+        playPosition(1)
+        playPosition(3)
+
+        playPosition(4)
+
+        assertEquals(listOf(2, 3, 4), timeline())
+        assertEquals(4, current())
+    }
+
+    @Test
+    fun onMediaItemTransition_ignoresTheEndOfPlayback() {
+        mWindow.setPlaylist(newMovie(0), newCatalog(10))
+
+        mWindow.onMediaItemTransition(null, Player.MEDIA_ITEM_TRANSITION_REASON_PLAYLIST_CHANGED)
+
+        assertEquals(listOf(0, 1, 2, 3), timeline())
+    }
+
+    /** Moves the player to the item of its timeline at playlist `position`.  */
+    private fun playPosition(position: Int) {
+        mCurrentIndex = timeline().indexOf(position)
+        assertNotEquals("Not in the timeline: $position", -1, mCurrentIndex)
+        mWindow.onMediaItemTransition(
+                mItems[mCurrentIndex], Player.MEDIA_ITEM_TRANSITION_REASON_AUTO)
+    }
+
+    /** Returns the playlist position of the player's current item.  */
+    private fun current(): Int {
+        return getMovie(mItems[mCurrentIndex]).id
+    }
+
+    /** Returns the playlist positions of the items in the player's timeline.  */
+    private fun timeline(): List<Int> {
+        return mItems.map { getMovie(it).id }
+    }
+
+    private fun getMovie(item: MediaItem): Movie {
+        return item.localConfiguration!!.tag as Movie
+    }
+
+    private fun newCatalog(size: Int): List<Movie> {
+        return (1..size).map { newMovie(it) }
+    }
+
+    // Ids are playlist positions, the first movie being 0.
+    private fun newMovie(id: Int): Movie {
+        val movie = Movie()
+        movie.id = id
+        movie.title = "Movie $id"
+        movie.videoUrl = "https://example.com/$id.mp4"
+        return movie
+    }
+}
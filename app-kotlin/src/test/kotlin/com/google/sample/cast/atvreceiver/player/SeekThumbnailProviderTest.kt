@@ -0,0 +1,149 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.player
+
+import android.graphics.Rect
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.io.BufferedReader
+import java.io.StringReader
+import java.net.URL
+
+@RunWith(RobolectricTestRunner::class)
+class SeekThumbnailProviderTest {
+    @Test
+    fun parseTrack_readsSpriteSheetTiles() {
+        val cues = parse("""
+            WEBVTT
+
+            00:00.000 --> 00:05.000
+            sprite.jpg#xywh=0,0,160,90
+
+            00:05.000 --> 00:10.000
+            sprite.jpg#xywh=160,0,160,90
+            """)
+
+        assertEquals(2, cues.size)
+        assertCue(0, "https://example.com/movies/bunny/sprite.jpg", Rect(0, 0, 160, 90), cues[0])
+        assertCue(5000, "https://example.com/movies/bunny/sprite.jpg", Rect(160, 0, 320, 90),
+                cues[1])
+    }
+
+    @Test
+    fun parseTrack_readsWholeImages() {
+        val cues = parse("""
+            WEBVTT
+
+            00:00.000 --> 00:05.000
+            /images/1.jpg
+
+            00:05.000 --> 00:10.000
+            https://cdn.example.com/2.jpg
+            """)
+
+        assertCue(0, "https://example.com/images/1.jpg", null, cues[0])
+        assertCue(5000, "https://cdn.example.com/2.jpg", null, cues[1])
+    }
+
+    @Test
+    fun parseTrack_readsHoursAndCueIdentifiers() {
+        val cues = parse("""
+            WEBVTT
+
+            NOTE thumbnails every minute
+
+            62
+            01:02:03.500 --> 01:03:03.500
+              sprite-2.jpg#xywh=0,90,160,90
+            """)
+
+        assertEquals(1, cues.size)
+        assertCue(3723500, "https://example.com/movies/bunny/sprite-2.jpg",
+                Rect(0, 90, 160, 180), cues[0])
+    }
+
+    @Test
+    fun parseTrack_skipsMalformedCues() {
+        val cues = parse("""
+            WEBVTT
+
+            00:xx.000 --> 00:05.000
+            sprite.jpg#xywh=0,0,160,90
+
+            00:05.000 --> 00:10.000
+
+            00:10.000 --> 00:15.000
+            sprite.jpg#xywh=320,0,160,90
+            """)
+
+        assertEquals(1, cues.size)
+        assertCue(10000, "https://example.com/movies/bunny/sprite.jpg", Rect(320, 0, 480, 90),
+                cues[0])
+    }
+
+    @Test
+    fun parseTrack_skipsCuesWithAnIncompleteTile() {
+        val cues = parse("""
+            00:00.000 --> 00:05.000
+            sprite.jpg#xywh=0,0,160
+
+            00:05.000 --> 00:10.000
+            sprite.jpg#xywh=160,0,160,90
+            """)
+
+        assertEquals(1, cues.size)
+        assertCue(5000, "https://example.com/movies/bunny/sprite.jpg", Rect(160, 0, 320, 90),
+                cues[0])
+    }
+
+    @Test
+    fun parseTrack_skipsCuesWithATileThatIsNotANumber() {
+        val cues = parse("""
+            00:00.000 --> 00:05.000
+            sprite.jpg#xywh=0,0,wide,90
+
+            00:05.000 --> 00:10.000
+            sprite.jpg#xywh=160,0,160,90
+            """)
+
+        assertEquals(1, cues.size)
+        assertCue(5000, "https://example.com/movies/bunny/sprite.jpg", Rect(160, 0, 320, 90),
+                cues[0])
+    }
+
+    private fun parse(track: String): List<SeekThumbnailProvider.Cue> {
+        return SeekThumbnailProvider.parseTrack(
+                URL(TRACK_URL), BufferedReader(StringReader(track.trimIndent())))
+    }
+
+    private fun assertCue(
+            startMs: Long, imageUrl: String, region: Rect?, cue: SeekThumbnailProvider.Cue) {
+        assertEquals(startMs, cue.mStartMs)
+        assertEquals(imageUrl, cue.mImageUrl)
+        if (region == null) {
+            assertNull(cue.mRegion)
+        } else {
+            assertEquals(region, cue.mRegion)
+        }
+    }
+
+    companion object {
+        private const val TRACK_URL = "https://example.com/movies/bunny/thumbnails.vtt"
+    }
+}
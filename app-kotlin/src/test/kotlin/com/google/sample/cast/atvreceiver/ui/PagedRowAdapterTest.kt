@@ -0,0 +1,167 @@
+/**
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sample.cast.atvreceiver.ui
+
+import android.os.Looper
+import androidx.leanback.widget.ObjectAdapter
+import androidx.leanback.widget.Presenter
+import com.google.sample.cast.atvreceiver.data.Movie
+import com.google.sample.cast.atvreceiver.ui.PagedRowAdapter.Companion.PAGE_SIZE
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito.mock
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import java.util.Random
+import java.util.concurrent.Executor
+
+@RunWith(RobolectricTestRunner::class)
+class PagedRowAdapterTest {
+    private val mPresenter = mock(Presenter::class.java)
+    private val mEvents = ArrayList<String>()
+    private val mObserver = object : ObjectAdapter.DataObserver() {
+        override fun onItemRangeChanged(positionStart: Int, itemCount: Int) {
+            mEvents.add("changed $positionStart $itemCount")
+        }
+
+        override fun onItemRangeInserted(positionStart: Int, itemCount: Int) {
+            mEvents.add("inserted $positionStart $itemCount")
+        }
+    }
+    private val mCatalog = newCatalog(10 * PAGE_SIZE)
+
+    @Test
+    fun newAdapter_revealsAndLoadsTheFirstPages() {
+        val adapter = newAdapter(mCatalog, null)
+
+        assertEquals(2 * PAGE_SIZE, adapter.size())
+        assertNull(adapter.get(0))
+
+        idleMainLooper()
+
+        assertSame(mCatalog[0], adapter.get(0))
+        assertSame(mCatalog[2 * PAGE_SIZE - 1], adapter.get(2 * PAGE_SIZE - 1))
+        assertEquals(2, mEvents.size)
+        assertTrue(mEvents.contains("changed 0 $PAGE_SIZE"))
+        assertTrue(mEvents.contains("changed $PAGE_SIZE $PAGE_SIZE"))
+    }
+
+    @Test
+    fun newAdapter_revealsAShortCatalogWhole() {
+        val catalog = newCatalog(PAGE_SIZE + 3)
+        val adapter = newAdapter(catalog, null)
+        idleMainLooper()
+
+        assertEquals(PAGE_SIZE + 3, adapter.size())
+        assertSame(catalog[PAGE_SIZE + 2], adapter.get(PAGE_SIZE + 2))
+    }
+
+    @Test
+    fun get_followsTheRowOrder() {
+        val order = CatalogRowAdapter.shuffledOrder(mCatalog.size, Random(7))
+        val adapter = newAdapter(mCatalog, order)
+        idleMainLooper()
+
+        for (i in 0 until adapter.size()) {
+            assertSame(mCatalog[order[i]], adapter.get(i))
+        }
+    }
+
+    @Test
+    fun setSelectedPosition_revealsTheNextPage() {
+        val adapter = newAdapter(mCatalog, null)
+        idleMainLooper()
+        mEvents.clear()
+
+        adapter.setSelectedPosition(PAGE_SIZE)
+        idleMainLooper()
+
+        assertEquals(3 * PAGE_SIZE, adapter.size())
+        assertEquals("inserted ${2 * PAGE_SIZE} $PAGE_SIZE", mEvents[0])
+        assertTrue(mEvents.contains("changed ${2 * PAGE_SIZE} $PAGE_SIZE"))
+        assertSame(mCatalog[3 * PAGE_SIZE - 1], adapter.get(3 * PAGE_SIZE - 1))
+    }
+
+    @Test
+    fun setSelectedPosition_neverRevealsPastTheCatalog() {
+        val adapter = newAdapter(mCatalog, null)
+
+        adapter.setSelectedPosition(mCatalog.size - 1)
+
+        assertEquals(mCatalog.size, adapter.size())
+    }
+
+    @Test
+    fun setSelectedPosition_dropsPagesFarFromFocus() {
+        val adapter = newAdapter(mCatalog, null)
+        idleMainLooper()
+
+        adapter.setSelectedPosition(5 * PAGE_SIZE)
+        idleMainLooper()
+
+        assertNull(adapter.get(0))
+        assertNull(adapter.get(PAGE_SIZE))
+        assertSame(mCatalog[5 * PAGE_SIZE], adapter.get(5 * PAGE_SIZE))
+    }
+
+    @Test
+    fun setSelectedPosition_ignoresPagesLoadedAfterFocusMovedAway() {
+        val adapter = newAdapter(mCatalog, null)
+
+        adapter.setSelectedPosition(5 * PAGE_SIZE)
+        idleMainLooper()
+
+        assertFalse(mEvents.contains("changed 0 $PAGE_SIZE"))
+        assertNull(adapter.get(0))
+    }
+
+    @Test
+    fun get_loadsAPageAgainOnceFocusComesBack() {
+        val adapter = newAdapter(mCatalog, null)
+        adapter.setSelectedPosition(5 * PAGE_SIZE)
+        idleMainLooper()
+
+        adapter.setSelectedPosition(0)
+        idleMainLooper()
+
+        assertSame(mCatalog[0], adapter.get(0))
+    }
+
+    private fun newAdapter(catalog: List<Movie>, order: IntArray?): PagedRowAdapter {
+        val adapter = PagedRowAdapter(mPresenter, catalog, order, DIRECT_EXECUTOR)
+        adapter.registerObserver(mObserver)
+        return adapter
+    }
+
+    private fun newCatalog(size: Int): List<Movie> {
+        return List(size) { i -> Movie().also { it.id = i } }
+    }
+
+    private fun idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle()
+    }
+
+    companion object {
+        // Runs page loads right away; their results still reach the adapter through the main
+        // looper.
+        private val DIRECT_EXECUTOR = Executor { it.run() }
+    }
+}